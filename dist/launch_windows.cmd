@@ -4,6 +4,7 @@ set JLINK_VM_OPTIONS=^
 --add-exports jdk.compiler/com.sun.tools.javac.code=ALL-UNNAMED ^
 --add-exports jdk.compiler/com.sun.tools.javac.comp=ALL-UNNAMED ^
 --add-exports jdk.compiler/com.sun.tools.javac.main=ALL-UNNAMED ^
+--add-exports jdk.compiler/com.sun.tools.javac.parser=ALL-UNNAMED ^
 --add-exports jdk.compiler/com.sun.tools.javac.tree=ALL-UNNAMED ^
 --add-exports jdk.compiler/com.sun.tools.javac.model=ALL-UNNAMED ^
 --add-exports jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED ^
@@ -363,6 +363,7 @@ function visualVmConfig(context: ExtensionContext): ServerOptions {
         "--add-exports", "jdk.compiler/com.sun.tools.javac.code=javacs",
         "--add-exports", "jdk.compiler/com.sun.tools.javac.comp=javacs",
         "--add-exports", "jdk.compiler/com.sun.tools.javac.main=javacs",
+        "--add-exports", "jdk.compiler/com.sun.tools.javac.parser=javacs",
         "--add-exports", "jdk.compiler/com.sun.tools.javac.tree=javacs",
         "--add-exports", "jdk.compiler/com.sun.tools.javac.model=javacs",
         "--add-exports", "jdk.compiler/com.sun.tools.javac.util=javacs",
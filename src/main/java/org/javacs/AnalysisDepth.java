@@ -0,0 +1,11 @@
+package org.javacs;
+
+/** How far javac should analyze a compilation. Each depth includes everything the shallower ones do. */
+public enum AnalysisDepth {
+    /** Enter declarations, so classes and members have symbols, but don't look inside method bodies */
+    ENTER,
+    /** Attribute the compiled files, so every expression has a type and every name refers to an element */
+    ATTRIBUTE,
+    /** Also run flow analysis and the remaining lints, so diagnostics are complete */
+    FULL
+}
@@ -2,73 +2,160 @@ package org.javacs;
 
 import java.nio.file.Path;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, all the mappings for that file expire at
+ * once. The cache holds at most `capacity` mappings; when it is full, the files that were least recently used are
+ * evicted. Cache is safe to use from multiple threads: computeIfAbsent checks and loads a value as one operation, and
+ * if two threads load the same key at the same time, the last one wins. A separate needs, load and get sequence is
+ * not atomic, because another thread can evict the file in between.
+ */
 class Cache<K, V> {
-    private static class Key<K> {
-        final Path file;
-        final K key;
+    /** All the values for a single file */
+    private class Entries {
+        final Instant created = Instant.now();
+        final Map<K, V> values = new HashMap<>();
+    }
+
+    private final String name;
+    private final int capacity;
+    /** Files in least-recently-used order */
+    private final LinkedHashMap<Path, Entries> files = new LinkedHashMap<>(16, 0.75f, true);
+    /** Total number of values in all files */
+    private int size;
+
+    private long hits, misses, evictions;
 
-        Key(Path file, K key) {
-            this.file = file;
-            this.key = key;
+    Cache(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        synchronized (ALL) {
+            ALL.add(this);
         }
+    }
+
+    boolean has(Path file, K k) {
+        return !needs(file, k);
+    }
 
-        @Override
-        public boolean equals(Object other) {
-            if (other.getClass() != Cache.Key.class) return false;
-            var that = (Cache.Key) other;
-            return Objects.equals(this.key, that.key) && Objects.equals(this.file, that.file);
+    synchronized boolean needs(Path file, K k) {
+        var entries = current(file);
+        if (entries == null || !entries.values.containsKey(k)) {
+            misses++;
+            return true;
         }
+        hits++;
+        return false;
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(file, key);
+    synchronized void load(Path file, K k, V v) {
+        var entries = current(file);
+        if (entries == null) {
+            entries = new Entries();
+            files.put(file, entries);
         }
+        if (entries.values.put(k, v) == null) {
+            size++;
+        }
+        evictLeastRecentlyUsed(file);
     }
 
-    private class Value {
-        final V value;
-        final Instant created = Instant.now();
+    /**
+     * The value for file and k, or the result of loader if there isn't one. loader runs without holding the lock, so
+     * slow loaders don't block other threads, and the value it returns is returned even if it's evicted right away.
+     */
+    V computeIfAbsent(Path file, K k, Supplier<V> loader) {
+        synchronized (this) {
+            var entries = current(file);
+            if (entries != null && entries.values.containsKey(k)) {
+                hits++;
+                return entries.values.get(k);
+            }
+            misses++;
+        }
+        var v = loader.get();
+        load(file, k, v);
+        return v;
+    }
 
-        Value(V value) {
-            this.value = value;
+    synchronized V get(Path file, K k) {
+        var entries = files.get(file);
+        if (entries == null || !entries.values.containsKey(k)) {
+            throw new IllegalArgumentException(k + " is not in cache " + name + " for " + file);
         }
+        return entries.values.get(k);
     }
 
-    private final Map<Key, Value> map = new HashMap<>();
+    /** Remove all the values for file */
+    synchronized void evict(Path file) {
+        var entries = files.remove(file);
+        if (entries != null) {
+            size -= entries.values.size();
+            evictions += entries.values.size();
+        }
+    }
 
-    boolean has(Path file, K k) {
-        return !needs(file, k);
+    /** The values for file, or null if there are none or they were loaded before file was last modified */
+    private Entries current(Path file) {
+        var entries = files.get(file);
+        if (entries == null) return null;
+        var modified = FileStore.modified(file);
+        if (modified != null && entries.created.isBefore(modified)) {
+            evict(file);
+            return null;
+        }
+        return entries;
     }
 
-    boolean needs(Path file, K k) {
-        // If key is not in map, it needs to be loaded
-        var key = new Key<K>(file, k);
-        if (!map.containsKey(key)) return true;
+    private void evictLeastRecentlyUsed(Path keep) {
+        var it = files.entrySet().iterator();
+        while (size > capacity && it.hasNext()) {
+            var next = it.next();
+            if (next.getKey().equals(keep)) continue;
+            size -= next.getValue().values.size();
+            evictions += next.getValue().values.size();
+            it.remove();
+        }
+    }
 
-        // If key was loaded before file was last modified, it needs to be reloaded
-        var value = map.get(key);
-        var modified = FileStore.modified(file);
-        // TODO remove all keys associated with file when file changes
-        return value.created.isBefore(modified);
+    synchronized long hits() {
+        return hits;
     }
 
-    void load(Path file, K k, V v) {
-        // TODO limit total size of cache
-        var key = new Key<K>(file, k);
-        var value = new Value(v);
-        map.put(key, value);
+    synchronized long misses() {
+        return misses;
     }
 
-    V get(Path file, K k) {
-        var key = new Key<K>(file, k);
-        if (!map.containsKey(key)) {
-            throw new IllegalArgumentException(k + " is not in map " + map);
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        var lookups = hits + misses;
+        var hitRate = lookups == 0 ? 0 : 100 * hits / lookups;
+        return String.format(
+                "%s: %d/%d entries in %d files, %d hits, %d misses (%d%% hit rate), %d evictions",
+                name, size, capacity, files.size(), hits, misses, hitRate, evictions);
+    }
+
+    private static final Set<Cache<?, ?>> ALL = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /** Log the statistics of every cache, so we can tune their capacities */
+    static void logStats() {
+        synchronized (ALL) {
+            for (var cache : ALL) {
+                LOG.info(cache.toString());
+            }
         }
-        return map.get(key).value;
     }
+
+    private static final Logger LOG = Logger.getLogger("main");
 }
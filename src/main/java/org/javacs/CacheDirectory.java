@@ -0,0 +1,55 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * CacheDirectory is where indexes are saved between launches: $XDG_CACHE_HOME/java-language-server, or
+ * ~/.cache/java-language-server. Everything in it can be deleted at any time; it will be rebuilt on the next launch.
+ */
+class CacheDirectory {
+
+    static Path root() {
+        var xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isBlank()) {
+            return Paths.get(xdg).resolve("java-language-server");
+        }
+        return Paths.get(System.getProperty("user.home")).resolve(".cache").resolve("java-language-server");
+    }
+
+    /** A file for `name` that belongs to workspaceRoot, for example workspaces/project-1a2b3c4d/sources */
+    static Path forWorkspace(Path workspaceRoot, String name) {
+        var fileName = workspaceRoot.getFileName();
+        var prefix = fileName == null ? "root" : fileName.toString();
+        var dir = String.format("%s-%08x", prefix, workspaceRoot.toString().hashCode());
+        return root().resolve("workspaces").resolve(dir).resolve(name);
+    }
+
+    /**
+     * A file for `name` that belongs to the running JDK, for example jdk/17.0.2-1a2b3c4d/classes. It's shared by every
+     * workspace, and by every server process that runs on the same JDK.
+     */
+    static Path forJdk(String name) {
+        var javaHome = System.getProperty("java.home");
+        var dir = String.format("%s-%08x", Runtime.version(), javaHome.hashCode());
+        return root().resolve("jdk").resolve(dir).resolve(name);
+    }
+
+    /** A file for `name` that belongs to the jar or zip file `jar`, for example jars/guava-28.1.jar-1a2b3c4d/classes */
+    static Path forJar(Path jar, String name) {
+        var dir = String.format("%s-%08x", jar.getFileName(), jar.toString().hashCode());
+        return root().resolve("jars").resolve(dir).resolve(name);
+    }
+
+    /** Replace file with bytes, so readers never see a partially-written file */
+    static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
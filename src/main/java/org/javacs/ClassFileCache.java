@@ -0,0 +1,305 @@
+package org.javacs;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import java.io.*;
+import java.net.URI;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import javax.tools.*;
+import org.javacs.lsp.CancelToken;
+
+/**
+ * ClassFileCache holds class files that javac generated from the header-only views of workspace sources, keyed by
+ * source file and the version of the source they were generated from. While a source is unchanged, SourceFileManager
+ * serves its cached classes in place of the source, so javac reads a class file instead of parsing, entering and
+ * attributing the source again. If spill is set, class files are also written to CacheDirectory, so they survive
+ * restarts.
+ *
+ * <p>A class file also depends on the other sources it was compiled against: it inlines their constants, like `static
+ * final int X = B.Y + 1`, and annotation values. Like ReferenceIndex, each entry records a hash of the declarations of
+ * each of those files, and is rejected when any of them changes, or when one of their own cached class files is.
+ */
+class ClassFileCache {
+    /** Change this whenever the format changes, so old class files are ignored */
+    private static final int VERSION = 2;
+
+    /** The class files generated from one version of one source file */
+    private static class Entry {
+        final Instant modified;
+        final Map<String, byte[]> classes;
+
+        /** The hash of the declarations of each workspace file the classes were compiled against */
+        final Map<Path, Long> dependencies;
+
+        /** The value of FileStore.changes() when this entry was last found to be current */
+        volatile long checked = -1;
+
+        Entry(Instant modified, Map<String, byte[]> classes, Map<Path, Long> dependencies) {
+            this.modified = modified;
+            this.classes = classes;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** A class file that javac can read, for example when it lists CLASS_PATH */
+    static class ClassFileObject extends SimpleJavaFileObject {
+        final String binaryName;
+        private final byte[] bytes;
+        private final Instant modified;
+
+        ClassFileObject(String binaryName, byte[] bytes, Instant modified) {
+            super(URI.create("memory:///" + binaryName.replace('.', '/') + ".class"), Kind.CLASS);
+            this.binaryName = binaryName;
+            this.bytes = bytes;
+            this.modified = modified;
+        }
+
+        /** Same as the source, so javac doesn't think the source is newer */
+        @Override
+        public long getLastModified() {
+            return modified.toEpochMilli();
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private static final JavaCompiler COMPILER = ServiceLoader.load(JavaCompiler.class).iterator().next();
+
+    private final boolean spill;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    /** Files that we looked for in CacheDirectory and didn't find */
+    private final Set<Path> notSpilled = ConcurrentHashMap.newKeySet();
+    /** Class files that javac is writing during generate(_, _, _) */
+    private final Map<Path, Map<String, byte[]>> output = new ConcurrentHashMap<>();
+
+    ClassFileCache(boolean spill) {
+        this.spill = spill;
+    }
+
+    /** Are there class files for the current version of file? */
+    boolean has(Path file) {
+        return current(file) != null;
+    }
+
+    /** The class files generated from the current version of file, or an empty list if there are none */
+    List<ClassFileObject> classes(Path file) {
+        var entry = current(file);
+        if (entry == null) return List.of();
+        var list = new ArrayList<ClassFileObject>();
+        for (var c : entry.classes.entrySet()) {
+            list.add(new ClassFileObject(c.getKey(), c.getValue(), entry.modified));
+        }
+        return list;
+    }
+
+    private Entry current(Path file) {
+        return current(file, new HashSet<>());
+    }
+
+    /** The entry of file, if it is up to date with file and with every file it was compiled against */
+    private Entry current(Path file, Set<Path> checking) {
+        var changes = FileStore.changes();
+        var entry = cached(file);
+        if (entry == null || entry.checked == changes) return entry;
+        // A cycle of dependencies, which is checked by the caller that started it
+        if (!checking.add(file)) return entry;
+        if (!isCurrent(file, entry, checking)) {
+            entries.remove(file, entry);
+            notSpilled.add(file);
+            return null;
+        }
+        entry.checked = changes;
+        return entry;
+    }
+
+    private boolean isCurrent(Path file, Entry entry, Set<Path> checking) {
+        if (!entry.modified.equals(FileStore.modified(file))) return false;
+        for (var d : entry.dependencies.entrySet()) {
+            var dependency = d.getKey();
+            if (!FileStore.contains(dependency)) return false;
+            if (ReferenceIndex.declarations(dependency) != d.getValue()) return false;
+            // Constants that were inlined from a stale class file are stale too
+            if (cached(dependency) != null && current(dependency, checking) == null) return false;
+        }
+        return true;
+    }
+
+    /** The entry of file in memory or in CacheDirectory, whether or not it is current */
+    private Entry cached(Path file) {
+        var entry = entries.get(file);
+        if (entry == null && spill && !notSpilled.contains(file)) {
+            entry = load(file);
+            if (entry == null) notSpilled.add(file);
+            else entries.put(file, entry);
+        }
+        return entry;
+    }
+
+    /** Where javac should write the class file for className, which it generated from source */
+    JavaFileObject output(String className, Path source) {
+        var uri = URI.create("memory:///" + className.replace('.', '/') + ".class");
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.CLASS) {
+            @Override
+            public OutputStream openOutputStream() {
+                return new ByteArrayOutputStream() {
+                    @Override
+                    public void close() {
+                        output.computeIfAbsent(source, __ -> new ConcurrentHashMap<>()).put(className, toByteArray());
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Generate class files for the sources that don't have current ones, by compiling their header-only views. If the
+     * headers don't compile, nothing is cached; those files will keep being read from source.
+     */
+    void generate(SourceFileManager fileManager, List<String> options, Collection<Path> sources) {
+        var versions = new HashMap<JavaFileObject, Instant>();
+        for (var file : sources) {
+            if (!FileStore.contains(file) || has(file)) continue;
+            versions.put(SourceFileObject.headersOnly(file), FileStore.modified(file));
+        }
+        if (versions.isEmpty()) return;
+        var started = Instant.now();
+        var diags = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        var task =
+                (JavacTask) COMPILER.getTask(null, fileManager, diags::add, options, List.of(), versions.keySet());
+        var dependencies = new HashMap<Path, Set<Path>>();
+        task.addTaskListener(
+                new TaskListener() {
+                    // This runs while the server is idle, so give up as soon as another request arrives
+                    @Override
+                    public void started(TaskEvent e) {
+                        CancelToken.current().checkCancelled();
+                    }
+
+                    @Override
+                    public void finished(TaskEvent e) {
+                        if (e.getKind() != TaskEvent.Kind.ANALYZE) return;
+                        // The compiler wraps our SourceFileObjects, so go through the URI
+                        var file = Paths.get(e.getSourceFile().toUri());
+                        var found = ReferenceIndex.dependencies(task, e.getCompilationUnit(), file);
+                        dependencies.computeIfAbsent(file, __ -> new HashSet<>()).addAll(found);
+                    }
+                });
+        output.clear();
+        boolean ok;
+        try {
+            ok = task.call();
+        } catch (RuntimeException e) {
+            if (!CancelToken.current().isCancelled()) {
+                LOG.warning("Failed to generate class files: " + e.getMessage());
+            }
+            ok = false;
+        }
+        if (!ok) {
+            for (var d : diags) {
+                if (d.getKind() != Diagnostic.Kind.ERROR) continue;
+                LOG.warning(String.format("...can't cache class files because of %s", d.getMessage(null)));
+                break;
+            }
+            output.clear();
+            return;
+        }
+        for (var e : versions.entrySet()) {
+            var file = ((SourceFileObject) e.getKey()).path;
+            var classes = output.getOrDefault(file, Map.of());
+            var hashes = new HashMap<Path, Long>();
+            for (var d : dependencies.getOrDefault(file, Set.of())) {
+                if (FileStore.contains(d)) hashes.put(d, ReferenceIndex.declarations(d));
+            }
+            var entry = new Entry(e.getValue(), Map.copyOf(classes), hashes);
+            entries.put(file, entry);
+            notSpilled.remove(file);
+            if (spill && !FileStore.activeDocuments().contains(file)) {
+                save(file, entry);
+            }
+        }
+        output.clear();
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("Cached class files of %d sources in %d ms", versions.size(), elapsed));
+    }
+
+    private static Path spillFile(Path source) {
+        for (var root : FileStore.workspaceRoots()) {
+            if (source.startsWith(root)) {
+                var relative = root.relativize(source).toString() + ".classes";
+                return CacheDirectory.forWorkspace(root, "classes").resolve(relative);
+            }
+        }
+        return null;
+    }
+
+    private static Entry load(Path source) {
+        var file = spillFile(source);
+        if (file == null || !Files.exists(file)) return null;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return null;
+            if (!in.readUTF().equals(javaVersion())) return null;
+            var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            var dependencies = new HashMap<Path, Long>();
+            var dependencyCount = in.readInt();
+            for (var i = 0; i < dependencyCount; i++) {
+                dependencies.put(Paths.get(in.readUTF()), in.readLong());
+            }
+            var count = in.readInt();
+            var classes = new HashMap<String, byte[]>();
+            for (var i = 0; i < count; i++) {
+                var name = in.readUTF();
+                var bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            return new Entry(modified, classes, dependencies);
+        } catch (IOException e) {
+            LOG.warning(String.format("Ignoring class files %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    private static void save(Path source, Entry entry) {
+        var file = spillFile(source);
+        if (file == null) return;
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(javaVersion());
+                out.writeLong(entry.modified.getEpochSecond());
+                out.writeInt(entry.modified.getNano());
+                out.writeInt(entry.dependencies.size());
+                for (var d : entry.dependencies.entrySet()) {
+                    out.writeUTF(d.getKey().toString());
+                    out.writeLong(d.getValue());
+                }
+                out.writeInt(entry.classes.size());
+                for (var c : entry.classes.entrySet()) {
+                    out.writeUTF(c.getKey());
+                    out.writeInt(c.getValue().length);
+                    out.write(c.getValue());
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save class files %s: %s", file, e.getMessage()));
+        }
+    }
+
+    /** Class files from a different javac may not be readable by this one */
+    private static String javaVersion() {
+        return System.getProperty("java.version");
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
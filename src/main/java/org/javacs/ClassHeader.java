@@ -1,60 +1,169 @@
 package org.javacs;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 // Read the classfile format defined in https://docs.oracle.com/javase/specs/jvms/se11/html/jvms-4.html
+// The class file is kept as bytes, and only the positions of constants, fields and methods are recorded,
+// so reading a class allocates a few int arrays, plus whatever strings the caller asks for.
 class ClassHeader {
 
-    final boolean isPublic, isFinal, isInterface, isAbstract, isAnnotation, isEnum, isModule;
+    final boolean isPublic, isFinal, isInterface, isAbstract, isAnnotation, isEnum, isModule, isSynthetic;
+
+    /** The position of each field_info and method_info; pass these to access, name and descriptor */
+    final int[] fields, methods;
+
+    private final byte[] bytes;
+
+    /** constants[i] is the position of the tag of constant i */
+    private final int[] constants;
+
+    private final int thisClass;
 
     static ClassHeader of(InputStream in) {
-        return new ClassHeader(new DataInputStream(in));
+        try {
+            return new ClassHeader(in.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private ClassHeader(DataInputStream in) {
-        try {
-            // u4             magic;
-            // u2             minor_version;
-            // u2             major_version;
-            // u2             constant_pool_count;
-            // cp_info        constant_pool[constant_pool_count-1];
-            // u2             access_flags;
-            var magic = in.readNBytes(4);
-            var minorVersion = in.readUnsignedShort();
-            var majorVersion = in.readUnsignedShort();
-            var constantPoolCount = in.readUnsignedShort();
-            var constants = new Constant[constantPoolCount];
-            var i = 0;
-            while (i < constantPoolCount - 1) {
-                constants[i] = readConstant(in);
-                i += slots(constants[i]);
+    static ClassHeader of(byte[] bytes) {
+        return new ClassHeader(bytes);
+    }
+
+    private ClassHeader(byte[] bytes) {
+        this.bytes = bytes;
+        // u4             magic;
+        // u2             minor_version;
+        // u2             major_version;
+        // u2             constant_pool_count;
+        // cp_info        constant_pool[constant_pool_count-1];
+        // u2             access_flags;
+        // u2             this_class;
+        // u2             super_class;
+        // u2             interfaces_count;
+        // u2             interfaces[interfaces_count];
+        // u2             fields_count;
+        // field_info     fields[fields_count];
+        // u2             methods_count;
+        // method_info    methods[methods_count];
+        if (bytes.length < 10 || u4(0) != 0xCAFEBABE) throw new IllegalArgumentException("Not a class file");
+        var constantPoolCount = u2(8);
+        this.constants = new int[constantPoolCount];
+        var at = 10;
+        var i = 1;
+        while (i < constantPoolCount) {
+            constants[i] = at;
+            var tag = bytes[at];
+            at += 1 + constantSize(tag, at);
+            i += slots(tag);
+        }
+        var accessFlags = u2(at);
+        this.thisClass = u2(at + 2);
+        var interfacesCount = u2(at + 6);
+        at += 8 + 2 * interfacesCount;
+        this.fields = new int[u2(at)];
+        at += 2;
+        for (var f = 0; f < fields.length; f++) {
+            fields[f] = at;
+            at = skipMember(at);
+        }
+        this.methods = new int[u2(at)];
+        at += 2;
+        for (var m = 0; m < methods.length; m++) {
+            methods[m] = at;
+            at = skipMember(at);
+        }
+
+        this.isPublic = (accessFlags & ACC_PUBLIC) != 0;
+        this.isFinal = (accessFlags & ACC_FINAL) != 0;
+        this.isInterface = (accessFlags & ACC_INTERFACE) != 0;
+        this.isAbstract = (accessFlags & ACC_ABSTRACT) != 0;
+        this.isAnnotation = (accessFlags & ACC_ANNOTATION) != 0;
+        this.isEnum = (accessFlags & ACC_ENUM) != 0;
+        this.isModule = (accessFlags & ACC_MODULE) != 0;
+        this.isSynthetic = (accessFlags & ACC_SYNTHETIC) != 0;
+    }
+
+    /** The binary name of this class, like java.util.Map$Entry */
+    String className() {
+        return utf8(u2(constants[thisClass] + 1)).replace('/', '.');
+    }
+
+    /** The access flags of the field or method at member */
+    int access(int member) {
+        return u2(member);
+    }
+
+    String name(int member) {
+        return utf8(u2(member + 2));
+    }
+
+    /** The erased type of the field or method at member, like (Ljava/lang/String;I)V */
+    String descriptor(int member) {
+        return utf8(u2(member + 4));
+    }
+
+    // field_info and method_info have the same layout:
+    //   u2 access_flags; u2 name_index; u2 descriptor_index; u2 attributes_count; attribute_info attributes[];
+    // and each attribute_info is u2 attribute_name_index; u4 attribute_length; u1 info[attribute_length];
+    private int skipMember(int at) {
+        var attributesCount = u2(at + 6);
+        at += 8;
+        for (var a = 0; a < attributesCount; a++) {
+            at += 6 + u4(at + 2);
+        }
+        return at;
+    }
+
+    private String utf8(int index) {
+        var at = constants[index];
+        if (bytes[at] != CONSTANT_Utf8) throw new IllegalArgumentException("Constant " + index + " is not Utf8");
+        var length = u2(at + 1);
+        var start = at + 3;
+        // Names are almost always ASCII, which modified UTF-8 encodes as single bytes
+        var ascii = true;
+        for (var i = start; i < start + length; i++) {
+            if (bytes[i] <= 0) {
+                ascii = false;
+                break;
             }
-            var accessFlags = in.readUnsignedShort();
-
-            this.isPublic = (accessFlags & ACC_PUBLIC) != 0;
-            this.isFinal = (accessFlags & ACC_FINAL) != 0;
-            this.isInterface = (accessFlags & ACC_INTERFACE) != 0;
-            this.isAbstract = (accessFlags & ACC_ABSTRACT) != 0;
-            this.isAnnotation = (accessFlags & ACC_ANNOTATION) != 0;
-            this.isEnum = (accessFlags & ACC_ENUM) != 0;
-            this.isModule = (accessFlags & ACC_MODULE) != 0;
+        }
+        if (ascii) return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes, at + 1, length + 2)).readUTF();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new IllegalArgumentException(e);
         }
     }
 
-    private static final int ACC_PUBLIC = 0x0001; // Declared public; may be accessed from outside its package.
-    private static final int ACC_FINAL = 0x0010; // Declared final; no subclasses allowed.
-    private static final int ACC_SUPER =
+    private int u2(int at) {
+        return ((bytes[at] & 0xff) << 8) | (bytes[at + 1] & 0xff);
+    }
+
+    private int u4(int at) {
+        return ((bytes[at] & 0xff) << 24) | ((bytes[at + 1] & 0xff) << 16) | u2(at + 2);
+    }
+
+    static final int ACC_PUBLIC = 0x0001; // Declared public; may be accessed from outside its package.
+    static final int ACC_PRIVATE = 0x0002; // Declared private; accessible only within the defining class.
+    static final int ACC_PROTECTED = 0x0004; // Declared protected; may be accessed within subclasses.
+    static final int ACC_STATIC = 0x0008; // Declared static.
+    static final int ACC_FINAL = 0x0010; // Declared final; no subclasses allowed.
+    static final int ACC_SUPER =
             0x0020; // Treat superclass methods specially when invoked by the invokespecial instruction.
-    private static final int ACC_INTERFACE = 0x0200; // Is an interface, not a class.
-    private static final int ACC_ABSTRACT = 0x0400; // Declared abstract; must not be instantiated.
-    private static final int ACC_SYNTHETIC = 0x1000; // Declared synthetic; not present in the source code.
-    private static final int ACC_ANNOTATION = 0x2000; // Declared as an annotation type.
-    private static final int ACC_ENUM = 0x4000; // Declared as an enum type.
-    private static final int ACC_MODULE = 0x8000; // Is a module, not a class or interface.
+    static final int ACC_BRIDGE = 0x0040; // A bridge method, generated by the compiler.
+    static final int ACC_VARARGS = 0x0080; // Declared with variable number of arguments.
+    static final int ACC_INTERFACE = 0x0200; // Is an interface, not a class.
+    static final int ACC_ABSTRACT = 0x0400; // Declared abstract; must not be instantiated.
+    static final int ACC_SYNTHETIC = 0x1000; // Declared synthetic; not present in the source code.
+    static final int ACC_ANNOTATION = 0x2000; // Declared as an annotation type.
+    static final int ACC_ENUM = 0x4000; // Declared as an enum type.
+    static final int ACC_MODULE = 0x8000; // Is a module, not a class or interface.
 
     private static final int CONSTANT_Class = 7;
     private static final int CONSTANT_Fieldref = 9;
@@ -69,57 +178,43 @@ class ClassHeader {
     private static final int CONSTANT_Utf8 = 1;
     private static final int CONSTANT_MethodHandle = 15;
     private static final int CONSTANT_MethodType = 16;
+    private static final int CONSTANT_Dynamic = 17;
     private static final int CONSTANT_InvokeDynamic = 18;
     private static final int CONSTANT_Module = 19;
     private static final int CONSTANT_Package = 20;
 
-    private Constant readConstant(DataInputStream in) throws IOException {
-        var tag = (short) in.readByte();
+    /** The size of the info that follows the tag of the constant at `at` */
+    private int constantSize(byte tag, int at) {
         switch (tag) {
             case CONSTANT_Class:
             case CONSTANT_String:
             case CONSTANT_MethodType:
-                {
-                    var info = in.readNBytes(2);
-                    return new Constant(tag, info);
-                }
+            case CONSTANT_Module:
+            case CONSTANT_Package:
+                return 2;
+            case CONSTANT_MethodHandle:
+                return 3;
             case CONSTANT_Fieldref:
             case CONSTANT_Methodref:
             case CONSTANT_InterfaceMethodref:
             case CONSTANT_Integer:
             case CONSTANT_Float:
             case CONSTANT_NameAndType:
+            case CONSTANT_Dynamic:
             case CONSTANT_InvokeDynamic:
-                {
-                    var info = in.readNBytes(4);
-                    return new Constant(tag, info);
-                }
+                return 4;
             case CONSTANT_Long:
             case CONSTANT_Double:
-                {
-                    var info = in.readNBytes(8);
-                    return new Constant(tag, info);
-                }
+                return 8;
             case CONSTANT_Utf8:
-                {
-                    var length = in.readUnsignedShort();
-                    var string = in.readNBytes(length);
-                    return new Constant(tag, string);
-                }
-            case CONSTANT_MethodHandle:
-            case CONSTANT_Module:
-            case CONSTANT_Package:
-                {
-                    var info = in.readNBytes(3);
-                    return new Constant(tag, info);
-                }
+                return 2 + u2(at + 1);
             default:
-                throw new RuntimeException("Don't know what to do with " + tag);
+                throw new IllegalArgumentException("Don't know what to do with " + tag);
         }
     }
 
-    private int slots(Constant c) {
-        switch (c.tag) {
+    private int slots(byte tag) {
+        switch (tag) {
             case CONSTANT_Long:
             case CONSTANT_Double:
                 return 2;
@@ -127,14 +222,4 @@ class ClassHeader {
                 return 1;
         }
     }
-
-    private static class Constant {
-        final short tag;
-        final byte[] info;
-
-        Constant(short tag, byte[] info) {
-            this.tag = tag;
-            this.info = info;
-        }
-    }
 }
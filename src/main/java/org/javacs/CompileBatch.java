@@ -2,22 +2,50 @@ package org.javacs;
 
 import com.sun.source.tree.*;
 import com.sun.source.util.*;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.comp.AttrContext;
+import com.sun.tools.javac.comp.Env;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Log;
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.lang.model.util.*;
 import javax.tools.*;
+import org.javacs.lsp.CancelToken;
 
 class CompileBatch implements AutoCloseable {
     static final int MAX_COMPLETION_ITEMS = 50;
+    /**
+     * Once a file has this many errors, javac is probably producing cascading errors, for example after a bad merge or
+     * when a dependency is missing. Later errors in the file are dropped, and the rest of the file isn't attributed.
+     */
+    static final int MAX_ERRORS_PER_FILE = 100;
 
     final JavaCompilerService parent;
     final ReusableCompiler.Borrow borrow;
     /** Indicates the task that requested the compilation is finished with it. */
-    boolean closed;
+    volatile boolean closed;
+    /** Diagnostics from this compilation */
+    final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
+    /** Files that had more than MAX_ERRORS_PER_FILE errors, so their diagnostics and attribution are incomplete */
+    final Set<URI> partial = new HashSet<>();
+    /** The number of errors reported in each file, including the ones that were dropped */
+    private final Map<URI, Integer> errorCounts = new HashMap<>();
+    /** The file whose classes are being attributed right now, if any */
+    private URI attributing;
+    /** Sources that javac loaded on its own, as header-only views, to resolve references from the roots */
+    final Set<Path> implicitSources = new HashSet<>();
+    /** The value of FileStore.changes() before javac read any file, so a later value means javac may have read old text */
+    final long changes = FileStore.changes();
+    /** The version of each root that was read from FileStore, which ReferenceIndex can record once it's attributed */
+    private final Map<URI, Long> indexable = new HashMap<>();
 
     final JavacTask task;
     final Trees trees;
@@ -25,72 +53,225 @@ class CompileBatch implements AutoCloseable {
     final Types types;
     final List<CompilationUnitTree> roots;
 
-    CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+    /** How far this batch has been analyzed; analyze(_) can take it further, but never back */
+    private AnalysisDepth depth;
+    /** The classes that have been attributed but not flow-analyzed yet */
+    private Queue<Env<AttrContext>> attributed;
+
+    /**
+     * Compile files, plus extraFiles that declare package-private classes files need. Only files are included in roots;
+     * the other files are there so javac can resolve references to them.
+     */
+    CompileBatch(
+            JavaCompilerService parent,
+            Collection<? extends JavaFileObject> files,
+            Collection<? extends JavaFileObject> extraFiles,
+            AnalysisDepth depth) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        var all = new ArrayList<JavaFileObject>(files);
+        all.addAll(extraFiles);
+        this.borrow = batchTask(all);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
         this.types = borrow.task.getTypes();
         this.roots = new ArrayList<>();
-        // Compile all roots
+        var versions = fileStoreVersions(files);
+        // Parse all roots
         try {
+            var extra = new HashSet<URI>();
+            for (var f : extraFiles) {
+                extra.add(f.toUri());
+            }
             for (var t : borrow.task.parse()) {
-                roots.add(t);
+                if (!extra.contains(t.getSourceFile().toUri())) roots.add(t);
             }
-            // The results of borrow.task.analyze() are unreliable when errors are present
-            // You can get at `Element` values using `Trees`
-            borrow.task.analyze();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            throw cancelled(e);
+        }
+        // If a file changed while it was being parsed, we don't know which version javac read
+        for (var e : fileStoreVersions(files).entrySet()) {
+            if (e.getValue().equals(versions.get(e.getKey()))) indexable.put(e.getKey(), e.getValue());
+        }
+        // Every file that is parsed from here on was loaded implicitly
+        borrow.task.addTaskListener(
+                new TaskListener() {
+                    @Override
+                    public void started(TaskEvent e) {
+                        if (e.getKind() != TaskEvent.Kind.PARSE) return;
+                        var uri = e.getSourceFile().toUri();
+                        if (uri.getScheme().equals("file")) implicitSources.add(Paths.get(uri));
+                    }
+                });
+        analyze(depth);
+    }
+
+    /**
+     * Analyze roots at least as far as depth. Only roots are attributed; other classes are completed as far as roots
+     * need them. If this throws, the batch can't be used anymore.
+     */
+    void analyze(AnalysisDepth depth) {
+        if (this.depth != null && this.depth.compareTo(depth) >= 0) return;
+        var javac = JavaCompiler.instance(borrow.context);
+        try {
+            if (this.depth == null) {
+                ((JavacTaskImpl) borrow.task).enter();
+                this.depth = AnalysisDepth.ENTER;
+            }
+            // The results of attribution are unreliable when errors are present
+            // You can get at `Element` values using `Trees`
+            if (this.depth == AnalysisDepth.ENTER && depth.compareTo(AnalysisDepth.ATTRIBUTE) >= 0) {
+                var files = new ArrayList<JavaFileObject>();
+                for (var root : roots) {
+                    files.add(root.getSourceFile());
+                }
+                javac.todo.retainFiles(files);
+                attributed = new ArrayDeque<>();
+                while (!javac.todo.isEmpty()) {
+                    var env = javac.todo.remove();
+                    attributing = env.toplevel.sourcefile.toUri();
+                    // Skip the remaining classes of files that are having an error storm
+                    if (partial.contains(attributing)) continue;
+                    try {
+                        attributed.add(javac.attribute(env));
+                    } catch (RuntimeException e) {
+                        if (!isErrorStorm(e)) throw e;
+                        // Attr was unwound halfway through a class, which can leave its state in the context
+                        // inconsistent, for example its environment stack, so the context isn't reused
+                        borrow.broken = true;
+                    }
+                }
+                attributing = null;
+                this.depth = AnalysisDepth.ATTRIBUTE;
+                indexReferences();
+            }
+            if (this.depth == AnalysisDepth.ATTRIBUTE && depth == AnalysisDepth.FULL) {
+                javac.flow(attributed);
+                attributed = null;
+                this.depth = AnalysisDepth.FULL;
+            }
+        } catch (RuntimeException e) {
+            throw cancelled(e);
+        } finally {
+            Log.instance(borrow.context).flush();
+        }
+        if (CancelToken.current().isCancelled()) {
+            borrow.close();
+            throw new CancellationException();
+        }
+    }
+
+    /** The modified time of each file that javac reads from FileStore, rather than from text we were given */
+    private static Map<URI, Long> fileStoreVersions(Collection<? extends JavaFileObject> files) {
+        var versions = new HashMap<URI, Long>();
+        for (var f : files) {
+            if (!(f instanceof SourceFileObject) || !((SourceFileObject) f).readsFileStore()) continue;
+            var path = ((SourceFileObject) f).path;
+            if (FileStore.contains(path)) versions.put(f.toUri(), f.getLastModified());
         }
+        return versions;
     }
 
     /**
-     * If the compilation failed because javac didn't find some package-private files in source files with different
+     * If the compilation failed because javac didn't find some package-private classes in source files with different
      * names, list those source files.
      */
     Set<Path> needsAdditionalSources() {
-        // Check for "class not found errors" that refer to package private classes
         var addFiles = new HashSet<Path>();
-        for (var err : parent.diags) {
+        for (var err : diags) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) continue;
             if (!isValidFileRange(err)) continue;
+            var file = Paths.get(err.getSource().toUri());
+            if (!FileStore.contains(file)) continue;
             var className = errorText(err);
-            var packageName = packageName(err);
-            var location = findPackagePrivateClass(packageName, className);
-            if (location != FILE_NOT_FOUND) {
+            var location = PackagePrivateIndex.classes(FileStore.packageName(file)).get(className);
+            if (location != null) {
                 addFiles.add(location);
             }
         }
         return addFiles;
     }
 
-    private String errorText(javax.tools.Diagnostic<? extends javax.tools.JavaFileObject> err) {
-        var file = Paths.get(err.getSource().toUri());
-        var contents = FileStore.contents(file);
+    private String errorText(Diagnostic<? extends JavaFileObject> err) {
+        CharSequence contents;
+        try {
+            // Not FileStore.contents(_), because javac may have read a header-only view
+            contents = err.getSource().getCharContent(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // Files that javac loaded on its own don't have end positions, so read the identifier at the start
         var begin = (int) err.getStartPosition();
-        var end = (int) err.getEndPosition();
-        return contents.substring(begin, end);
+        var end = begin;
+        while (end < contents.length() && Character.isJavaIdentifierPart(contents.charAt(end))) end++;
+        return contents.subSequence(begin, end).toString();
+    }
+
+    private boolean isValidFileRange(Diagnostic<? extends JavaFileObject> d) {
+        return d.getSource() != null
+                && d.getSource().toUri().getScheme().equals("file")
+                && d.getStartPosition() >= 0;
     }
 
-    private String packageName(javax.tools.Diagnostic<? extends javax.tools.JavaFileObject> err) {
-        var file = Paths.get(err.getSource().toUri());
-        return FileStore.packageName(file);
+    /**
+     * Record the references in roots that were read from FileStore and attributed without errors. The index is saved
+     * later, when the server is idle.
+     */
+    private void indexReferences() {
+        var errors = new HashSet<URI>();
+        for (var d : diags) {
+            if (d.getKind() == Diagnostic.Kind.ERROR && d.getSource() != null) errors.add(d.getSource().toUri());
+        }
+        for (var root : roots) {
+            var uri = root.getSourceFile().toUri();
+            var version = indexable.get(uri);
+            if (version == null || errors.contains(uri) || partial.contains(uri)) continue;
+            ReferenceIndex.index(task, root, Paths.get(uri), version);
+        }
     }
 
-    private static final Path FILE_NOT_FOUND = Paths.get("");
+    /** Thrown from report(_) to stop attributing a class once its file has too many errors */
+    private static class ErrorStorm extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-    private Path findPackagePrivateClass(String packageName, String className) {
-        for (var file : FileStore.list(packageName)) {
-            var parse = Parser.parseFile(file);
-            for (var candidate : parse.packagePrivateClasses()) {
-                if (candidate.contentEquals(className)) {
-                    return file;
-                }
-            }
+        ErrorStorm() {
+            super(null, null, false, false);
         }
-        return FILE_NOT_FOUND;
+    }
+
+    private static boolean isErrorStorm(Throwable e) {
+        for (; e != null; e = e.getCause()) {
+            if (e instanceof ErrorStorm) return true;
+        }
+        return false;
+    }
+
+    /** Collect d, unless its file already has too many errors */
+    private void report(Diagnostic<? extends JavaFileObject> d) {
+        if (d.getKind() != Diagnostic.Kind.ERROR || d.getSource() == null) {
+            diags.add(d);
+            return;
+        }
+        var file = d.getSource().toUri();
+        var count = errorCounts.merge(file, 1, Integer::sum);
+        if (count <= MAX_ERRORS_PER_FILE) {
+            diags.add(d);
+            return;
+        }
+        if (partial.add(file)) {
+            LOG.warning(String.format("...more than %d errors in %s, skipping the rest", MAX_ERRORS_PER_FILE, file));
+        }
+        // javac wraps this in a ClientCodeException, which unwinds to analyze(_)
+        if (file.equals(attributing)) throw new ErrorStorm();
+    }
+
+    /** javac wraps the CancellationException thrown by ReusableContext.started(_), so unwrap it */
+    private RuntimeException cancelled(RuntimeException e) {
+        if (!CancelToken.current().isCancelled()) return e;
+        borrow.close();
+        return new CancellationException();
     }
 
     @Override
@@ -98,11 +279,9 @@ class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(
-            JavaCompilerService parent, Collection<? extends JavaFileObject> sources) {
-        parent.diags.clear();
+    private ReusableCompiler.Borrow batchTask(Collection<? extends JavaFileObject> sources) {
         var options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.fileManager, parent.diags::add, options, List.of(), sources);
+        return parent.compiler.getTask(parent.fileManager, this::report, options, List.of(), sources);
     }
 
     /** Combine source path or class path entries using the system separator, for example ':' in unix */
@@ -110,7 +289,7 @@ class CompileBatch implements AutoCloseable {
         return classOrSourcePath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator));
     }
 
-    private static List<String> options(Set<Path> classPath, Set<String> addExports) {
+    static List<String> options(Set<Path> classPath, Set<String> addExports) {
         var list = new ArrayList<String>();
 
         Collections.addAll(list, "-classpath", joinPath(classPath));
@@ -118,6 +297,8 @@ class CompileBatch implements AutoCloseable {
         // Collections.addAll(list, "-verbose");
         Collections.addAll(list, "-proc:none");
         Collections.addAll(list, "-g");
+        // Let every file report up to MAX_ERRORS_PER_FILE errors, instead of 100 for the whole batch
+        Collections.addAll(list, "-Xmaxerrs", "10000");
         // You would think we could do -Xlint:all,
         // but some lints trigger fatal errors in the presence of parse errors
         Collections.addAll(
@@ -139,7 +320,5 @@ class CompileBatch implements AutoCloseable {
         return list;
     }
 
-    private boolean isValidFileRange(javax.tools.Diagnostic<? extends JavaFileObject> d) {
-        return d.getSource().toUri().getScheme().equals("file") && d.getStartPosition() >= 0 && d.getEndPosition() >= 0;
-    }
+    private static final Logger LOG = Logger.getLogger("main");
 }
@@ -0,0 +1,139 @@
+package org.javacs;
+
+import java.util.*;
+import java.util.logging.Logger;
+import javax.tools.JavaFileObject;
+
+/**
+ * CompileBatchPool keeps the last few CompileBatches alive, each in its own javac context, so requests that alternate
+ * between a few files reuse the analyzed trees instead of recompiling. When the pool is full, or more than
+ * `memoryBudget` of the heap is in use, the least-recently-used batches that aren't checked out are closed, which
+ * returns their contexts to ReusableCompiler.
+ */
+class CompileBatchPool {
+    private static class Entry {
+        final Set<JavaFileObject> sources;
+        final Map<JavaFileObject, Long> modified = new HashMap<>();
+        final CompileBatch batch;
+
+        Entry(Collection<? extends JavaFileObject> sources, CompileBatch batch) {
+            this.sources = Set.copyOf(sources);
+            for (var f : sources) {
+                modified.put(f, f.getLastModified());
+            }
+            this.batch = batch;
+        }
+
+        /**
+         * Is this batch up to date with sources, which are the same files with possibly newer contents? The batch also
+         * read the files that sources depend on, from source or from cached class files, so any change to FileStore
+         * since it was compiled may have made its symbols stale.
+         */
+        boolean isCurrent(Collection<? extends JavaFileObject> sources) {
+            if (batch.changes != FileStore.changes()) return false;
+            for (var f : sources) {
+                if (f.getLastModified() != modified.get(f)) return false;
+            }
+            return true;
+        }
+    }
+
+    private final int capacity;
+    private final double memoryBudget;
+    /** Batches in least-recently-used order */
+    private final List<Entry> entries = new ArrayList<>();
+
+    private long hits, misses, evictions;
+
+    CompileBatchPool(int capacity, double memoryBudget) {
+        this.capacity = capacity;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /** Check out a batch that compiled exactly `sources`, or return null if there isn't an up-to-date one */
+    synchronized CompileBatch checkOut(Collection<? extends JavaFileObject> sources) {
+        var key = Set.copyOf(sources);
+        for (var it = entries.iterator(); it.hasNext(); ) {
+            var e = it.next();
+            if (!e.batch.closed || !e.sources.equals(key)) continue;
+            it.remove();
+            if (!e.isCurrent(sources)) {
+                close(e);
+                break;
+            }
+            hits++;
+            e.batch.closed = false;
+            entries.add(e);
+            return e.batch;
+        }
+        misses++;
+        return null;
+    }
+
+    /** Forget a checked-out batch that failed, without returning its context to the compiler */
+    synchronized void discard(CompileBatch batch) {
+        entries.removeIf(e -> e.batch == batch);
+        batch.borrow.broken = true;
+        batch.borrow.close();
+    }
+
+    /** Close idle batches until there is room for one more */
+    synchronized void makeRoom() {
+        evictIdle(capacity - 1);
+        if (overBudget()) evictIdle(0);
+    }
+
+    /** Add a batch that was just compiled from sources; it is checked out until the caller closes it */
+    synchronized void add(Collection<? extends JavaFileObject> sources, CompileBatch batch) {
+        entries.add(new Entry(sources, batch));
+        if (overBudget()) evictIdle(0);
+    }
+
+    private boolean overBudget() {
+        var runtime = Runtime.getRuntime();
+        var used = runtime.totalMemory() - runtime.freeMemory();
+        return used > memoryBudget * runtime.maxMemory();
+    }
+
+    private void evictIdle(int targetSize) {
+        for (var it = entries.iterator(); it.hasNext() && entries.size() > targetSize; ) {
+            var e = it.next();
+            if (!e.batch.closed) continue;
+            it.remove();
+            close(e);
+        }
+    }
+
+    private void close(Entry e) {
+        LOG.info(String.format("...closing compiled batch of %d files", e.sources.size()));
+        e.batch.borrow.close();
+        evictions++;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        var lookups = hits + misses;
+        var hitRate = lookups == 0 ? 0 : 100 * hits / lookups;
+        return String.format(
+                "compile batches: %d/%d batches, %d hits, %d misses (%d%% hit rate), %d evictions",
+                entries.size(), capacity, hits, misses, hitRate, evictions);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
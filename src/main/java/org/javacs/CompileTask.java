@@ -2,8 +2,10 @@ package org.javacs;
 
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.JavacTask;
+import java.net.URI;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 
@@ -11,6 +13,8 @@ public class CompileTask implements AutoCloseable {
     public final JavacTask task;
     public final List<CompilationUnitTree> roots;
     public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+    /** Files that had so many errors that javac gave up on them; some of their errors are missing */
+    public final Set<URI> partial;
     private final Runnable close;
 
     public CompilationUnitTree root() {
@@ -42,10 +46,12 @@ public class CompileTask implements AutoCloseable {
             JavacTask task,
             List<CompilationUnitTree> roots,
             List<Diagnostic<? extends JavaFileObject>> diagnostics,
+            Set<URI> partial,
             Runnable close) {
         this.task = task;
         this.roots = roots;
         this.diagnostics = diagnostics;
+        this.partial = partial;
         this.close = close;
     }
 
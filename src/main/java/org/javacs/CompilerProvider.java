@@ -11,7 +11,17 @@ import javax.tools.JavaFileObject;
 public interface CompilerProvider {
     Set<String> imports();
 
-    List<String> publicTopLevelTypes();
+    /**
+     * Qualified names of top-level types whose simple name starts with partialName, or matches it by camel humps, like
+     * HSM for HashSetMultimap, stopping after limit names
+     */
+    List<String> findTypesMatching(String partialName, int limit);
+
+    /** Qualified names of top-level types that start with prefix, like java.util.List for java.util.L */
+    Iterable<String> findTypesStartingWith(String prefix);
+
+    /** Qualified names of top-level types whose simple name is simpleName */
+    List<String> findTypesNamed(String simpleName);
 
     List<String> packagePrivateTopLevelTypes(String packageName);
 
@@ -25,13 +35,22 @@ public interface CompilerProvider {
 
     Path[] findMemberReferences(String className, String memberName);
 
+    /** Files that may refer to the overload of methodName in className that takes erasedParameterTypes */
+    Path[] findMethodReferences(String className, String methodName, String[] erasedParameterTypes);
+
     ParseTask parse(Path file);
 
     ParseTask parse(JavaFileObject file);
 
+    /** Compile files and run every analysis, including flow analysis and lints */
     CompileTask compile(Path... files);
 
+    /** Compile files, stopping once they are analyzed to depth */
+    CompileTask compile(AnalysisDepth depth, Path... files);
+
     CompileTask compile(Collection<? extends JavaFileObject> sources);
 
+    CompileTask compile(AnalysisDepth depth, Collection<? extends JavaFileObject> sources);
+
     Path NOT_FOUND = Paths.get("");
 }
@@ -4,8 +4,15 @@ import java.io.*;
 import java.net.URI;
 import java.nio.file.*;
 import java.nio.file.attribute.*;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import javax.lang.model.element.TypeElement;
 import org.javacs.lsp.DidChangeTextDocumentParams;
@@ -15,13 +22,23 @@ import org.javacs.lsp.TextDocumentContentChangeEvent;
 
 public class FileStore {
 
-    private static final Set<Path> workspaceRoots = new HashSet<>();
+    // Documents are only modified by the main thread, but they can be read concurrently by worker threads.
+    // Each entry is immutable, so readers always see a consistent version of each file.
+    private static final Set<Path> workspaceRoots = ConcurrentHashMap.newKeySet();
 
-    private static final Map<Path, VersionedContent> activeDocuments = new HashMap<>();
+    private static final Map<Path, VersionedContent> activeDocuments = new ConcurrentHashMap<>();
 
     /** javaSources[file] is the javaSources time of a .java source file. */
-    // TODO organize by package name for speed of list(...)
-    private static final TreeMap<Path, Info> javaSources = new TreeMap<>();
+    private static final ConcurrentSkipListMap<Path, Info> javaSources = new ConcurrentSkipListMap<>();
+
+    /** javaSourcesByPackage[packageName] is every .java file in packageName, in the same order as javaSources. */
+    private static final Map<String, Set<Path>> javaSourcesByPackage = new ConcurrentHashMap<>();
+
+    /** javaSourcesByName[packageName.Foo] is the file packageName/Foo.java */
+    private static final ConcurrentSkipListMap<String, Path> javaSourcesByName = new ConcurrentSkipListMap<>();
+
+    /** The keys of javaSourcesByName, indexed by simple name for completion and quick fixes */
+    private static final WorkspaceTypeIndex javaSourcesBySimpleName = new WorkspaceTypeIndex();
 
     private static class Info {
         final Instant modified;
@@ -58,50 +75,101 @@ public class FileStore {
     }
 
     private static void addFiles(Path root) {
-        try {
-            Files.walkFileTree(root, new FindJavaSources());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        var started = Instant.now();
+        var snapshot = SourceSnapshot.load(root);
+        var found = new ConcurrentHashMap<Path, SourceSnapshot.Entry>();
+        ForkJoinPool.commonPool().invoke(new ScanDirectory(root, snapshot, found));
+        var reused = 0;
+        for (var entry : found.entrySet()) {
+            var file = entry.getKey();
+            var value = entry.getValue();
+            put(file, new Info(value.modified, value.packageName), true);
+            if (snapshot.get(file) == value) reused++;
+        }
+        SourceSnapshot.save(root, found);
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(
+                String.format(
+                        "Found %d java sources in %s in %d ms, %d unchanged since the last snapshot",
+                        found.size(), root, elapsed, reused));
+    }
+
+    /** Find the java sources in dir, reading package declarations in parallel, one task per directory */
+    @SuppressWarnings("serial") // Tasks are never serialized, and their fields aren't serializable
+    private static class ScanDirectory extends RecursiveAction {
+        final Path dir;
+        final Map<Path, SourceSnapshot.Entry> snapshot, found;
+
+        ScanDirectory(Path dir, Map<Path, SourceSnapshot.Entry> snapshot, Map<Path, SourceSnapshot.Entry> found) {
+            this.dir = dir;
+            this.snapshot = snapshot;
+            this.found = found;
         }
-    }
 
-    static class FindJavaSources extends SimpleFileVisitor<Path> {
         @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-            if (attrs.isSymbolicLink()) {
-                LOG.warning("Don't check " + dir + " for java sources");
-                return FileVisitResult.SKIP_SUBTREE;
+        protected void compute() {
+            var subdirs = new ArrayList<ScanDirectory>();
+            try (var list = Files.newDirectoryStream(dir)) {
+                for (var file : list) {
+                    // Don't follow symbolic links to directories
+                    var attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        subdirs.add(new ScanDirectory(file, snapshot, found));
+                    } else if (isJavaFile(file)) {
+                        found.put(file, entry(file, attrs));
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warning(String.format("Couldn't check %s for java sources: %s", dir, e.getMessage()));
             }
-            return FileVisitResult.CONTINUE;
+            invokeAll(subdirs);
         }
 
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes _attrs) {
-            if (isJavaFile(file)) {
-                readInfoFromDisk(file);
+        private SourceSnapshot.Entry entry(Path file, BasicFileAttributes attrs) {
+            var modified = attrs.lastModifiedTime().toInstant();
+            var size = attrs.size();
+            var previous = snapshot.get(file);
+            if (previous != null && previous.matches(modified, size)) {
+                return previous;
             }
-            return FileVisitResult.CONTINUE;
+            return new SourceSnapshot.Entry(modified, size, StringSearch.packageName(file));
         }
     }
 
+    static Set<Path> workspaceRoots() {
+        return workspaceRoots;
+    }
+
     static Collection<Path> all() {
         return javaSources.keySet();
     }
 
     static List<Path> list(String packageName) {
-        var list = new ArrayList<Path>();
-        for (var file : javaSources.keySet()) {
-            if (javaSources.get(file).packageName.equals(packageName)) {
-                list.add(file);
-            }
-        }
-        return list;
+        var files = javaSourcesByPackage.get(packageName);
+        if (files == null) return List.of();
+        return new ArrayList<>(files);
+    }
+
+    /** Find the file packageName/className.java, which is where javac expects to find public class className. */
+    static Optional<Path> file(String packageName, String className) {
+        var file = javaSourcesByName.get(qualifiedName(packageName, className));
+        return Optional.ofNullable(file);
+    }
+
+    /** The qualified name of every class that's declared in a file of the same name, like packageName.Foo, sorted */
+    static NavigableSet<String> classNames() {
+        return javaSourcesByName.navigableKeySet();
+    }
+
+    /** The same classes as classNames(), indexed by simple name */
+    static WorkspaceTypeIndex classIndex() {
+        return javaSourcesBySimpleName;
     }
 
     public static Set<Path> sourceRoots() {
         var roots = new HashSet<Path>();
-        for (var file : javaSources.keySet()) {
-            var root = sourceRoot(file);
+        for (var entry : javaSources.entrySet()) {
+            var root = sourceRoot(entry.getKey(), entry.getValue());
             if (root != null) {
                 roots.add(root);
             }
@@ -109,8 +177,7 @@ public class FileStore {
         return roots;
     }
 
-    private static Path sourceRoot(Path file) {
-        var info = javaSources.get(file);
+    private static Path sourceRoot(Path file, Info info) {
         var parts = info.packageName.split("\\.");
         var dir = file.getParent();
         for (var i = parts.length - 1; i >= 0; i--) {
@@ -130,24 +197,27 @@ public class FileStore {
 
     static Instant modified(Path file) {
         // If file is open, use last in-memory modification time
-        if (activeDocuments.containsKey(file)) {
-            return activeDocuments.get(file).modified;
-        }
-        // If we've never checked before, look up modified time on disk
-        if (!javaSources.containsKey(file)) {
-            readInfoFromDisk(file);
+        var open = activeDocuments.get(file);
+        if (open != null) {
+            return open.modified;
         }
         // Look up modified time from cache
-        return javaSources.get(file).modified;
+        return info(file).modified;
     }
 
     static String packageName(Path file) {
-        // If we've never checked before, look up package name on disk
-        if (!javaSources.containsKey(file)) {
-            readInfoFromDisk(file);
-        }
         // Look up package name from cache
-        return javaSources.get(file).packageName;
+        return info(file).packageName;
+    }
+
+    private static Info info(Path file) {
+        var info = javaSources.get(file);
+        // If we've never checked before, look up info on disk
+        if (info == null) {
+            // Looking up a file for the first time doesn't change it, so it doesn't count towards changes()
+            info = readInfoFromDisk(file, false);
+        }
+        return info;
     }
 
     public static String suggestedPackageName(Path file) {
@@ -180,35 +250,97 @@ public class FileStore {
     }
 
     static void externalCreate(Path file) {
-        readInfoFromDisk(file);
+        readInfoFromDisk(file, true);
     }
 
     static void externalChange(Path file) {
-        readInfoFromDisk(file);
+        readInfoFromDisk(file, true);
     }
 
     static void externalDelete(Path file) {
-        javaSources.remove(file);
+        remove(file);
     }
 
-    private static void readInfoFromDisk(Path file) {
+    private static Info readInfoFromDisk(Path file, boolean changed) {
         try {
             var time = Files.getLastModifiedTime(file).toInstant();
             var packageName = StringSearch.packageName(file);
-            javaSources.put(file, new Info(time, packageName));
+            var info = new Info(time, packageName);
+            put(file, info, changed);
+            return info;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
-            javaSources.remove(file);
+            remove(file);
+            return null;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    // javaSources is read without locking, but all updates go through put(_, _, _) and remove(_),
+    // so the secondary indexes are never updated concurrently for the same file.
+
+    private static synchronized void put(Path file, Info info, boolean changed) {
+        IdentifierIndex.changed(file);
+        var previous = javaSources.put(file, info);
+        if (changed) changes.incrementAndGet();
+        if (previous != null) {
+            if (previous.packageName.equals(info.packageName)) return;
+            unindex(file, previous.packageName);
+        }
+        javaSourcesByPackage.computeIfAbsent(info.packageName, __ -> new ConcurrentSkipListSet<>()).add(file);
+        // If the same class appears in several source roots, prefer the first, like list(_) does
+        var qualifiedName = qualifiedName(info.packageName, className(file));
+        javaSourcesByName.merge(qualifiedName, file, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        javaSourcesBySimpleName.add(qualifiedName);
+    }
+
+    private static synchronized void remove(Path file) {
+        IdentifierIndex.changed(file);
+        var previous = javaSources.remove(file);
+        changes.incrementAndGet();
+        if (previous != null) {
+            unindex(file, previous.packageName);
+        }
+    }
+
+    private static void unindex(Path file, String packageName) {
+        var files = javaSourcesByPackage.get(packageName);
+        if (files != null) {
+            files.remove(file);
+            if (files.isEmpty()) javaSourcesByPackage.remove(packageName);
+        }
+        var className = className(file);
+        var qualifiedName = qualifiedName(packageName, className);
+        if (javaSourcesByName.remove(qualifiedName, file)) {
+            // Fall back to the same class in another source root
+            for (var other : list(packageName)) {
+                if (className(other).equals(className)) {
+                    javaSourcesByName.put(qualifiedName, other);
+                    break;
+                }
+            }
+            if (!javaSourcesByName.containsKey(qualifiedName)) javaSourcesBySimpleName.remove(qualifiedName);
+        }
+    }
+
+    private static String className(Path file) {
+        var fileName = file.getFileName().toString();
+        return fileName.substring(0, fileName.length() - ".java".length());
+    }
+
+    private static String qualifiedName(String packageName, String className) {
+        if (packageName.isEmpty()) return className;
+        return packageName + "." + className;
+    }
+
     static void open(DidOpenTextDocumentParams params) {
         if (!isJavaFile(params.textDocument.uri)) return;
         var document = params.textDocument;
         var file = Paths.get(document.uri);
         activeDocuments.put(file, new VersionedContent(document.text, document.version));
+        changes.incrementAndGet();
+        IdentifierIndex.changed(file);
     }
 
     static void change(DidChangeTextDocumentParams params) {
@@ -222,16 +354,30 @@ public class FileStore {
         }
         var newText = existing.content;
         for (var change : params.contentChanges) {
-            if (change.range == null) newText = change.text;
+            if (change.range == null) newText = Rope.of(change.text);
             else newText = patch(newText, change);
         }
         activeDocuments.put(file, new VersionedContent(newText, document.version));
+        changes.incrementAndGet();
+        IdentifierIndex.changed(file);
     }
 
     static void close(DidCloseTextDocumentParams params) {
         if (!isJavaFile(params.textDocument.uri)) return;
         var file = Paths.get(params.textDocument.uri);
         activeDocuments.remove(file);
+        changes.incrementAndGet();
+        IdentifierIndex.changed(file);
+    }
+
+    private static final AtomicLong changes = new AtomicLong();
+
+    /**
+     * The number of changes to any file so far. If it's the same as the last time a caller looked, no file has been
+     * created, changed or deleted since, so anything the caller derived from FileStore is still valid.
+     */
+    static long changes() {
+        return changes.get();
     }
 
     static Set<Path> activeDocuments() {
@@ -242,8 +388,9 @@ public class FileStore {
         if (!isJavaFile(file)) {
             throw new RuntimeException(file + " is not a java file");
         }
-        if (activeDocuments.containsKey(file)) {
-            return activeDocuments.get(file).content;
+        var open = activeDocuments.get(file);
+        if (open != null) {
+            return open.content.toString();
         }
         try {
             return Files.readString(file);
@@ -255,10 +402,19 @@ public class FileStore {
         }
     }
 
+    /** Like contents(file), but open documents are returned as a Rope, which is only flattened if it's needed */
+    static CharSequence charContent(Path file) {
+        var open = activeDocuments.get(file);
+        if (open != null) {
+            return open.content;
+        }
+        return contents(file);
+    }
+
     static InputStream inputStream(Path file) {
         var uri = file.toUri();
         if (activeDocuments.containsKey(uri)) {
-            var string = activeDocuments.get(uri).content;
+            var string = activeDocuments.get(uri).content.toString();
             var bytes = string.getBytes();
             return new ByteArrayInputStream(bytes);
         }
@@ -276,7 +432,7 @@ public class FileStore {
     static BufferedReader bufferedReader(Path file) {
         var uri = file.toUri();
         if (activeDocuments.containsKey(uri)) {
-            var string = activeDocuments.get(uri).content;
+            var string = activeDocuments.get(uri).content.toString();
             return new BufferedReader(new StringReader(string));
         }
         try {
@@ -293,55 +449,10 @@ public class FileStore {
         return bufferedReader(file);
     }
 
-    /** Convert from line/column (1-based) to offset (0-based) */
-    static int offset(String contents, int line, int column) {
-        line--;
-        column--;
-        int cursor = 0;
-        while (line > 0) {
-            if (contents.charAt(cursor) == '\n') {
-                line--;
-            }
-            cursor++;
-        }
-        return cursor + column;
-    }
-
-    private static String patch(String sourceText, TextDocumentContentChangeEvent change) {
-        try {
-            var range = change.range;
-            var reader = new BufferedReader(new StringReader(sourceText));
-            var writer = new StringWriter();
-
-            // Skip unchanged lines
-            int line = 0;
-
-            while (line < range.start.line) {
-                writer.write(reader.readLine() + '\n');
-                line++;
-            }
-
-            // Skip unchanged chars
-            for (int character = 0; character < range.start.character; character++) {
-                writer.write(reader.read());
-            }
-
-            // Write replacement text
-            writer.write(change.text);
-
-            // Skip replaced text
-            reader.skip(change.rangeLength);
-
-            // Write remaining text
-            while (true) {
-                int next = reader.read();
-
-                if (next == -1) return writer.toString();
-                else writer.write(next);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private static Rope patch(Rope sourceText, TextDocumentContentChangeEvent change) {
+        var start = PositionHelper.offset(sourceText, change.range.start);
+        var end = PositionHelper.offset(sourceText, change.range.end);
+        return sourceText.replace(start, end, change.text);
     }
 
     static boolean isJavaFile(Path file) {
@@ -364,10 +475,9 @@ public class FileStore {
         var packageName = StringSearch.mostName(qualifiedName);
         var className = StringSearch.lastName(qualifiedName);
         // Fast path: look for text `class Foo` in file Foo.java
-        for (var f : list(packageName)) {
-            if (f.getFileName().toString().equals(className) && StringSearch.containsType(f, el)) {
-                return Optional.of(f);
-            }
+        var fastFind = file(packageName, className);
+        if (fastFind.isPresent() && StringSearch.containsType(fastFind.get(), el)) {
+            return fastFind;
         }
         // Slow path: look for text `class Foo` in any file in package
         for (var f : list(packageName)) {
@@ -382,13 +492,13 @@ public class FileStore {
 }
 
 class VersionedContent {
-    final String content;
+    final Rope content;
     final int version;
     final Instant modified = Instant.now();
 
-    VersionedContent(String content, int version) {
+    VersionedContent(CharSequence content, int version) {
         Objects.requireNonNull(content, "content is null");
-        this.content = content;
+        this.content = Rope.of(content);
         this.version = version;
     }
 }
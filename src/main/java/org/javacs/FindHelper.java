@@ -18,7 +18,6 @@ import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import org.javacs.lsp.Location;
-import org.javacs.lsp.Position;
 import org.javacs.lsp.Range;
 
 public class FindHelper {
@@ -134,7 +133,6 @@ public class FindHelper {
     }
 
     public static Location location(CompileTask task, TreePath path, CharSequence name) {
-        var lines = path.getCompilationUnit().getLineMap();
         var pos = Trees.instance(task.task).getSourcePositions();
         var start = (int) pos.getStartPosition(path.getCompilationUnit(), path.getLeaf());
         var end = (int) pos.getEndPosition(path.getCompilationUnit(), path.getLeaf());
@@ -142,12 +140,8 @@ public class FindHelper {
             start = FindHelper.findNameIn(path.getCompilationUnit(), name, start, end);
             end = start + name.length();
         }
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var startPos = new Position(startLine - 1, startColumn - 1);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var endPos = new Position(endLine - 1, endColumn - 1);
+        var startPos = PositionHelper.position(path.getCompilationUnit(), start);
+        var endPos = PositionHelper.position(path.getCompilationUnit(), end);
         var range = new Range(startPos, endPos);
         var uri = path.getCompilationUnit().getSourceFile().toUri();
         return new Location(uri, range);
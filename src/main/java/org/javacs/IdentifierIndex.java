@@ -0,0 +1,428 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * IdentifierIndex maps every identifier in the workspace to the files that contain it, so find-references, rename and
+ * workspace symbols can pick candidate files without reading the whole workspace. FileStore reports which files
+ * changed, and they are re-read the next time the index is queried. The index is saved in CacheDirectory between
+ * launches; on a warm start, only files whose modified time has changed are re-read.
+ */
+class IdentifierIndex {
+    /** Change this whenever the format changes, so old indexes are ignored */
+    private static final int VERSION = 1;
+
+    /** A sorted set of file ids, stored as a bare int array */
+    private static class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        void add(int id) {
+            var i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) return;
+            i = -i - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            var i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) return;
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+        }
+    }
+
+    /** The identifiers in one file, as sorted token ids */
+    private static class Entry {
+        final Instant modified;
+        final int[] tokens;
+
+        Entry(Instant modified, int[] tokens) {
+            this.modified = modified;
+            this.tokens = tokens;
+        }
+    }
+
+    /** Every token that appears in at least one file; ids of tokens that no longer appear anywhere are reused */
+    private static final List<String> tokens = new ArrayList<>();
+    private static final Map<String, Integer> tokenIds = new HashMap<>();
+    private static final List<Postings> postings = new ArrayList<>();
+    private static final Deque<Integer> freeTokenIds = new ArrayDeque<>();
+
+    /** Tokens that were created, or removed from a file, during this update, and might not appear anywhere now */
+    private static final Set<Integer> maybeUnused = new HashSet<>();
+
+    private static final List<Path> paths = new ArrayList<>();
+    private static final Map<Path, Integer> fileIds = new HashMap<>();
+    private static final Map<Path, Entry> entries = new HashMap<>();
+
+    /** Files that have changed since the last query, updated without locking */
+    private static final Set<Path> changed = ConcurrentHashMap.newKeySet();
+
+    /** Entries loaded from CacheDirectory that haven't been checked against FileStore yet */
+    private static final Map<Path, Entry> saved = new HashMap<>();
+    private static final Set<Path> loadedRoots = new HashSet<>();
+
+    static void changed(Path file) {
+        changed.add(file);
+    }
+
+    /** Files that contain every part of word, which may be a qualified name like java.util.List */
+    static synchronized List<Path> containing(String word) {
+        update();
+        Postings smallest = null;
+        var parts = word.split("\\.");
+        for (var part : parts) {
+            var p = postings(part);
+            if (p == null) return List.of();
+            if (smallest == null || p.size < smallest.size) smallest = p;
+        }
+        var found = new ArrayList<Path>();
+        nextFile:
+        for (var i = 0; i < smallest.size; i++) {
+            var id = smallest.ids[i];
+            for (var part : parts) {
+                if (!postings(part).contains(id)) continue nextFile;
+            }
+            found.add(paths.get(id));
+        }
+        found.sort(null);
+        return found;
+    }
+
+    /** Does file contain the identifier word? */
+    static synchronized boolean contains(Path file, String word) {
+        update();
+        var id = fileIds.get(file);
+        var p = postings(word);
+        return id != null && p != null && p.contains(id);
+    }
+
+    /** Files that contain an identifier that matches query, using StringSearch.matchesTitleCase */
+    static synchronized List<Path> matching(String query) {
+        update();
+        var ids = new BitSet();
+        for (var t = 0; t < tokens.size(); t++) {
+            var p = postings.get(t);
+            if (p.size > 0 && StringSearch.matchesTitleCase(tokens.get(t), query)) {
+                for (var i = 0; i < p.size; i++) {
+                    ids.set(p.ids[i]);
+                }
+            }
+        }
+        var found = new ArrayList<Path>();
+        for (var id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            found.add(paths.get(id));
+        }
+        found.sort(null);
+        return found;
+    }
+
+    private static Postings postings(String token) {
+        var id = tokenIds.get(token);
+        if (id == null) return null;
+        return postings.get(id);
+    }
+
+    /** Bring the index up to date with every file that has changed since the last query */
+    private static void update() {
+        if (changed.isEmpty()) return;
+        try {
+            updateChanged();
+        } finally {
+            releaseUnusedTokens();
+        }
+    }
+
+    private static void updateChanged() {
+        loadSavedRoots();
+        var stale = new HashMap<Path, Instant>();
+        for (var it = changed.iterator(); it.hasNext(); ) {
+            var file = it.next();
+            it.remove();
+            if (!FileStore.contains(file)) {
+                unindex(file);
+                continue;
+            }
+            var modified = FileStore.modified(file);
+            var current = entries.get(file);
+            if (current != null && current.modified.equals(modified)) continue;
+            var previous = saved.remove(file);
+            if (previous != null && previous.modified.equals(modified)) {
+                index(file, previous);
+                continue;
+            }
+            stale.put(file, modified);
+        }
+        saved.clear();
+        if (stale.isEmpty()) return;
+        var started = Instant.now();
+        var read =
+                stale.keySet()
+                        .parallelStream()
+                        .collect(Collectors.toMap(f -> f, f -> identifiers(FileStore.contents(f))));
+        for (var file : stale.keySet()) {
+            index(file, new Entry(stale.get(file), tokenIds(read.get(file))));
+            // Open files change with every keystroke, so their entries aren't worth saving
+            if (!FileStore.activeDocuments().contains(file)) {
+                var root = workspaceRoot(file);
+                if (root != null) changedRoots.add(root);
+            }
+        }
+        LOG.info(
+                String.format(
+                        "Indexed identifiers in %d files in %d ms",
+                        stale.size(), Duration.between(started, Instant.now()).toMillis()));
+    }
+
+    /** Workspace roots whose entries have changed since they were last saved */
+    private static final Set<Path> changedRoots = new HashSet<>();
+
+    /**
+     * Save the entries of workspace roots that have new entries. Queries only update the index in memory, because this
+     * rewrites the whole index of each root; JavaLanguageServer calls it when the server is idle.
+     */
+    static synchronized void save() {
+        for (var root : changedRoots) {
+            save(root);
+        }
+        changedRoots.clear();
+    }
+
+    private static void index(Path file, Entry entry) {
+        var id = fileIds.get(file);
+        if (id == null) {
+            id = paths.size();
+            paths.add(file);
+            fileIds.put(file, id);
+        }
+        var previous = entries.put(file, entry);
+        if (previous != null) {
+            for (var t : previous.tokens) {
+                removePosting(t, id);
+            }
+        }
+        for (var t : entry.tokens) {
+            postings.get(t).add(id);
+        }
+    }
+
+    private static void unindex(Path file) {
+        var previous = entries.remove(file);
+        if (previous == null) return;
+        var id = fileIds.get(file);
+        for (var t : previous.tokens) {
+            removePosting(t, id);
+        }
+    }
+
+    private static void removePosting(int token, int fileId) {
+        var p = postings.get(token);
+        p.remove(fileId);
+        if (p.size == 0) maybeUnused.add(token);
+    }
+
+    /**
+     * Forget tokens that no longer appear in any file, like the partial identifiers that appear while typing, so the
+     * vocabulary that matching() scans grows with the workspace, not with the length of the session. This waits until
+     * the end of an update, because a token can be removed from a file's old entry and added back by its new one.
+     */
+    private static void releaseUnusedTokens() {
+        for (var t : maybeUnused) {
+            var p = postings.get(t);
+            if (p.size > 0) continue;
+            tokenIds.remove(tokens.get(t));
+            tokens.set(t, null);
+            p.ids = new int[2];
+            freeTokenIds.push(t);
+        }
+        maybeUnused.clear();
+    }
+
+    /** The number of distinct identifiers in the workspace */
+    static synchronized int vocabularySize() {
+        update();
+        return tokenIds.size();
+    }
+
+    /** Every identifier in text, skipping numbers */
+    static Set<String> identifiers(String text) {
+        var found = new HashSet<String>();
+        var i = 0;
+        while (i < text.length()) {
+            if (!StringSearch.isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            var start = i;
+            while (i < text.length() && StringSearch.isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (!Character.isDigit(text.charAt(start))) {
+                found.add(text.substring(start, i));
+            }
+        }
+        return found;
+    }
+
+    private static int[] tokenIds(Collection<String> identifiers) {
+        var ids = new int[identifiers.size()];
+        var i = 0;
+        for (var token : identifiers) {
+            ids[i++] = tokenId(token);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static int tokenId(String token) {
+        var id = tokenIds.get(token);
+        if (id == null) {
+            if (freeTokenIds.isEmpty()) {
+                id = tokens.size();
+                tokens.add(token);
+                postings.add(new Postings());
+            } else {
+                id = freeTokenIds.pop();
+                tokens.set(id, token);
+            }
+            tokenIds.put(token, id);
+            // Tokens read from a saved index might belong only to files that have changed since it was saved
+            maybeUnused.add(id);
+        }
+        return id;
+    }
+
+    private static Path workspaceRoot(Path file) {
+        for (var root : FileStore.workspaceRoots()) {
+            if (file.startsWith(root)) return root;
+        }
+        return null;
+    }
+
+    private static Path file(Path workspaceRoot) {
+        return CacheDirectory.forWorkspace(workspaceRoot, "identifiers");
+    }
+
+    private static void loadSavedRoots() {
+        for (var root : FileStore.workspaceRoots()) {
+            if (loadedRoots.add(root)) {
+                load(root);
+            }
+        }
+    }
+
+    // The saved format is a vocabulary followed by the token ids of each file,
+    // sorted and delta-encoded as variable-length ints, so most ids take 1 or 2 bytes.
+
+    private static void load(Path workspaceRoot) {
+        var file = file(workspaceRoot);
+        if (!Files.exists(file)) return;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return;
+            if (!in.readUTF().equals(workspaceRoot.toString())) return;
+            var vocabulary = new int[in.readInt()];
+            for (var i = 0; i < vocabulary.length; i++) {
+                vocabulary[i] = tokenId(in.readUTF());
+            }
+            var count = in.readInt();
+            for (var i = 0; i < count; i++) {
+                var path = workspaceRoot.resolve(in.readUTF());
+                var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                var ids = new int[readVarInt(in)];
+                var local = 0;
+                for (var j = 0; j < ids.length; j++) {
+                    local += readVarInt(in);
+                    ids[j] = vocabulary[local];
+                }
+                Arrays.sort(ids);
+                saved.put(path, new Entry(modified, ids));
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            LOG.warning(String.format("Ignoring identifier index %s: %s", file, e.getMessage()));
+            saved.keySet().removeIf(f -> f.startsWith(workspaceRoot));
+        }
+    }
+
+    private static void save(Path workspaceRoot) {
+        var file = file(workspaceRoot);
+        // Number the tokens that appear in this workspace root
+        var local = new HashMap<Integer, Integer>();
+        var vocabulary = new ArrayList<String>();
+        var files = new ArrayList<Path>();
+        for (var e : entries.entrySet()) {
+            if (!e.getKey().startsWith(workspaceRoot)) continue;
+            files.add(e.getKey());
+            for (var t : e.getValue().tokens) {
+                if (local.putIfAbsent(t, vocabulary.size()) == null) {
+                    vocabulary.add(tokens.get(t));
+                }
+            }
+        }
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(workspaceRoot.toString());
+                out.writeInt(vocabulary.size());
+                for (var token : vocabulary) {
+                    out.writeUTF(token);
+                }
+                out.writeInt(files.size());
+                for (var f : files) {
+                    var entry = entries.get(f);
+                    out.writeUTF(workspaceRoot.relativize(f).toString());
+                    out.writeLong(entry.modified.getEpochSecond());
+                    out.writeInt(entry.modified.getNano());
+                    var ids = new int[entry.tokens.length];
+                    for (var i = 0; i < ids.length; i++) {
+                        ids[i] = local.get(entry.tokens[i]);
+                    }
+                    Arrays.sort(ids);
+                    writeVarInt(out, ids.length);
+                    var last = 0;
+                    for (var id : ids) {
+                        writeVarInt(out, id - last);
+                        last = id;
+                    }
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save identifier index %s: %s", file, e.getMessage()));
+        }
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        var value = 0;
+        for (var shift = 0; ; shift += 7) {
+            var b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
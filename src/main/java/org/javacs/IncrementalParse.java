@@ -0,0 +1,291 @@
+package org.javacs;
+
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.parser.DocCommentParser;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.*;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.JCTree.*;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.DiagnosticSource;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Position;
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Logger;
+import javax.tools.JavaFileObject;
+
+/**
+ * IncrementalParse updates the parse of a file after an edit that stays inside one method or initializer body, which
+ * is what most keystrokes are. Only the new text of that body is parsed, in the javac context of the previous parse,
+ * and the rest of the tree is copied with its positions shifted past the edit. The previous parse isn't modified, so
+ * requests that are still reading it aren't disturbed. When the edit crosses a member boundary, or changes how the text
+ * after the body is tokenized, reparse(_, _) returns null and the caller parses the whole file.
+ */
+class IncrementalParse {
+    /** Bodies are parsed as the body of a method in this class; initializer blocks parse the same way */
+    private static final String PREFIX = "class A{void a()";
+
+    /** Parse file, a newer version of previous.file, by reparsing the one body that changed, or return null */
+    static Parser reparse(Parser previous, JavaFileObject file) {
+        String contents;
+        try {
+            contents = file.getCharContent(false).toString();
+        } catch (IOException e) {
+            return null;
+        }
+        // Find the region of the previous contents that changed
+        var before = previous.contents;
+        var limit = Math.min(before.length(), contents.length());
+        var start = 0;
+        while (start < limit && before.charAt(start) == contents.charAt(start)) {
+            start++;
+        }
+        var suffix = 0;
+        while (suffix < limit - start
+                && before.charAt(before.length() - 1 - suffix) == contents.charAt(contents.length() - 1 - suffix)) {
+            suffix++;
+        }
+        var end = before.length() - suffix;
+        var root = (JCCompilationUnit) previous.root;
+        if (root.endPositions == null) return null;
+        var body = enclosingBody(root, before, start, end);
+        if (body == null) return null;
+        var context = ((BasicJavacTask) previous.task).getContext();
+        var delta = contents.length() - before.length();
+        // Parsers in ParserPool and doc comments of other trees share this context
+        try {
+            synchronized (context) {
+                return graft(previous, file, contents, context, body, end, delta);
+            }
+        } catch (RuntimeException | AssertionError e) {
+            LOG.warning(String.format("...failed to reparse %s incrementally: %s", file.toUri(), e));
+            return null;
+        }
+    }
+
+    /** The innermost method or initializer body that strictly contains [start, end), or null if there isn't one */
+    private static JCBlock enclosingBody(JCCompilationUnit root, String contents, int start, int end) {
+        class FindBody extends TreeScanner {
+            JCBlock found;
+
+            boolean encloses(JCBlock body) {
+                // Both braces must be outside the edit, or the edit could change where the body ends
+                if (body == null || contents.charAt(body.pos) != '{') return false;
+                return body.pos < start && end < root.endPositions.getEndPos(body);
+            }
+
+            @Override
+            public void scan(JCTree tree) {
+                if (tree == null || TreeInfo.getStartPos(tree) > start) return;
+                var treeEnd = root.endPositions.getEndPos(tree);
+                if (treeEnd != Position.NOPOS && treeEnd < end) return;
+                super.scan(tree);
+            }
+
+            @Override
+            public void visitMethodDef(JCMethodDecl tree) {
+                if (encloses(tree.body)) found = tree.body;
+                super.visitMethodDef(tree);
+            }
+
+            @Override
+            public void visitClassDef(JCClassDecl tree) {
+                for (var def : tree.defs) {
+                    if (def instanceof JCBlock && encloses((JCBlock) def)) found = (JCBlock) def;
+                }
+                super.visitClassDef(tree);
+            }
+        }
+        var find = new FindBody();
+        find.scan(root);
+        return find.found;
+    }
+
+    private static Parser graft(
+            Parser previous,
+            JavaFileObject file,
+            String contents,
+            Context context,
+            JCBlock body,
+            int editEnd,
+            int delta) {
+        var root = (JCCompilationUnit) previous.root;
+        var bodyStart = body.pos;
+        var bodyEnd = root.endPositions.getEndPos(body) + delta;
+        var replacement = parseBody(context, contents, bodyStart, bodyEnd);
+        if (replacement == null) return null;
+        // The body was parsed after PREFIX instead of at bodyStart
+        var offset = bodyStart - PREFIX.length();
+        replacement.block.flags = body.flags;
+        // Copy everything except the body, shifting positions after the edit
+        var ends = new EndPositions();
+        var docs = new DocComments(context, new DiagnosticSource(file, Log.instance(context)));
+        var copier =
+                new TreeCopier<Void>(TreeMaker.instance(context)) {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <T extends JCTree> T copy(T tree, Void p) {
+                        if (tree == null) return null;
+                        if (tree == body) return (T) replacement.block;
+                        var copy = super.copy(tree, p);
+                        copy.pos = shift(tree.pos);
+                        // TreeCopier doesn't copy the start of variables declared with `var`
+                        if (tree instanceof JCVariableDecl) {
+                            var startPos = ((JCVariableDecl) tree).startPos;
+                            if (startPos != Position.NOPOS) ((JCVariableDecl) copy).startPos = shift(startPos);
+                        }
+                        var end = root.endPositions.getEndPos(tree);
+                        if (end != Position.NOPOS) ends.storeEnd(copy, shift(end));
+                        if (root.docComments != null && root.docComments.hasComment(tree)) {
+                            docs.putComment(copy, root.docComments.getComment(tree));
+                        }
+                        return copy;
+                    }
+
+                    int shift(int pos) {
+                        return pos >= editEnd ? pos + delta : pos;
+                    }
+                };
+        var copy = copier.copy(root);
+        // Move the nodes of the new body to bodyStart, keeping the end positions and doc comments they were parsed with
+        var moved = new HashSet<JCTree>();
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree == null) return;
+                // The parser shares some nodes, like the type of `int a, b;`, which must only be moved once
+                if (!moved.add(tree)) return;
+                if (tree.pos != Position.NOPOS) tree.pos += offset;
+                if (tree instanceof JCVariableDecl) {
+                    var decl = (JCVariableDecl) tree;
+                    if (decl.startPos != Position.NOPOS) decl.startPos += offset;
+                }
+                var end = replacement.unit.endPositions.getEndPos(tree);
+                if (end != Position.NOPOS) ends.storeEnd(tree, end + offset);
+                if (replacement.unit.docComments.hasComment(tree)) {
+                    docs.putComment(tree, replacement.unit.docComments.getComment(tree));
+                }
+                super.scan(tree);
+            }
+
+            @Override
+            public void visitErroneous(JCErroneous tree) {
+                scan(tree.errs);
+            }
+        }.scan(replacement.block);
+        copy.sourcefile = file;
+        copy.endPositions = ends;
+        copy.docComments = docs;
+        copy.lineMap = Position.makeLineMap(contents.toCharArray(), contents.length(), false);
+        return new Parser(file, contents, previous.task, copy);
+    }
+
+    private static class Body {
+        final JCCompilationUnit unit;
+        final JCBlock block;
+
+        Body(JCCompilationUnit unit, JCBlock block) {
+            this.unit = unit;
+            this.block = block;
+        }
+    }
+
+    /**
+     * Parse contents[bodyStart, bodyEnd) as a body, wrapped in a class declaration. The nodes of the body are
+     * positioned as if the body started at PREFIX.length(), so graft(...) moves them to bodyStart.
+     */
+    private static Body parseBody(Context context, String contents, int bodyStart, int bodyEnd) {
+        var text = new StringBuilder(PREFIX.length() + bodyEnd - bodyStart + 1);
+        text.append(PREFIX).append(contents, bodyStart, bodyEnd).append('}');
+        var log = Log.instance(context);
+        var source = log.useSource(null);
+        var discard = new Log.DiscardDiagnosticHandler(log);
+        JCCompilationUnit unit;
+        try {
+            var parser = ParserFactory.instance(context).newParser(text, true, true, false);
+            unit = parser.parseCompilationUnit();
+        } finally {
+            log.popDiagnosticHandler(discard);
+            log.useSource(source);
+        }
+        // The body must end where it did in the whole file, or the edit changed how the text after it is tokenized
+        if (unit.defs.size() != 1 || !(unit.defs.head instanceof JCClassDecl)) return null;
+        var defs = ((JCClassDecl) unit.defs.head).defs;
+        if (defs.size() != 1 || !(defs.head instanceof JCMethodDecl)) return null;
+        var block = ((JCMethodDecl) defs.head).body;
+        if (block == null || block.pos != PREFIX.length()) return null;
+        if (unit.endPositions.getEndPos(block) != PREFIX.length() + bodyEnd - bodyStart) return null;
+        return new Body(unit, block);
+    }
+
+    private static class EndPositions implements EndPosTable {
+        private final Map<JCTree, Integer> ends = new HashMap<>();
+
+        @Override
+        public int getEndPos(JCTree tree) {
+            return ends.getOrDefault(tree, Position.NOPOS);
+        }
+
+        @Override
+        public void storeEnd(JCTree tree, int endPos) {
+            ends.put(tree, endPos);
+        }
+
+        @Override
+        public int replaceTree(JCTree oldTree, JCTree newTree) {
+            var end = ends.remove(oldTree);
+            if (end == null) return Position.NOPOS;
+            ends.put(newTree, end);
+            return end;
+        }
+    }
+
+    /**
+     * Doc comments of the copied tree, which are parsed in `context` while holding its lock. The positions inside
+     * comments after the edit, and inside the reparsed body, aren't shifted.
+     */
+    private static class DocComments implements DocCommentTable {
+        private final Context context;
+        private final DiagnosticSource source;
+        private final Map<JCTree, Comment> comments = new HashMap<>();
+
+        DocComments(Context context, DiagnosticSource source) {
+            this.context = context;
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasComment(JCTree tree) {
+            return comments.containsKey(tree);
+        }
+
+        @Override
+        public Comment getComment(JCTree tree) {
+            return comments.get(tree);
+        }
+
+        @Override
+        public String getCommentText(JCTree tree) {
+            var comment = comments.get(tree);
+            return comment == null ? null : comment.getText();
+        }
+
+        @Override
+        public DCDocComment getCommentTree(JCTree tree) {
+            var comment = comments.get(tree);
+            if (comment == null) return null;
+            synchronized (context) {
+                return new DocCommentParser(ParserFactory.instance(context), source, comment).parse();
+            }
+        }
+
+        @Override
+        public void putComment(JCTree tree, Comment c) {
+            comments.put(tree, c);
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -1,12 +1,15 @@
 package org.javacs;
 
 import com.google.devtools.build.lib.analysis.AnalysisProtos;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -171,19 +174,43 @@ class InferConfig {
         return artifact.artifactId + '-' + artifact.version + (source ? "-sources" : "") + ".jar";
     }
 
+    /**
+     * The jars that `mvn validate goal` resolves for pomXml. The result is saved in CacheDirectory.forWorkspace, and
+     * reused as long as every POM in the module tree has the same contents and every resolved jar has the same size and
+     * modified time, so saving pom.xml without changing it doesn't run Maven again.
+     */
     static Set<Path> mvnDependencies(Path pomXml, String goal) {
         Objects.requireNonNull(pomXml, "pom.xml path is null");
+        var poms = moduleTree(pomXml.toAbsolutePath());
+        var key = mvnCacheKey(poms, goal);
+        var file = CacheDirectory.forWorkspace(pomXml.toAbsolutePath().getParent(), "maven-" + goal.replace(':', '-'));
+        var saved = loadMvnDependencies(file, key);
+        if (saved != null) {
+            LOG.info(String.format("Reusing %d dependencies from %s", saved.size(), file));
+            return saved;
+        }
+        var resolved = runMvnDependencies(pomXml, goal, poms.size() > 1);
+        if (resolved == null) return Set.of();
+        saveMvnDependencies(file, key, resolved);
+        return resolved;
+    }
+
+    /** Run `mvn validate goal` and read the jars it prints, or return null if Maven fails */
+    private static Set<Path> runMvnDependencies(Path pomXml, String goal, boolean isReactor) {
         try {
             // TODO consider using mvn valide dependency:copy-dependencies -DoutputDirectory=??? instead
             // Run maven as a subprocess
-            String[] command = {
-                getMvnCommand(),
-                "--batch-mode", // Turns off ANSI control sequences
-                "validate",
-                goal,
-                "-DincludeScope=test",
-                "-DoutputAbsoluteArtifactFilename=true",
-            };
+            var command =
+                    new ArrayList<>(
+                            List.of(
+                                    getMvnCommand(),
+                                    "--batch-mode", // Turns off ANSI control sequences
+                                    "validate",
+                                    goal,
+                                    "-DincludeScope=test",
+                                    "-DoutputAbsoluteArtifactFilename=true"));
+            // Resolve the modules of a multi-module project in parallel, one thread per core
+            if (isReactor) command.addAll(List.of("--threads", "1C"));
             var output = Files.createTempFile("java-language-server-maven-output", ".txt");
             LOG.info("Running " + String.join(" ", command) + " ...");
             var workingDirectory = pomXml.toAbsolutePath().getParent().toFile();
@@ -198,7 +225,7 @@ class InferConfig {
             var result = process.waitFor();
             if (result != 0) {
                 LOG.severe("`" + String.join(" ", command) + "` returned " + result);
-                return Set.of();
+                return null;
             }
             // Read output
             var dependencies = new HashSet<Path>();
@@ -214,6 +241,96 @@ class InferConfig {
         }
     }
 
+    private static final Pattern MODULE = Pattern.compile("<module>\\s*(.*?)\\s*</module>");
+
+    /** pomXml and the POMs of its modules, their modules, and so on */
+    static List<Path> moduleTree(Path pomXml) {
+        var found = new ArrayList<Path>();
+        var todo = new ArrayDeque<Path>(List.of(pomXml.normalize()));
+        while (!todo.isEmpty()) {
+            var pom = todo.poll();
+            if (found.contains(pom) || !Files.isRegularFile(pom)) continue;
+            found.add(pom);
+            try {
+                var match = MODULE.matcher(Files.readString(pom));
+                while (match.find()) {
+                    // A module is a directory that contains pom.xml, or the path of a POM file
+                    var module = pom.getParent().resolve(match.group(1)).normalize();
+                    todo.add(Files.isDirectory(module) ? module.resolve("pom.xml") : module);
+                }
+            } catch (IOException | InvalidPathException e) {
+                LOG.warning(String.format("Couldn't read modules of %s: %s", pom, e.getMessage()));
+            }
+        }
+        return found;
+    }
+
+    /** A hash of the contents of every POM in the module tree, and the Maven goal */
+    static String mvnCacheKey(List<Path> poms, String goal) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(goal.getBytes(StandardCharsets.UTF_8));
+            for (var pom : poms) {
+                digest.update(pom.toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(pom));
+            }
+            var key = new StringBuilder();
+            for (var b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            LOG.warning("Couldn't hash POMs: " + e.getMessage());
+            return "";
+        }
+    }
+
+    /** Change this whenever the format of saved dependencies changes, so old files are ignored */
+    private static final int MVN_CACHE_VERSION = 1;
+
+    // The saved format is the key, followed by each jar with the size and modified time it had when it was resolved.
+
+    static Set<Path> loadMvnDependencies(Path file, String key) {
+        if (key.isEmpty() || !Files.exists(file)) return null;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MVN_CACHE_VERSION || !in.readUTF().equals(key)) return null;
+            var dependencies = new HashSet<Path>();
+            var count = in.readInt();
+            for (var i = 0; i < count; i++) {
+                var jar = Paths.get(in.readUTF());
+                long size = in.readLong(), modified = in.readLong();
+                // A jar that was deleted or replaced in the local repository needs to be resolved again
+                if (!Files.exists(jar) || Files.size(jar) != size) return null;
+                if (Files.getLastModifiedTime(jar).toMillis() != modified) return null;
+                dependencies.add(jar);
+            }
+            return dependencies;
+        } catch (IOException | InvalidPathException e) {
+            LOG.warning(String.format("Ignoring saved dependencies %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    static void saveMvnDependencies(Path file, String key, Set<Path> dependencies) {
+        if (key.isEmpty()) return;
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(MVN_CACHE_VERSION);
+                out.writeUTF(key);
+                out.writeInt(dependencies.size());
+                for (var jar : dependencies) {
+                    out.writeUTF(jar.toString());
+                    out.writeLong(Files.size(jar));
+                    out.writeLong(Files.getLastModifiedTime(jar).toMillis());
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save dependencies to %s: %s", file, e.getMessage()));
+        }
+    }
+
     private static final Pattern DEPENDENCY =
             Pattern.compile("^\\[INFO\\]\\s+(.*:.*:.*:.*:.*):(/.*?)( -- module .*)?$");
 
@@ -0,0 +1,247 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * JarIndex lists the top-level classes in a jar, and the jars named by the Class-Path attribute of its manifest. It
+ * reads the zip central directory, which names every entry in one contiguous block at the end of the file, so it never
+ * touches the compressed class files themselves. Each jar's listing is kept in memory and saved in
+ * CacheDirectory.forJar, and reused as long as the jar has the same size and modified time.
+ */
+class JarIndex {
+    /** Change this whenever the format changes, so old listings are ignored */
+    private static final int VERSION = 1;
+
+    final long size, modified;
+    final List<String> classes;
+    final List<Path> classPath;
+
+    private JarIndex(long size, long modified, List<String> classes, List<Path> classPath) {
+        this.size = size;
+        this.modified = modified;
+        this.classes = classes;
+        this.classPath = classPath;
+    }
+
+    private static final JarIndex EMPTY = new JarIndex(-1, -1, List.of(), List.of());
+
+    private static final Map<Path, JarIndex> cache = new ConcurrentHashMap<>();
+
+    /** The classes in jar, from memory, from CacheDirectory, or by reading its central directory */
+    static JarIndex of(Path jar) {
+        long size, modified;
+        try {
+            size = Files.size(jar);
+            modified = Files.getLastModifiedTime(jar).toMillis();
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't read %s: %s", jar, e.getMessage()));
+            return EMPTY;
+        }
+        var cached = cache.get(jar);
+        if (cached != null && cached.size == size && cached.modified == modified) return cached;
+        var saved = load(jar, size, modified);
+        if (saved != null) {
+            cache.put(jar, saved);
+            return saved;
+        }
+        JarIndex scanned;
+        try {
+            scanned = scan(jar, size, modified);
+        } catch (IOException | RuntimeException e) {
+            LOG.warning(String.format("Couldn't read central directory of %s: %s", jar, e.getMessage()));
+            return EMPTY;
+        }
+        cache.put(jar, scanned);
+        save(jar, scanned);
+        return scanned;
+    }
+
+    /** The class name of resource, like java/util/List.class, or null if it's not a top-level class */
+    static String topLevelClassName(String resource) {
+        if (!resource.endsWith(".class") || resource.startsWith("META-INF/")) return null;
+        var trim = resource.substring(0, resource.length() - ".class".length());
+        // Skip nested classes, module-info and package-info
+        if (trim.contains("$") || trim.contains("-")) return null;
+        return trim.replace('/', '.');
+    }
+
+    // Zip format constants, from https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+    private static final int END = 0x06054b50, END_SIZE = 22, MAX_COMMENT = 0xffff;
+    private static final int ZIP64_LOCATOR = 0x07064b50, ZIP64_LOCATOR_SIZE = 20, ZIP64_END = 0x06064b50;
+    private static final int CENTRAL = 0x02014b50, CENTRAL_SIZE = 46, LOCAL_SIZE = 30;
+    private static final int STORED = 0, DEFLATED = 8;
+
+    private static JarIndex scan(Path jar, long size, long modified) throws IOException {
+        try (var channel = FileChannel.open(jar)) {
+            // The end record is at the very end of the file, followed only by an optional comment
+            var tailLength = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+            var tailStart = size - tailLength;
+            var tail = read(channel, tailStart, tailLength);
+            var end = tailLength - END_SIZE;
+            while (end >= 0 && tail.getInt(end) != END) end--;
+            if (end < 0) throw new ZipException("Not a zip file");
+            long entries = tail.getShort(end + 10) & 0xffff;
+            long centralSize = tail.getInt(end + 12) & 0xffffffffL;
+            long centralOffset = tail.getInt(end + 16) & 0xffffffffL;
+            // Offsets are relative to the start of the zip, which may not be the start of the file
+            var shift = tailStart + end - centralSize - centralOffset;
+            if (entries == 0xffff || centralSize == 0xffffffffL || centralOffset == 0xffffffffL) {
+                var locator = end - ZIP64_LOCATOR_SIZE;
+                if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR) throw new ZipException("No zip64 locator");
+                var zip64 = read(channel, tail.getLong(locator + 8), 56);
+                if (zip64.getInt(0) != ZIP64_END) throw new ZipException("No zip64 end record");
+                entries = zip64.getLong(32);
+                centralSize = zip64.getLong(40);
+                centralOffset = zip64.getLong(48);
+                shift = 0;
+            }
+            if (centralSize > Integer.MAX_VALUE) throw new ZipException("Central directory is too large");
+            var central = read(channel, centralOffset + shift, (int) centralSize);
+            var classes = new ArrayList<String>();
+            var classPath = List.<Path>of();
+            var at = 0;
+            for (var i = 0; i < entries; i++) {
+                if (at + CENTRAL_SIZE > central.limit() || central.getInt(at) != CENTRAL) {
+                    throw new ZipException("Bad central directory entry " + i);
+                }
+                var nameLength = central.getShort(at + 28) & 0xffff;
+                var extraLength = central.getShort(at + 30) & 0xffff;
+                var commentLength = central.getShort(at + 32) & 0xffff;
+                var nameBytes = new byte[nameLength];
+                central.get(at + CENTRAL_SIZE, nameBytes);
+                var name = new String(nameBytes, StandardCharsets.UTF_8);
+                var className = topLevelClassName(name);
+                if (className != null) {
+                    classes.add(className);
+                } else if (name.equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+                    var manifest = readManifest(channel, central, at, shift);
+                    if (manifest != null) classPath = manifestClassPath(jar, manifest);
+                }
+                at += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+            }
+            return new JarIndex(size, modified, classes, classPath);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        return buffer.flip();
+    }
+
+    /** Read the manifest described by the central directory entry at `at`, or null if it's in an unusual format */
+    private static Manifest readManifest(FileChannel channel, ByteBuffer central, int at, long shift)
+            throws IOException {
+        var method = central.getShort(at + 10) & 0xffff;
+        var compressedSize = central.getInt(at + 20) & 0xffffffffL;
+        var uncompressedSize = central.getInt(at + 24) & 0xffffffffL;
+        var localOffset = (central.getInt(at + 42) & 0xffffffffL) + shift;
+        if (method != STORED && method != DEFLATED) return null;
+        if (compressedSize > Integer.MAX_VALUE || uncompressedSize > Integer.MAX_VALUE) return null;
+        var local = read(channel, localOffset, LOCAL_SIZE);
+        var dataOffset = localOffset + LOCAL_SIZE + (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+        var data = read(channel, dataOffset, (int) compressedSize).array();
+        if (method == DEFLATED) {
+            var inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                var inflated = new byte[(int) uncompressedSize];
+                var n = 0;
+                while (n < inflated.length && !inflater.finished()) {
+                    var read = inflater.inflate(inflated, n, inflated.length - n);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    n += read;
+                }
+                data = Arrays.copyOf(inflated, n);
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+        return new Manifest(new ByteArrayInputStream(data));
+    }
+
+    /** The jars named by the Class-Path attribute of manifest, which are relative to jar */
+    private static List<Path> manifestClassPath(Path jar, Manifest manifest) {
+        var attribute = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        if (attribute == null) return List.of();
+        var found = new ArrayList<Path>();
+        for (var entry : attribute.split(" ")) {
+            if (entry.isEmpty()) continue;
+            try {
+                // Entries are URLs, relative to the directory that contains jar
+                var uri = jar.toUri().resolve(entry);
+                if ("file".equals(uri.getScheme())) found.add(Paths.get(uri));
+            } catch (IllegalArgumentException e) {
+                LOG.warning(String.format("Invalid Class-Path entry %s in %s", entry, jar));
+            }
+        }
+        return found;
+    }
+
+    // The saved format is the jar's path, size and modified time, followed by its classes and manifest class path.
+
+    private static JarIndex load(Path jar, long size, long modified) {
+        var file = CacheDirectory.forJar(jar, "classes");
+        if (!Files.exists(file)) return null;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return null;
+            if (!in.readUTF().equals(jar.toString())) return null;
+            if (in.readLong() != size || in.readLong() != modified) return null;
+            var classes = new String[in.readInt()];
+            for (var i = 0; i < classes.length; i++) {
+                classes[i] = in.readUTF();
+            }
+            var classPath = new Path[in.readInt()];
+            for (var i = 0; i < classPath.length; i++) {
+                classPath[i] = Paths.get(in.readUTF());
+            }
+            return new JarIndex(size, modified, List.of(classes), List.of(classPath));
+        } catch (IOException | RuntimeException e) {
+            LOG.warning(String.format("Ignoring saved classes %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    private static void save(Path jar, JarIndex index) {
+        var file = CacheDirectory.forJar(jar, "classes");
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(jar.toString());
+                out.writeLong(index.size);
+                out.writeLong(index.modified);
+                out.writeInt(index.classes.size());
+                for (var c : index.classes) {
+                    out.writeUTF(c);
+                }
+                out.writeInt(index.classPath.size());
+                for (var p : index.classPath) {
+                    out.writeUTF(p.toString());
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save classes of %s: %s", jar, e.getMessage()));
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
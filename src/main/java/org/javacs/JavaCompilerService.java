@@ -3,9 +3,11 @@ package org.javacs;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.tools.*;
 
 class JavaCompilerService implements CompilerProvider {
@@ -14,11 +16,9 @@ class JavaCompilerService implements CompilerProvider {
     final Set<String> addExports;
     final ReusableCompiler compiler = new ReusableCompiler();
     final Docs docs;
-    final Set<String> jdkClasses = ScanClassPath.jdkTopLevelClasses(), classPathClasses;
-    // Diagnostics from the last compilation task
-    final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
+    /** Every top-level class in the JDK and the class path */
+    final TypeNameIndex libraryTypes;
     // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
-    // TODO intercept files that aren't in the batch and erase method bodies so compilation is faster
     final SourceFileManager fileManager;
 
     JavaCompilerService(Set<Path> classPath, Set<Path> docPath, Set<String> addExports) {
@@ -35,66 +35,103 @@ class JavaCompilerService implements CompilerProvider {
         this.docPath = Collections.unmodifiableSet(docPath);
         this.addExports = Collections.unmodifiableSet(addExports);
         this.docs = new Docs(docPath);
-        this.classPathClasses = ScanClassPath.classPathTopLevelClasses(classPath);
+        var libraryClasses = new ArrayList<String>(JdkIndex.classes());
+        libraryClasses.addAll(ScanClassPath.classPathTopLevelClasses(classPath));
+        this.libraryTypes = new TypeNameIndex(libraryClasses);
         this.fileManager = new SourceFileManager();
+        this.fileManager.classFiles = new ClassFileCache(true);
     }
 
-    private CompileBatch cachedCompile;
-    private Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    // Keep a few recent compilations, so alternating between files doesn't recompile them each time.
+    // Each one holds a javac context with its own copy of the symbol table, so don't keep many.
+    final CompileBatchPool batches = new CompileBatchPool(3, 0.6);
 
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
-        }
+    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources, AnalysisDepth depth) {
+        if (sources.isEmpty()) throw new RuntimeException("empty sources");
+        var extraSources = packagePrivateSources(sources);
+        var firstAttempt = new CompileBatch(this, sources, extraSources, depth);
+        // Files that javac loaded on its own weren't scanned, so they may need package-private classes we didn't add
+        var addFiles = firstAttempt.needsAdditionalSources();
         for (var f : sources) {
-            if (!cachedModified.containsKey(f)) {
-                return true;
-            }
-            if (f.getLastModified() != cachedModified.get(f)) {
-                return true;
-            }
+            if (f.toUri().getScheme().equals("file")) addFiles.remove(Paths.get(f.toUri()));
         }
-        return false;
-    }
-
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
-            }
-            cachedCompile.borrow.close();
+        for (var f : extraSources) {
+            addFiles.remove(Paths.get(f.toUri()));
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (var f : sources) {
-            cachedModified.put(f, f.getLastModified());
-        }
-    }
-
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
-        if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        var firstAttempt = new CompileBatch(this, sources);
-        var addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) return firstAttempt;
-        // If the compiler needs additional source files that contain package-private files
         LOG.info("...need to recompile with " + addFiles);
         firstAttempt.close();
         firstAttempt.borrow.close();
-        var moreSources = new ArrayList<JavaFileObject>();
-        moreSources.addAll(sources);
+        var moreSources = new ArrayList<JavaFileObject>(extraSources);
         for (var add : addFiles) {
             moreSources.add(new SourceFileObject(add));
         }
-        return new CompileBatch(this, moreSources);
+        return new CompileBatch(this, sources, moreSources, depth);
     }
 
-    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources) {
-        if (needsCompile(sources)) {
-            loadCompile(sources);
-        } else {
+    /**
+     * Find the files that declare package-private classes that sources refer to. javac can only find a class in the
+     * source path if it's declared in a file with the same name, so it can't resolve the other classes on its own.
+     */
+    private List<JavaFileObject> packagePrivateSources(Collection<? extends JavaFileObject> sources) {
+        var all = new ArrayList<JavaFileObject>(sources);
+        var included = new HashSet<Path>();
+        for (var f : sources) {
+            if (f.toUri().getScheme().equals("file")) included.add(Paths.get(f.toUri()));
+        }
+        // Added files may refer to package-private classes in yet more files
+        for (var i = 0; i < all.size(); i++) {
+            var source = all.get(i);
+            if (!source.toUri().getScheme().equals("file")) continue;
+            var file = Paths.get(source.toUri());
+            if (!FileStore.contains(file)) continue;
+            var classes = PackagePrivateIndex.classes(FileStore.packageName(file));
+            if (classes.isEmpty()) continue;
+            Set<String> identifiers;
+            try {
+                identifiers = IdentifierIndex.identifiers(source.getCharContent(true).toString());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            for (var c : classes.entrySet()) {
+                if (!identifiers.contains(c.getKey()) || !included.add(c.getValue())) continue;
+                LOG.info("...adding " + c.getValue() + " which declares package-private class " + c.getKey());
+                all.add(new SourceFileObject(c.getValue()));
+            }
+        }
+        return all.subList(sources.size(), all.size());
+    }
+
+    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources, AnalysisDepth depth) {
+        var cached = batches.checkOut(sources);
+        if (cached != null) {
             LOG.info("...using cached compile");
+            // A batch that was compiled for a shallower request is analyzed further in place
+            try {
+                cached.analyze(depth);
+            } catch (RuntimeException e) {
+                batches.discard(cached);
+                throw e;
+            }
+            return cached;
         }
-        return cachedCompile;
+        batches.makeRoom();
+        var batch = doCompile(sources, depth);
+        batches.add(sources, batch);
+        implicitSources.addAll(batch.implicitSources);
+        return batch;
+    }
+
+    /** Files that recent compiles loaded from source, that could be loaded from class files next time */
+    private final Set<Path> implicitSources = ConcurrentHashMap.newKeySet();
+
+    /** Generate class files for the sources that recent compiles loaded implicitly, so later compiles can skip them */
+    void cacheClassFiles() {
+        if (implicitSources.isEmpty()) return;
+        var sources = new ArrayList<Path>(implicitSources);
+        implicitSources.removeAll(sources);
+        var options = CompileBatch.options(classPath, addExports);
+        fileManager.classFiles.generate(fileManager, options, sources);
     }
 
     private static final Pattern PACKAGE_EXTRACTOR = Pattern.compile("^([a-z][_a-zA-Z0-9]*\\.)*[a-z][_a-zA-Z0-9]*");
@@ -117,37 +154,28 @@ class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
-
-    private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
-    }
-
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>("containsType", 10_000);
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
-            var root = parse(file).root;
-            var types = new ArrayList<String>();
-            new FindTypeDeclarations().scan(root, types);
-            cacheContainsType.load(file, null, types);
-        }
-        return cacheContainsType.get(file, null).contains(className);
+        var types =
+                cacheContainsType.computeIfAbsent(
+                        file,
+                        null,
+                        () -> {
+                            var found = new ArrayList<String>();
+                            new FindTypeDeclarations().scan(parse(file).root, found);
+                            return found;
+                        });
+        return types.contains(className);
     }
 
-    private Cache<Void, List<String>> cacheFileImports = new Cache<>();
+    private final Cache<Void, List<String>> cacheFileImports = new Cache<>("fileImports", 10_000);
 
     private List<String> readImports(Path file) {
-        if (cacheFileImports.needs(file, null)) {
-            loadImports(file);
-        }
-        return cacheFileImports.get(file, null);
+        return cacheFileImports.computeIfAbsent(file, null, () -> loadImports(file));
     }
 
-    private void loadImports(Path file) {
+    private List<String> loadImports(Path file) {
         var list = new ArrayList<String>();
         var importClass = Pattern.compile("^import +([\\w\\.]+\\.\\w+);");
         var importStar = Pattern.compile("^import +([\\w\\.]+\\.\\*);");
@@ -170,7 +198,7 @@ class JavaCompilerService implements CompilerProvider {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        cacheFileImports.load(file, null, list);
+        return list;
     }
 
     @Override
@@ -183,21 +211,29 @@ class JavaCompilerService implements CompilerProvider {
     }
 
     @Override
-    public List<String> publicTopLevelTypes() {
-        var all = new ArrayList<String>();
-        for (var file : FileStore.all()) {
-            var fileName = file.getFileName().toString();
-            if (!fileName.endsWith(".java")) continue;
-            var className = fileName.substring(0, fileName.length() - ".java".length());
-            var packageName = FileStore.packageName(file);
-            if (!packageName.isEmpty()) {
-                className = packageName + "." + className;
-            }
-            all.add(className);
+    public List<String> findTypesMatching(String partialName, int limit) {
+        var found = new LinkedHashSet<String>(FileStore.classIndex().matching(partialName, limit));
+        for (var className : libraryTypes.matching(partialName, limit)) {
+            if (found.size() >= limit) break;
+            found.add(className);
         }
-        all.addAll(classPathClasses);
-        all.addAll(jdkClasses);
-        return all;
+        return new ArrayList<>(found);
+    }
+
+    @Override
+    public Iterable<String> findTypesStartingWith(String prefix) {
+        var workspace = FileStore.classNames().tailSet(prefix).stream().takeWhile(c -> c.startsWith(prefix));
+        var library = StreamSupport.stream(libraryTypes.startingWith(prefix).spliterator(), false);
+        return Stream.concat(workspace, library)::iterator;
+    }
+
+    @Override
+    public List<String> findTypesNamed(String simpleName) {
+        var found = FileStore.classIndex().named(simpleName);
+        for (var className : libraryTypes.named(simpleName)) {
+            if (!found.contains(className)) found.add(className);
+        }
+        return found;
     }
 
     @Override
@@ -217,8 +253,7 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public Iterable<Path> search(String query) {
-        Predicate<Path> test = f -> StringSearch.containsWordMatching(f, query);
-        return () -> FileStore.all().stream().filter(test).iterator();
+        return IdentifierIndex.matching(query);
     }
 
     @Override
@@ -250,21 +285,20 @@ class JavaCompilerService implements CompilerProvider {
     }
 
     private Optional<JavaFileObject> findPublicTypeDeclarationInJdk(String className) {
+        var module = JdkIndex.moduleOf(className);
+        if (module == null) return Optional.empty();
         try {
-            for (var module : ScanClassPath.JDK_MODULES) {
-                var moduleLocation = docs.fileManager.getLocationForModule(StandardLocation.MODULE_SOURCE_PATH, module);
-                if (moduleLocation == null) continue;
-                var fromModuleSourcePath =
-                        docs.fileManager.getJavaFileForInput(moduleLocation, className, JavaFileObject.Kind.SOURCE);
-                if (fromModuleSourcePath != null) {
-                    LOG.info(String.format("...found %s in module %s of jdk", fromModuleSourcePath.toUri(), module));
-                    return Optional.of(fromModuleSourcePath);
-                }
+            var moduleLocation = docs.fileManager.getLocationForModule(StandardLocation.MODULE_SOURCE_PATH, module);
+            if (moduleLocation == null) return Optional.empty();
+            var fromModuleSourcePath =
+                    docs.fileManager.getJavaFileForInput(moduleLocation, className, JavaFileObject.Kind.SOURCE);
+            if (fromModuleSourcePath != null) {
+                LOG.info(String.format("...found %s in module %s of jdk", fromModuleSourcePath.toUri(), module));
             }
+            return Optional.ofNullable(fromModuleSourcePath);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return Optional.empty();
     }
 
     @Override
@@ -275,12 +309,13 @@ class JavaCompilerService implements CompilerProvider {
         // If we're spending a lot of time in findTypeDeclaration, this would be a good optimization.
         var packageName = packageName(className);
         var simpleName = simpleName(className);
-        for (var f : FileStore.list(packageName)) {
-            if (containsWord(f, simpleName) && containsType(f, className)) {
-                return f;
-            }
-        }
-        return NOT_FOUND;
+        var found =
+                StringSearch.searchFiles(
+                        FileStore.list(packageName),
+                        f -> IdentifierIndex.contains(f, simpleName) && containsType(f, className),
+                        1);
+        if (found.isEmpty()) return NOT_FOUND;
+        return found.get(0);
     }
 
     private Path findPublicTypeDeclaration(String className) {
@@ -301,28 +336,51 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public Path[] findTypeReferences(String className) {
-        var packageName = packageName(className);
-        var simpleName = simpleName(className);
-        var candidates = new ArrayList<Path>();
-        for (var f : FileStore.all()) {
-            if (containsWord(f, packageName) && containsImport(f, className) && containsWord(f, simpleName)) {
+        // Every part of className appears in the file, either in an import or in the package declaration
+        var candidates =
+                StringSearch.searchFiles(
+                        IdentifierIndex.containing(className),
+                        f -> containsImport(f, className) && ReferenceIndex.mayReferenceType(f, className),
+                        Integer.MAX_VALUE);
+        return candidates.toArray(Path[]::new);
+    }
+
+    @Override
+    public Path[] findMemberReferences(String className, String memberName) {
+        var candidates = new TreeSet<Path>();
+        for (var f : IdentifierIndex.containing(memberName)) {
+            if (ReferenceIndex.mayReferenceMember(f, className, memberName)) {
                 candidates.add(f);
             }
         }
+        addDeclaringFile(className, candidates);
         return candidates.toArray(Path[]::new);
     }
 
     @Override
-    public Path[] findMemberReferences(String className, String memberName) {
-        var candidates = new ArrayList<Path>();
-        for (var f : FileStore.all()) {
-            if (containsWord(f, memberName)) {
+    public Path[] findMethodReferences(String className, String methodName, String[] erasedParameterTypes) {
+        var candidates = new TreeSet<Path>();
+        for (var f : IdentifierIndex.containing(methodName)) {
+            if (ReferenceIndex.mayReferenceMethod(f, className, methodName, erasedParameterTypes)) {
                 candidates.add(f);
             }
         }
+        addDeclaringFile(className, candidates);
         return candidates.toArray(Path[]::new);
     }
 
+    /** The declaration of a member has to be compiled too, even if the file that declares it never refers to it */
+    private void addDeclaringFile(String className, Set<Path> candidates) {
+        // A nested class is declared in the file of its outermost class
+        for (var name = className; !name.isEmpty(); name = StringSearch.mostName(name)) {
+            var declaringFile = findTypeDeclaration(name);
+            if (declaringFile != NOT_FOUND) {
+                candidates.add(declaringFile);
+                return;
+            }
+        }
+    }
+
     @Override
     public ParseTask parse(Path file) {
         var parser = Parser.parseFile(file);
@@ -337,17 +395,27 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public CompileTask compile(Path... files) {
+        return compile(AnalysisDepth.FULL, files);
+    }
+
+    @Override
+    public CompileTask compile(AnalysisDepth depth, Path... files) {
         var sources = new ArrayList<JavaFileObject>();
         for (var f : files) {
             sources.add(new SourceFileObject(f));
         }
-        return compile(sources);
+        return compile(depth, sources);
     }
 
     @Override
     public CompileTask compile(Collection<? extends JavaFileObject> sources) {
-        var compile = compileBatch(sources);
-        return new CompileTask(compile.task, compile.roots, diags, compile::close);
+        return compile(AnalysisDepth.FULL, sources);
+    }
+
+    @Override
+    public CompileTask compile(AnalysisDepth depth, Collection<? extends JavaFileObject> sources) {
+        var compile = compileBatch(sources, depth);
+        return new CompileTask(compile.task, compile.roots, compile.diags, compile.partial, compile::close);
     }
 
     private static final Logger LOG = Logger.getLogger("main");
@@ -31,10 +31,11 @@ class JavaLanguageServer extends LanguageServer {
     private final LanguageClient client;
     private JavaCompilerService cacheCompiler;
     private JsonObject cacheSettings;
-    private JsonObject settings = new JsonObject();
-    private boolean modifiedBuild = true;
+    private volatile JsonObject settings = new JsonObject();
+    private volatile boolean modifiedBuild = true;
 
-    JavaCompilerService compiler() {
+    // Synchronized because parse-only requests call compiler() from worker threads
+    synchronized JavaCompilerService compiler() {
         if (needsCompiler()) {
             cacheCompiler = createCompiler();
             cacheSettings = settings;
@@ -58,7 +59,7 @@ class JavaLanguageServer extends LanguageServer {
         if (files.isEmpty()) return;
         LOG.info("Lint " + files.size() + " files...");
         var started = Instant.now();
-        try (var task = compiler().compile(files.toArray(Path[]::new))) {
+        try (var task = compiler().compile(AnalysisDepth.FULL, files.toArray(Path[]::new))) {
             var compiled = Instant.now();
             LOG.info("...compiled in " + Duration.between(started, compiled).toMillis() + " ms");
             for (var errs : new ErrorProvider(task).errors()) {
@@ -148,7 +149,12 @@ class JavaLanguageServer extends LanguageServer {
         this.workspaceRoot = Paths.get(params.rootUri);
         FileStore.setWorkspaceRoots(Set.of(Paths.get(params.rootUri)));
 
+        var encoding = PositionEncoding.negotiate(positionEncodings(params));
+        PositionHelper.setEncoding(encoding);
+        LOG.info("Using position encoding " + encoding.label);
+
         var c = new JsonObject();
+        c.addProperty("positionEncoding", encoding.label);
         c.addProperty("textDocumentSync", 2); // Incremental
         c.addProperty("hoverProvider", true);
         var completionOptions = new JsonObject();
@@ -179,6 +185,18 @@ class JavaLanguageServer extends LanguageServer {
         return new InitializeResult(c);
     }
 
+    /** Read capabilities.general.positionEncodings, or null if the client didn't specify */
+    private static List<String> positionEncodings(InitializeParams params) {
+        if (params.capabilities == null) return null;
+        var general = params.capabilities.getAsJsonObject("general");
+        if (general == null || !general.has("positionEncodings")) return null;
+        var list = new ArrayList<String>();
+        for (var e : general.getAsJsonArray("positionEncodings")) {
+            list.add(e.getAsString());
+        }
+        return list;
+    }
+
     private static final String[] watchFiles = {
         "**/*.java", "**/pom.xml", "**/BUILD",
     };
@@ -201,7 +219,10 @@ class JavaLanguageServer extends LanguageServer {
     }
 
     @Override
-    public void shutdown() {}
+    public void shutdown() {
+        IdentifierIndex.save();
+        ReferenceIndex.save();
+    }
 
     public JavaLanguageServer(LanguageClient client) {
         this.client = client;
@@ -212,6 +233,34 @@ class JavaLanguageServer extends LanguageServer {
         return new SymbolProvider(compiler()).findSymbols(params.query, 50);
     }
 
+    @Override
+    public List<JavaMemberSignature> searchSignatures(JavaSearchSignaturesParams params) {
+        var found = SignatureIndex.search(params.query, compiler().classPath, 50);
+        var result = new ArrayList<JavaMemberSignature>();
+        for (var member : found) {
+            var signature = new JavaMemberSignature();
+            signature.className = member.className;
+            signature.name = member.name;
+            signature.kind = signatureKind(member.kind);
+            signature.isStatic = member.isStatic;
+            if (member.parameterTypes != null) signature.parameterTypes = List.of(member.parameterTypes);
+            signature.type = member.type;
+            result.add(signature);
+        }
+        return result;
+    }
+
+    private static int signatureKind(int kind) {
+        switch (kind) {
+            case SignatureIndex.FIELD:
+                return SymbolKind.Field;
+            case SignatureIndex.CONSTRUCTOR:
+                return SymbolKind.Constructor;
+            default:
+                return SymbolKind.Method;
+        }
+    }
+
     @Override
     public void didChangeConfiguration(DidChangeConfigurationParams change) {
         var java = change.settings.getAsJsonObject().get("java");
@@ -359,8 +408,7 @@ class JavaLanguageServer extends LanguageServer {
         LOG.info("Try to rename...");
         var file = Paths.get(params.textDocument.uri);
         try (var task = compiler().compile(file)) {
-            var lines = task.root().getLineMap();
-            var cursor = lines.getPosition(params.position.line + 1, params.position.character + 1);
+            var cursor = PositionHelper.offset(task.root(), params.position.line + 1, params.position.character + 1);
             var path = new FindNameAt(task).scan(task.root(), cursor);
             if (path == null) {
                 LOG.info("...no element under cursor");
@@ -424,8 +472,7 @@ class JavaLanguageServer extends LanguageServer {
     private Rewrite createRewrite(RenameParams params) {
         var file = Paths.get(params.textDocument.uri);
         try (var task = compiler().compile(file)) {
-            var lines = task.root().getLineMap();
-            var position = lines.getPosition(params.position.line + 1, params.position.character + 1);
+            var position = PositionHelper.offset(task.root(), params.position.line + 1, params.position.character + 1);
             var path = new FindNameAt(task).scan(task.root(), position);
             if (path == null) return Rewrite.NOT_SUPPORTED;
             var el = Trees.instance(task.task).getElement(path);
@@ -522,7 +569,14 @@ class JavaLanguageServer extends LanguageServer {
         if (uncheckedChanges && FileStore.activeDocuments().contains(lastEdited)) {
             lint(List.of(lastEdited));
             uncheckedChanges = false;
+            Cache.logStats();
+            LOG.info(Parser.cache.toString());
+            LOG.info(compiler().batches.toString());
+            compiler().cacheClassFiles();
         }
+        // Requests only update the indexes in memory, because saving one rewrites its index of a whole workspace root
+        IdentifierIndex.save();
+        ReferenceIndex.save();
     }
 
     private static final Logger LOG = Logger.getLogger("main");
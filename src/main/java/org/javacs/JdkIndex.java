@@ -0,0 +1,228 @@
+package org.javacs;
+
+import java.io.*;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * JdkIndex lists the top-level classes in the modules of the running JDK, and which module declares each one. The JDK
+ * never changes under a given java.home and version, so the index is built once and saved in
+ * CacheDirectory.forJdk. Every workspace and every server process on the machine memory-maps the same file, and reads
+ * class names straight out of it.
+ */
+class JdkIndex {
+    /** Change this whenever the format changes, so old indexes are ignored */
+    private static final int VERSION = 1;
+
+    // The saved format is a header that identifies the JDK, the names of the modules,
+    // and then the classes sorted by the bytes of their names, so they can be binary-searched in place:
+    //
+    //   int VERSION, string java.home, string version, int modules, string module...,
+    //   int classes, int offset..., (short module, string name)...
+    //
+    // where each string is a short length followed by UTF-8 bytes, and each offset is the position of a class.
+
+    private final ByteBuffer buffer;
+    private final String[] modules;
+    private final int classes, offsets;
+
+    private JdkIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        buffer.position(0);
+        if (buffer.getInt() != VERSION) throw new IllegalArgumentException("Wrong version");
+        if (!readString(buffer).equals(javaHome())) throw new IllegalArgumentException("Wrong java.home");
+        if (!readString(buffer).equals(runtimeVersion())) throw new IllegalArgumentException("Wrong JDK version");
+        this.modules = new String[buffer.getInt()];
+        for (var i = 0; i < modules.length; i++) {
+            modules[i] = readString(buffer);
+        }
+        this.classes = buffer.getInt();
+        this.offsets = buffer.position();
+        if (offsets + 4L * classes > buffer.limit()) throw new IllegalArgumentException("Truncated");
+    }
+
+    private static JdkIndex instance;
+
+    private static synchronized JdkIndex instance() {
+        if (instance == null) {
+            instance = open(CacheDirectory.forJdk("classes"));
+        }
+        return instance;
+    }
+
+    /** Every top-level class in the JDK, in no particular order */
+    static List<String> classes() {
+        var index = instance();
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return index.className(i);
+            }
+
+            @Override
+            public int size() {
+                return index.classes;
+            }
+        };
+    }
+
+    /** The module that declares the top-level class className, or null if it isn't part of the JDK */
+    static String moduleOf(String className) {
+        return instance().find(className);
+    }
+
+    /** Map the index saved in file, or build it and save it there if it's missing or belongs to a different JDK */
+    static JdkIndex open(Path file) {
+        if (Files.exists(file)) {
+            try {
+                return new JdkIndex(map(file));
+            } catch (IOException
+                    | IllegalArgumentException
+                    | IndexOutOfBoundsException
+                    | BufferUnderflowException
+                    | NegativeArraySizeException e) {
+                LOG.info(String.format("Rebuilding JDK index %s: %s", file, e.getMessage()));
+            }
+        }
+        var bytes = build();
+        try {
+            CacheDirectory.writeAtomically(file, bytes);
+            return new JdkIndex(map(file));
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save JDK index %s: %s", file, e.getMessage()));
+            return new JdkIndex(ByteBuffer.wrap(bytes));
+        }
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (var channel = FileChannel.open(file)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private String className(int i) {
+        if (i < 0 || i >= classes) throw new IndexOutOfBoundsException(i);
+        var at = buffer.getInt(offsets + 4 * i) + 2;
+        var bytes = new byte[buffer.getShort(at)];
+        buffer.get(at + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    String find(String className) {
+        var target = className.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = classes - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var at = buffer.getInt(offsets + 4 * mid);
+            var compare = compareName(at + 2, target);
+            if (compare < 0) low = mid + 1;
+            else if (compare > 0) high = mid - 1;
+            else return modules[buffer.getShort(at)];
+        }
+        return null;
+    }
+
+    /** Compare the name stored at position with target, byte-by-byte, without copying it out of the buffer */
+    private int compareName(int position, byte[] target) {
+        var length = buffer.getShort(position);
+        var start = position + 2;
+        for (var i = 0; i < length && i < target.length; i++) {
+            var compare = Byte.compareUnsigned(buffer.get(start + i), target[i]);
+            if (compare != 0) return compare;
+        }
+        return Integer.compare(length, target.length);
+    }
+
+    private static byte[] build() {
+        LOG.info("Searching for top-level classes in the JDK");
+        var started = Instant.now();
+        var found =
+                ModuleFinder.ofSystem()
+                        .findAll()
+                        .parallelStream()
+                        .collect(
+                                () -> new TreeMap<byte[], String>(Arrays::compareUnsigned),
+                                JdkIndex::addTopLevelClasses,
+                                Map::putAll);
+        var modules = new ArrayList<String>(new TreeSet<>(found.values()));
+        var moduleIds = new HashMap<String, Integer>();
+        for (var i = 0; i < modules.size(); i++) {
+            moduleIds.put(modules.get(i), i);
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(VERSION);
+            writeString(out, javaHome());
+            writeString(out, runtimeVersion());
+            out.writeInt(modules.size());
+            for (var m : modules) {
+                writeString(out, m);
+            }
+            out.writeInt(found.size());
+            var offset = out.size() + 4 * found.size();
+            for (var name : found.keySet()) {
+                out.writeInt(offset);
+                offset += 4 + name.length;
+            }
+            for (var e : found.entrySet()) {
+                out.writeShort(moduleIds.get(e.getValue()));
+                out.writeShort(e.getKey().length);
+                out.write(e.getKey());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LOG.info(
+                String.format(
+                        "Found %d classes in %d modules of the java platform in %d ms",
+                        found.size(), modules.size(), Duration.between(started, Instant.now()).toMillis()));
+        return bytes.toByteArray();
+    }
+
+    private static void addTopLevelClasses(Map<byte[], String> found, ModuleReference module) {
+        var name = module.descriptor().name();
+        try (var reader = module.open();
+                var list = reader.list()) {
+            list.forEach(
+                    resource -> {
+                        if (!resource.endsWith(".class") || resource.contains("$") || resource.contains("-")) return;
+                        var trim = resource.substring(0, resource.length() - ".class".length());
+                        var className = trim.replace('/', '.');
+                        found.put(className.getBytes(StandardCharsets.UTF_8), name);
+                    });
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed indexing module %s: %s", name, e.getMessage()));
+        }
+    }
+
+    private static String javaHome() {
+        return System.getProperty("java.home");
+    }
+
+    private static String runtimeVersion() {
+        return Runtime.version().toString();
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        var bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,141 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PackagePrivateIndex finds top-level classes that are declared in a file with a different name, like a package-private
+ * class Helper in Util.java. javac looks for classes in the source path by file name, so it can't find these classes on
+ * its own; JavaCompilerService adds the files that declare them to each compile that refers to them. Files are scanned
+ * lexically for top-level declarations the first time their package is queried, and rescanned when they are modified.
+ */
+class PackagePrivateIndex {
+    private static class Entry {
+        final Instant modified;
+        final List<String> classes;
+
+        Entry(Instant modified, List<String> classes) {
+            this.modified = modified;
+            this.classes = classes;
+        }
+    }
+
+    private static final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Classes in packageName that are declared in a file with a different name, and the files that declare them */
+    static Map<String, Path> classes(String packageName) {
+        var found = new HashMap<String, Path>();
+        for (var file : FileStore.list(packageName)) {
+            for (var c : classes(file)) {
+                found.putIfAbsent(c, file);
+            }
+        }
+        return found;
+    }
+
+    /** Top-level classes in file that aren't named after file */
+    static List<String> classes(Path file) {
+        var modified = FileStore.modified(file);
+        var entry = entries.get(file);
+        if (entry == null || !entry.modified.equals(modified)) {
+            entry = new Entry(modified, scan(file));
+            entries.put(file, entry);
+        }
+        return entry.classes;
+    }
+
+    private static List<String> scan(Path file) {
+        var fileName = file.getFileName().toString();
+        var expected = fileName.substring(0, fileName.length() - ".java".length());
+        var found = new ArrayList<String>();
+        for (var name : topLevelClasses(FileStore.contents(file))) {
+            if (!name.equals(expected)) found.add(name);
+        }
+        return found;
+    }
+
+    /**
+     * The names of all top-level classes, interfaces, enums and annotations declared in text. This only looks at tokens
+     * outside of braces and parentheses, skipping comments and literals, so it doesn't need a parse.
+     */
+    static List<String> topLevelClasses(CharSequence text) {
+        var found = new ArrayList<String>();
+        int braces = 0, parens = 0;
+        var expectName = false;
+        var i = 0;
+        while (i < text.length()) {
+            var c = text.charAt(i);
+            if (c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '/') {
+                i = skipPast(text, i + 2, "\n");
+            } else if (c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '*') {
+                i = skipPast(text, i + 2, "*/");
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(text, i);
+            } else if (c == '{') {
+                braces++;
+                i++;
+            } else if (c == '}') {
+                braces--;
+                i++;
+            } else if (c == '(') {
+                parens++;
+                i++;
+            } else if (c == ')') {
+                parens--;
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                var start = i;
+                while (i < text.length() && Character.isJavaIdentifierPart(text.charAt(i))) {
+                    i++;
+                }
+                if (braces != 0 || parens != 0) continue;
+                var word = text.subSequence(start, i).toString();
+                if (expectName) {
+                    found.add(word);
+                    expectName = false;
+                } else if (word.equals("class") || word.equals("interface") || word.equals("enum")) {
+                    expectName = true;
+                }
+            } else {
+                i++;
+            }
+        }
+        return found;
+    }
+
+    private static int skipPast(CharSequence text, int from, String end) {
+        for (var i = from; i + end.length() <= text.length(); i++) {
+            if (matchesAt(text, i, end)) return i + end.length();
+        }
+        return text.length();
+    }
+
+    private static int skipLiteral(CharSequence text, int start) {
+        var quote = text.charAt(start);
+        if (quote == '"' && matchesAt(text, start, "\"\"\"")) {
+            return skipPast(text, start + 3, "\"\"\"");
+        }
+        var i = start + 1;
+        while (i < text.length()) {
+            var c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote || c == '\n') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return text.length();
+    }
+
+    private static boolean matchesAt(CharSequence text, int offset, String s) {
+        if (offset + s.length() > text.length()) return false;
+        for (var i = 0; i < s.length(); i++) {
+            if (text.charAt(offset + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+}
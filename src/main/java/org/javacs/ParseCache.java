@@ -0,0 +1,143 @@
+package org.javacs;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import javax.tools.JavaFileObject;
+
+/**
+ * ParseCache keeps the parse trees of recently used files, so the parse-only requests that run one after another on the
+ * same few files (code lenses, document symbols, folding ranges, hover docs, completion) share one parse. Each tree is
+ * tagged with the version of the file it was parsed from, and the file is parsed again when it changes. The cache holds
+ * at most `capacity` trees and about `budget` bytes; when it is full, the least-recently-used files that aren't open in
+ * the editor are evicted first. When an edit stays inside one method body, IncrementalParse updates the cached tree
+ * instead of parsing the whole file.
+ */
+class ParseCache {
+    // Measured by keeping parses of this repo's sources: about 7 bytes per character for the trees and the text.
+    // The javac contexts belong to ParserPool and are shared, so they aren't counted against each entry.
+    private static final long BYTES_PER_CHAR = 8;
+
+    private static class Entry {
+        final List<Object> version;
+        final Parser parse;
+        final long bytes;
+
+        Entry(List<Object> version, Parser parse) {
+            this.version = version;
+            this.parse = parse;
+            this.bytes = BYTES_PER_CHAR * parse.contents.length();
+        }
+    }
+
+    private final int capacity;
+    private final long budget;
+    /** Files in least-recently-used order */
+    private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Estimated size of all entries */
+    private long bytes;
+
+    private long hits, misses, reparses, evictions;
+
+    ParseCache(int capacity, long budget) {
+        this.capacity = capacity;
+        this.budget = budget;
+    }
+
+    /** The parse of the current version of file, which is parsed now if it isn't cached */
+    Parser get(JavaFileObject file) {
+        var uri = file.toUri();
+        var version = version(file);
+        Entry stale;
+        synchronized (this) {
+            var entry = entries.get(uri);
+            if (entry != null && entry.version.equals(version)) {
+                hits++;
+                return entry.parse;
+            }
+            misses++;
+            // Take the out-of-date parse, so only one thread tries to update it
+            stale = entries.remove(uri);
+            if (stale != null) bytes -= stale.bytes;
+        }
+        // Parse without holding the lock, so a slow parse doesn't hold up lookups of other files
+        Parser parse = null;
+        if (stale != null) parse = IncrementalParse.reparse(stale.parse, file);
+        var incremental = parse != null;
+        if (!incremental) parse = Parser.parseUncached(file);
+        synchronized (this) {
+            if (incremental) reparses++;
+            var previous = entries.put(uri, new Entry(version, parse));
+            if (previous != null) bytes -= previous.bytes;
+            bytes += entries.get(uri).bytes;
+            evictLeastRecentlyUsed(uri);
+        }
+        return parse;
+    }
+
+    /** Identifies the contents of file; two JavaFileObjects with the same URI and version have the same contents */
+    private static List<Object> version(JavaFileObject file) {
+        if (file instanceof SourceFileObject) {
+            var source = (SourceFileObject) file;
+            if (source.contents != null) {
+                return List.of(source.modified, source.contents.hashCode(), source.headersOnly);
+            }
+            return List.of(FileStore.modified(source.path), 0, source.headersOnly);
+        }
+        return List.of(Instant.ofEpochMilli(file.getLastModified()), 0, false);
+    }
+
+    private void evictLeastRecentlyUsed(URI keep) {
+        // First evict files that aren't open, then open files if that isn't enough
+        for (var evictOpen : new boolean[] {false, true}) {
+            var it = entries.entrySet().iterator();
+            while (isFull() && it.hasNext()) {
+                var next = it.next();
+                if (next.getKey().equals(keep)) continue;
+                if (!evictOpen && isOpen(next.getKey())) continue;
+                bytes -= next.getValue().bytes;
+                evictions++;
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isFull() {
+        return entries.size() > capacity || bytes > budget;
+    }
+
+    private static boolean isOpen(URI uri) {
+        return uri.getScheme().equals("file") && FileStore.activeDocuments().contains(Paths.get(uri));
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    /** Misses that were handled by reparsing one body of the previous parse */
+    synchronized long reparses() {
+        return reparses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        var lookups = hits + misses;
+        var hitRate = lookups == 0 ? 0 : 100 * hits / lookups;
+        return String.format(
+                "parses: %d/%d files, %d/%d KB, %d hits, %d misses (%d%% hit rate), %d incremental, %d evictions",
+                entries.size(), capacity, bytes / 1024, budget / 1024, hits, misses, hitRate, reparses, evictions);
+    }
+}
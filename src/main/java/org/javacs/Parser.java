@@ -8,21 +8,15 @@ import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import javax.lang.model.element.*;
-import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import org.javacs.lsp.*;
 
 class Parser {
-    private static final JavaCompiler COMPILER = ServiceLoader.load(JavaCompiler.class).iterator().next();
     private static final SourceFileManager FILE_MANAGER = new SourceFileManager();
 
-    /** Create a task that compiles a single file */
-    private static JavacTask singleFileTask(JavaFileObject file) {
-        return (JavacTask)
-                COMPILER.getTask(null, FILE_MANAGER, Parser::ignoreError, List.of(), List.of(), List.of(file));
-    }
+    /** Long-lived parser contexts, about one per worker thread that answers parse-only requests */
+    private static final ParserPool POOL = new ParserPool(FILE_MANAGER, 4);
 
     final JavaFileObject file;
     final String contents;
@@ -30,19 +24,12 @@ class Parser {
     final CompilationUnitTree root;
     final Trees trees;
 
-    private Parser(JavaFileObject file) {
+    /** A parse of file that was made in the context of task, without running task, by ParserPool or IncrementalParse */
+    Parser(JavaFileObject file, String contents, JavacTask task, CompilationUnitTree root) {
         this.file = file;
-        try {
-            this.contents = file.getCharContent(false).toString();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        this.task = singleFileTask(file);
-        try {
-            this.root = task.parse().iterator().next();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        this.contents = contents;
+        this.task = task;
+        this.root = root;
         this.trees = Trees.instance(task);
     }
 
@@ -50,42 +37,97 @@ class Parser {
         return parseJavaFileObject(new SourceFileObject(file));
     }
 
-    private static Parser cachedParse;
-    private static long cachedModified = -1;
+    /** Parses of open documents and recently used files, shared by every parse-only request */
+    static final ParseCache cache = new ParseCache(100, 64 * 1024 * 1024);
 
-    private static boolean needsParse(JavaFileObject file) {
-        if (cachedParse == null) return true;
-        if (!cachedParse.file.equals(file)) return true;
-        if (file.getLastModified() > cachedModified) return true;
-        return false;
+    static Parser parseJavaFileObject(JavaFileObject file) {
+        return cache.get(file);
     }
 
-    private static void loadParse(JavaFileObject file) {
-        cachedParse = new Parser(file);
-        cachedModified = file.getLastModified();
+    static Parser parseUncached(JavaFileObject file) {
+        LOG.info("...parsing " + file.toUri());
+        String contents;
+        try {
+            contents = file.getCharContent(false).toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return POOL.parse(file, contents);
     }
 
-    static Parser parseJavaFileObject(JavaFileObject file) {
-        if (needsParse(file)) {
-            loadParse(file);
+    // Implicitly loaded files are read once per version, but there can be hundreds of them in a single compile
+    private static final Cache<Void, String> cacheHeaders = new Cache<>("headers", 2_000);
+
+    /**
+     * The contents of file with every method body replaced by `throw null;`, so javac can enter its signatures without
+     * attributing the bodies, and the result still compiles without errors. Erased characters are replaced by spaces,
+     * so line and column positions are unchanged.
+     */
+    static String headers(Path file) {
+        return cacheHeaders.computeIfAbsent(file, null, () -> eraseMethodBodies(file));
+    }
+
+    private static final String THROW_NULL = "throw null;";
+
+    private static String eraseMethodBodies(Path file) {
+        var parse = parseUncached(new SourceFileObject(file));
+        var pos = parse.trees.getSourcePositions();
+        var buffer = new StringBuilder(parse.contents);
+        class Scan extends TreeScanner<Void, Void> {
+            @Override
+            public Void visitMethod(MethodTree node, Void __) {
+                var body = node.getBody();
+                if (body == null || body.getStatements().isEmpty()) return null;
+                // Keep the braces, and the this(...) or super(...) call at the start of a constructor
+                var statements = body.getStatements();
+                var start = pos.getStartPosition(parse.root, body) + 1;
+                if (isConstructorCall(statements.get(0))) {
+                    if (statements.size() == 1) return null;
+                    start = pos.getEndPosition(parse.root, statements.get(0));
+                }
+                var end = pos.getEndPosition(parse.root, body) - 1;
+                if (start <= 0 || end >= buffer.length()) return null;
+                // `throw null;` satisfies non-void methods, and constructors that assign final fields.
+                // If there's no room for it on one line, the body is short enough to leave alone.
+                var at = roomOnOneLine(buffer, start, end, THROW_NULL.length());
+                if (at == -1) return null;
+                erase(buffer, start, end);
+                buffer.replace(at, at + THROW_NULL.length(), THROW_NULL);
+                return null;
+            }
+        }
+        new Scan().scan(parse.root, null);
+        return buffer.toString();
+    }
+
+    private static boolean isConstructorCall(StatementTree statement) {
+        if (!(statement instanceof ExpressionStatementTree)) return false;
+        var expression = ((ExpressionStatementTree) statement).getExpression();
+        if (!(expression instanceof MethodInvocationTree)) return false;
+        var select = ((MethodInvocationTree) expression).getMethodSelect();
+        Name name;
+        if (select instanceof IdentifierTree) {
+            name = ((IdentifierTree) select).getName();
+        } else if (select instanceof MemberSelectTree) {
+            name = ((MemberSelectTree) select).getIdentifier();
         } else {
-            LOG.info("...using cached parse");
+            return false;
         }
-        return cachedParse;
+        return name.contentEquals("this") || name.contentEquals("super");
     }
 
-    Set<Name> packagePrivateClasses() {
-        var result = new HashSet<Name>();
-        for (var t : root.getTypeDecls()) {
-            if (t instanceof ClassTree) {
-                var c = (ClassTree) t;
-                var isPublic = c.getModifiers().getFlags().contains(Modifier.PUBLIC);
-                if (!isPublic) {
-                    result.add(c.getSimpleName());
-                }
+    /** The first offset in [start, end) that is followed by `length` characters without a line break, or -1 */
+    private static int roomOnOneLine(CharSequence buffer, long start, long end, int length) {
+        var run = 0;
+        for (var i = (int) start; i < end; i++) {
+            var c = buffer.charAt(i);
+            if (c == '\n' || c == '\r') {
+                run = 0;
+            } else if (++run == length) {
+                return i - length + 1;
             }
         }
-        return result;
+        return -1;
     }
 
     static Range range(JavacTask task, CharSequence contents, TreePath path) {
@@ -93,7 +135,6 @@ class Parser {
         var trees = Trees.instance(task);
         var pos = trees.getSourcePositions();
         var root = path.getCompilationUnit();
-        var lines = root.getLineMap();
         var start = (int) pos.getStartPosition(root, path.getLeaf());
         var end = (int) pos.getEndPosition(root, path.getLeaf());
 
@@ -102,6 +143,8 @@ class Parser {
             LOG.warning(String.format("Couldn't locate `%s`", path.getLeaf()));
             return Range.NONE;
         }
+        // Names are always inside the tree, so we never need to search past its end
+        var limit = end == -1 ? contents.length() : end;
         // If end is bad, guess based on start
         if (end == -1) {
             end = start + path.getLeaf().toString().length();
@@ -116,7 +159,7 @@ class Parser {
 
             // Find position of class name
             var name = cls.getSimpleName().toString();
-            start = indexOf(contents, name, start);
+            start = indexOf(contents, name, start, limit);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
@@ -135,7 +178,7 @@ class Parser {
             if (name.equals("<init>")) {
                 name = className(path);
             }
-            start = indexOf(contents, name, start);
+            start = indexOf(contents, name, start, limit);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
@@ -151,7 +194,7 @@ class Parser {
 
             // Find position of method name
             var name = field.getName().toString();
-            start = indexOf(contents, name, start);
+            start = indexOf(contents, name, start, limit);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
@@ -161,50 +204,43 @@ class Parser {
         if (path.getLeaf() instanceof MemberSelectTree) {
             var member = (MemberSelectTree) path.getLeaf();
             var name = member.getIdentifier().toString();
-            start = indexOf(contents, name, start);
+            start = indexOf(contents, name, start, limit);
             if (start == -1) {
                 LOG.warning(String.format("Couldn't find identifier `%s` in `%s`", name, path.getLeaf()));
                 return Range.NONE;
             }
             end = start + name.length();
         }
-        var startLine = (int) lines.getLineNumber(start);
-        var startCol = (int) lines.getColumnNumber(start);
-        var endLine = (int) lines.getLineNumber(end);
-        var endCol = (int) lines.getColumnNumber(end);
-        var range = new Range(new Position(startLine - 1, startCol - 1), new Position(endLine - 1, endCol - 1));
-
-        return range;
+        return PositionHelper.range(root, start, end);
     }
 
-    private static int indexOf(CharSequence contents, String name, int start) {
-        var matcher = Pattern.compile("\\b" + name + "\\b").matcher(contents);
-        if (matcher.find(start)) {
-            return matcher.start();
+    /** Find the first occurrence of the identifier name in contents[start, end) */
+    private static int indexOf(CharSequence contents, String name, int start, int end) {
+        end = Math.min(end, contents.length());
+        for (var i = start; i + name.length() <= end; i++) {
+            if (!matchesAt(contents, i, name)) continue;
+            var before = i > 0 && Character.isJavaIdentifierPart(contents.charAt(i - 1));
+            var after = i + name.length() < contents.length()
+                    && Character.isJavaIdentifierPart(contents.charAt(i + name.length()));
+            if (!before && !after) return i;
         }
         return -1;
     }
 
+    private static boolean matchesAt(CharSequence contents, int offset, String name) {
+        for (var i = 0; i < name.length(); i++) {
+            if (contents.charAt(offset + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
     private static final DocCommentTree EMPTY_DOC = makeEmptyDoc();
 
     private static DocCommentTree makeEmptyDoc() {
         var file = new SourceFileObject(Paths.get("/Foo.java"), "/** */ class Foo { }", Instant.now());
-        var task =
-                (JavacTask)
-                        COMPILER.getTask(
-                                null,
-                                FILE_MANAGER,
-                                Parser::ignoreError,
-                                List.of(),
-                                null,
-                                Collections.singletonList(file));
-        var docs = DocTrees.instance(task);
-        CompilationUnitTree root;
-        try {
-            root = task.parse().iterator().next();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        var parse = POOL.parse(file, "/** */ class Foo { }");
+        var docs = DocTrees.instance(parse.task);
+        var root = parse.root;
         class FindEmptyDoc extends TreePathScanner<Void, Void> {
             DocCommentTree found;
 
@@ -219,11 +255,6 @@ class Parser {
         return Objects.requireNonNull(find.found);
     }
 
-    private static void ignoreError(javax.tools.Diagnostic<? extends JavaFileObject> __) {
-        // Too noisy, this only comes up in parse tasks which tend to be less important
-        // LOG.warning(err.getMessage(Locale.getDefault()));
-    }
-
     static String describeTree(Tree leaf) {
         if (leaf instanceof MethodTree) {
             var method = (MethodTree) leaf;
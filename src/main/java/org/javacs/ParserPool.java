@@ -0,0 +1,167 @@
+package org.javacs;
+
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import java.util.*;
+import java.util.logging.Logger;
+import javax.tools.JavaFileObject;
+
+/**
+ * ParserPool keeps a few long-lived javac contexts that only run the parser. Creating a JavacTask for every parse sets
+ * up a new context, with its own names table, symbol table and options, before it lexes a single character; a pooled
+ * context has done that once, so a parse costs lexing and parsing only. Threads that parse at the same time check out
+ * different contexts. Each context keeps its own names table, because javac's names table isn't thread-safe.
+ *
+ * <p>Trees parsed in a context parse their doc comments lazily in that same context, so the doc comments of each tree
+ * are wrapped in a table that locks the context while a comment is parsed.
+ */
+class ParserPool {
+    private static final JavacTool COMPILER = JavacTool.create();
+
+    /** A javac context that has been set up to parse, and nothing else */
+    static class ParserContext {
+        final JavacTask task;
+        final Context context;
+        final ParserFactory parsers;
+        final Log log;
+
+        ParserContext(SourceFileManager fileManager) {
+            this.context = new Context();
+            this.task =
+                    COMPILER.getTask(
+                            null, fileManager, ParserPool::ignoreError, List.of(), List.of(), List.of(), context);
+            this.parsers = ParserFactory.instance(context);
+            this.log = Log.instance(context);
+        }
+
+        /** Parse contents, the text of file, holding the lock of this context */
+        JCCompilationUnit parse(JavaFileObject file, CharSequence contents) {
+            synchronized (context) {
+                var source = log.useSource(file);
+                // Parse errors are ignored, so don't let them pile up in the log of a context that lives forever
+                var discard = new Log.DiscardDiagnosticHandler(log);
+                try {
+                    var moduleInfo = file.isNameCompatible("module-info", JavaFileObject.Kind.SOURCE);
+                    var parser = parsers.newParser(contents, true, true, true, moduleInfo);
+                    var root = parser.parseCompilationUnit();
+                    root.sourcefile = file;
+                    if (root.docComments != null) {
+                        root.docComments = new LockedDocComments(context, root.docComments);
+                    }
+                    return root;
+                } finally {
+                    log.popDiagnosticHandler(discard);
+                    log.useSource(source);
+                }
+            }
+        }
+    }
+
+    private final SourceFileManager fileManager;
+    /** The most contexts that are kept when nobody is parsing */
+    private final int capacity;
+    private final Deque<ParserContext> idle = new ArrayDeque<>();
+    private int created;
+
+    ParserPool(SourceFileManager fileManager, int capacity) {
+        this.fileManager = fileManager;
+        this.capacity = capacity;
+    }
+
+    /** Parse contents, the text of file, in whichever context is idle */
+    Parser parse(JavaFileObject file, String contents) {
+        var borrow = checkOut();
+        try {
+            var root = borrow.parse(file, contents);
+            return new Parser(file, contents, borrow.task, root);
+        } finally {
+            checkIn(borrow);
+        }
+    }
+
+    private synchronized ParserContext checkOut() {
+        var context = idle.pollLast();
+        if (context == null) {
+            created++;
+            LOG.info(String.format("...creating parser context, %d created so far", created));
+            // Contexts share the file manager, so create them one at a time
+            context = new ParserContext(fileManager);
+        }
+        return context;
+    }
+
+    private synchronized void checkIn(ParserContext context) {
+        if (idle.size() < capacity) {
+            idle.addLast(context);
+        }
+    }
+
+    /** The number of contexts that have been created, including ones that were dropped because the pool was full */
+    synchronized int created() {
+        return created;
+    }
+
+    synchronized int idle() {
+        return idle.size();
+    }
+
+    private static void ignoreError(javax.tools.Diagnostic<? extends JavaFileObject> __) {
+        // Too noisy, this only comes up in parse tasks which tend to be less important
+    }
+
+    /** Doc comments of a tree, which are parsed in `context` while holding its lock */
+    private static class LockedDocComments implements DocCommentTable {
+        private final Context context;
+        private final DocCommentTable comments;
+
+        LockedDocComments(Context context, DocCommentTable comments) {
+            this.context = context;
+            this.comments = comments;
+        }
+
+        @Override
+        public boolean hasComment(JCTree tree) {
+            synchronized (context) {
+                return comments.hasComment(tree);
+            }
+        }
+
+        @Override
+        public Comment getComment(JCTree tree) {
+            synchronized (context) {
+                return comments.getComment(tree);
+            }
+        }
+
+        @Override
+        public String getCommentText(JCTree tree) {
+            synchronized (context) {
+                return comments.getCommentText(tree);
+            }
+        }
+
+        @Override
+        public DCDocComment getCommentTree(JCTree tree) {
+            synchronized (context) {
+                return comments.getCommentTree(tree);
+            }
+        }
+
+        @Override
+        public void putComment(JCTree tree, Comment c) {
+            synchronized (context) {
+                comments.putComment(tree, c);
+            }
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,112 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.util.*;
+import org.javacs.lsp.Position;
+import org.javacs.lsp.PositionEncoding;
+import org.javacs.lsp.Range;
+
+/**
+ * PositionHelper converts between offsets in source files and LSP positions, whose columns count characters in the
+ * encoding negotiated with the client. Lines are looked up in the line map javac built when it parsed the file, so
+ * every conversion is O(log n) in the size of the file, plus O(line length) when the client uses UTF-8.
+ */
+public class PositionHelper {
+    private static volatile PositionEncoding encoding = PositionEncoding.UTF_16;
+
+    public static PositionEncoding encoding() {
+        return encoding;
+    }
+
+    static void setEncoding(PositionEncoding newEncoding) {
+        encoding = newEncoding;
+    }
+
+    /** Convert a 1-based line and column to an offset, like LineMap.getPosition(line, column) */
+    public static long offset(CompilationUnitTree root, long line, long column) {
+        var lines = root.getLineMap();
+        if (encoding == PositionEncoding.UTF_16) {
+            return lines.getPosition(line, column);
+        }
+        var lineStart = (int) lines.getStartPosition(line);
+        return lineStart + utf16Length(contents(root), lineStart, (int) column - 1);
+    }
+
+    /** Convert an offset to a 0-based LSP position */
+    public static Position position(CompilationUnitTree root, long offset) {
+        var lines = root.getLineMap();
+        var line = (int) lines.getLineNumber(offset);
+        if (encoding == PositionEncoding.UTF_16) {
+            return new Position(line - 1, (int) lines.getColumnNumber(offset) - 1);
+        }
+        var lineStart = (int) lines.getStartPosition(line);
+        return new Position(line - 1, utf8Length(contents(root), lineStart, (int) offset));
+    }
+
+    public static Range range(CompilationUnitTree root, long start, long end) {
+        return new Range(position(root, start), position(root, end));
+    }
+
+    /** Convert a 0-based LSP position to an offset in text, which has a line index */
+    static int offset(Rope text, Position position) {
+        var lineStart = text.lineStart(position.line);
+        int offset;
+        if (encoding == PositionEncoding.UTF_16) {
+            offset = lineStart + position.character;
+        } else {
+            offset = lineStart + utf16Length(text, lineStart, position.character);
+        }
+        return Math.min(offset, text.length());
+    }
+
+    /** Number of UTF-8 bytes needed to encode text[start, end) */
+    static int utf8Length(CharSequence text, int start, int end) {
+        var bytes = 0;
+        for (var i = start; i < end; i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) bytes += 1;
+            else if (c < 0x800) bytes += 2;
+            // Each half of a surrogate pair counts for 2 of the 4 bytes of the code point
+            else if (Character.isSurrogate(c)) bytes += 2;
+            else bytes += 3;
+        }
+        return bytes;
+    }
+
+    /** Number of chars, starting from start, that encode the first `bytes` UTF-8 bytes of the line */
+    static int utf16Length(CharSequence text, int start, int bytes) {
+        var i = start;
+        var count = 0;
+        while (count < bytes && i < text.length()) {
+            var c = text.charAt(i);
+            if (c == '\n' || c == '\r') break;
+            count += utf8Length(text, i, i + 1);
+            i++;
+        }
+        return i - start;
+    }
+
+    /**
+     * The text of each root that has been converted in UTF-8, which is the text javac parsed, so closed files aren't
+     * read from disk by every conversion. Roots are only weakly referenced, so the text is dropped with the tree.
+     */
+    private static final Map<CompilationUnitTree, CharSequence> contents = new WeakHashMap<>();
+
+    private static CharSequence contents(CompilationUnitTree root) {
+        synchronized (contents) {
+            var text = contents.get(root);
+            if (text != null) return text;
+        }
+        CharSequence text;
+        try {
+            text = root.getSourceFile().getCharContent(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (contents) {
+            contents.put(root, text);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,382 @@
+package org.javacs;
+
+import com.sun.source.tree.*;
+import com.sun.source.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Logger;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.Types;
+
+/**
+ * ReferenceIndex records which types and members each file refers to, as javac resolved them the last time the file
+ * was attributed, so find-references and rename only compile the files that really refer to an element. A member is
+ * recorded as its declaring class and name, and a method also with its erased parameter types.
+ *
+ * <p>Each entry is tagged with the version of the file it was recorded from, and a hash of the declarations in each
+ * workspace file that declares a type the file's references were resolved against, including their supertypes. If the
+ * file or any of those declarations has changed, the references might resolve differently now, so the entry isn't
+ * trusted and the caller falls back to searching the text. Editing method bodies doesn't change declarations, so it
+ * doesn't invalidate the entries of other files. A class that is created after a file was indexed, and shadows a class
+ * the file uses, isn't noticed. The index is saved in CacheDirectory between launches.
+ */
+class ReferenceIndex {
+    /** Change this whenever the format changes, so old indexes are ignored */
+    private static final int VERSION = 1;
+
+    private static class Entry {
+        /** The modified time, in milliseconds, of the version of the file that was indexed */
+        final long modified;
+        /** Type, member and method keys, see typeKey(_), memberKey(_, _) and methodKey(_, _, _) */
+        final Set<String> references;
+        /** declarations(_) of each workspace file that declares a type these references were resolved against */
+        final Map<Path, Long> dependencies;
+
+        Entry(long modified, Set<String> references, Map<Path, Long> dependencies) {
+            this.modified = modified;
+            this.references = references;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private static final Map<Path, Entry> entries = new HashMap<>();
+    /** One copy of each key, shared by every entry */
+    private static final Map<String, String> vocabulary = new HashMap<>();
+    private static final Set<Path> loadedRoots = new HashSet<>();
+
+    /** Could file refer to the class className? False only if the index proves it doesn't. */
+    static boolean mayReferenceType(Path file, String className) {
+        var entry = current(file);
+        return entry == null || entry.references.contains(typeKey(className));
+    }
+
+    /** Could file refer to the field, method or constructor memberName of className? */
+    static boolean mayReferenceMember(Path file, String className, String memberName) {
+        var entry = current(file);
+        return entry == null || entry.references.contains(memberKey(className, memberName));
+    }
+
+    /** Could file refer to the overload of methodName in className that takes erasedParameterTypes? */
+    static boolean mayReferenceMethod(
+            Path file, String className, String methodName, String[] erasedParameterTypes) {
+        var entry = current(file);
+        return entry == null || entry.references.contains(methodKey(className, methodName, erasedParameterTypes));
+    }
+
+    /**
+     * The entry of file, if it is up to date with file and all its dependencies. Checking the dependencies can parse
+     * them, so it's done outside the lock, where parallel searches can check different files at the same time. Entries
+     * are never modified once they're in `entries`, only replaced.
+     */
+    private static Entry current(Path file) {
+        Entry entry;
+        synchronized (ReferenceIndex.class) {
+            loadSavedRoots();
+            entry = entries.get(file);
+        }
+        if (entry == null || !FileStore.contains(file)) return null;
+        if (FileStore.modified(file).toEpochMilli() != entry.modified) return null;
+        for (var d : entry.dependencies.entrySet()) {
+            if (!FileStore.contains(d.getKey())) return null;
+            if (declarations(d.getKey()) != d.getValue()) return null;
+        }
+        return entry;
+    }
+
+    private static final Cache<Void, Long> cacheDeclarations = new Cache<>("declarations", 10_000);
+
+    /** A hash of the declarations in file, which doesn't change when only method bodies or whitespace change */
+    static long declarations(Path file) {
+        return cacheDeclarations.computeIfAbsent(file, null, () -> hashDeclarations(file));
+    }
+
+    private static long hashDeclarations(Path file) {
+        var headers = Parser.headers(file);
+        // 64-bit FNV-1a
+        var hash = 0xcbf29ce484222325L;
+        for (var i = 0; i < headers.length(); i++) {
+            var c = headers.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+            hash ^= c;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String typeKey(String className) {
+        return className;
+    }
+
+    private static String memberKey(String className, String memberName) {
+        return className + "#" + memberName;
+    }
+
+    private static String methodKey(String className, String methodName, String[] erasedParameterTypes) {
+        return memberKey(className, methodName) + "(" + String.join(",", erasedParameterTypes) + ")";
+    }
+
+    /**
+     * Record the references in root, which javac just attributed from the version of file that was modified at
+     * `modified`. The entry is written to disk by the next save().
+     */
+    static void index(JavacTask task, CompilationUnitTree root, Path file, long modified) {
+        var scan = new FindReferences(task, file);
+        scan.scan(root, null);
+        var dependencies = new HashMap<Path, Long>();
+        for (var d : scan.dependencies) {
+            if (FileStore.contains(d)) dependencies.put(d, declarations(d));
+        }
+        synchronized (ReferenceIndex.class) {
+            var references = new HashSet<String>();
+            for (var r : scan.references) {
+                references.add(vocabulary.computeIfAbsent(r, k -> k));
+            }
+            entries.put(file, new Entry(modified, references, dependencies));
+            // Open files change with every keystroke, so their entries aren't worth saving
+            if (!FileStore.activeDocuments().contains(file)) changedRoots.add(workspaceRoot(file));
+        }
+    }
+
+    /** The workspace files that root depends on: the files that declare what it refers to, and their supertypes */
+    static Set<Path> dependencies(JavacTask task, CompilationUnitTree root, Path file) {
+        var scan = new FindReferences(task, file);
+        scan.scan(root, null);
+        return scan.dependencies;
+    }
+
+    /** Workspace roots whose entries have changed since they were last saved */
+    private static final Set<Path> changedRoots = new HashSet<>();
+
+    /**
+     * Save the entries of workspace roots that have new entries. This rewrites the whole index of each root, so
+     * JavaLanguageServer calls it when the server is idle, rather than after each compile.
+     */
+    static synchronized void save() {
+        changedRoots.remove(null);
+        for (var root : changedRoots) {
+            save(root);
+        }
+        changedRoots.clear();
+    }
+
+    /** Finds every type and member the scanned file refers to, the same way FindReferences matches them */
+    private static class FindReferences extends TreePathScanner<Void, Void> {
+        final Trees trees;
+        final Types types;
+        final Path file;
+        final Set<String> references = new HashSet<>();
+        final Set<Path> dependencies = new HashSet<>();
+        private final Set<TypeElement> visited = new HashSet<>();
+
+        FindReferences(JavacTask task, Path file) {
+            this.trees = Trees.instance(task);
+            this.types = task.getTypes();
+            this.file = file;
+        }
+
+        @Override
+        public Void visitClass(ClassTree t, Void __) {
+            // Unqualified references to inherited members are resolved against the supertypes of this class
+            var el = trees.getElement(getCurrentPath());
+            if (el instanceof TypeElement) depend((TypeElement) el);
+            return super.visitClass(t, null);
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree t, Void __) {
+            record(trees.getElement(getCurrentPath()));
+            return super.visitIdentifier(t, null);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree t, Void __) {
+            record(trees.getElement(getCurrentPath()));
+            qualifier(t.getExpression());
+            return super.visitMemberSelect(t, null);
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree t, Void __) {
+            record(trees.getElement(getCurrentPath()));
+            return super.visitNewClass(t, null);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree t, Void __) {
+            record(trees.getElement(getCurrentPath()));
+            qualifier(t.getQualifierExpression());
+            return super.visitMemberReference(t, null);
+        }
+
+        /** The member a qualifier selects is looked up in the type of the qualifier and its supertypes */
+        private void qualifier(ExpressionTree qualifier) {
+            var type = trees.getTypeMirror(new TreePath(getCurrentPath(), qualifier));
+            if (type instanceof DeclaredType) {
+                depend((TypeElement) ((DeclaredType) type).asElement());
+            }
+        }
+
+        private void record(Element el) {
+            if (el == null) return;
+            if (el instanceof TypeElement) {
+                var type = (TypeElement) el;
+                references.add(typeKey(type.getQualifiedName().toString()));
+                depend(type);
+                return;
+            }
+            var kind = el.getKind();
+            if (!kind.isField() && kind != ElementKind.METHOD && kind != ElementKind.CONSTRUCTOR) return;
+            if (!(el.getEnclosingElement() instanceof TypeElement)) return;
+            var parent = (TypeElement) el.getEnclosingElement();
+            var className = parent.getQualifiedName().toString();
+            // Constructors are named after their class, the way ReferenceProvider looks them up
+            var name = kind == ElementKind.CONSTRUCTOR ? parent.getSimpleName() : el.getSimpleName();
+            references.add(memberKey(className, name.toString()));
+            if (el instanceof ExecutableElement) {
+                var params = ((ExecutableElement) el).getParameters();
+                var erased = new String[params.size()];
+                for (var i = 0; i < erased.length; i++) {
+                    erased[i] = types.erasure(params.get(i).asType()).toString();
+                }
+                references.add(methodKey(className, name.toString(), erased));
+            }
+            depend(parent);
+        }
+
+        /** Depend on the file that declares type, and the files that declare its supertypes */
+        private void depend(TypeElement type) {
+            if (!visited.add(type)) return;
+            var declaringFile = declaringFile(type);
+            if (declaringFile != null && !declaringFile.equals(file)) dependencies.add(declaringFile);
+            for (var s : types.directSupertypes(type.asType())) {
+                if (s instanceof DeclaredType) depend((TypeElement) ((DeclaredType) s).asElement());
+            }
+        }
+    }
+
+    /** The workspace file that declares the top-level class that contains type, or null if it isn't in the workspace */
+    private static Path declaringFile(TypeElement type) {
+        Element outer = type;
+        while (outer.getEnclosingElement() instanceof TypeElement) {
+            outer = outer.getEnclosingElement();
+        }
+        var qualifiedName = ((TypeElement) outer).getQualifiedName().toString();
+        var packageName = StringSearch.mostName(qualifiedName);
+        var className = StringSearch.lastName(qualifiedName);
+        var file = FileStore.file(packageName, className);
+        if (file.isPresent()) return file.get();
+        return PackagePrivateIndex.classes(packageName).get(className);
+    }
+
+    private static Path workspaceRoot(Path file) {
+        for (var root : FileStore.workspaceRoots()) {
+            if (file.startsWith(root)) return root;
+        }
+        return null;
+    }
+
+    private static Path file(Path workspaceRoot) {
+        return CacheDirectory.forWorkspace(workspaceRoot, "references");
+    }
+
+    private static void loadSavedRoots() {
+        for (var root : FileStore.workspaceRoots()) {
+            if (loadedRoots.add(root)) {
+                load(root);
+            }
+        }
+    }
+
+    // The saved format is a vocabulary of keys and file names, followed by the entry of each file,
+    // which refers to the vocabulary by index.
+
+    private static void load(Path workspaceRoot) {
+        var file = file(workspaceRoot);
+        if (!Files.exists(file)) return;
+        var loaded = new HashMap<Path, Entry>();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return;
+            if (!in.readUTF().equals(workspaceRoot.toString())) return;
+            var words = new String[in.readInt()];
+            for (var i = 0; i < words.length; i++) {
+                var word = in.readUTF();
+                words[i] = vocabulary.computeIfAbsent(word, k -> k);
+            }
+            var count = in.readInt();
+            for (var i = 0; i < count; i++) {
+                var path = workspaceRoot.resolve(in.readUTF());
+                var modified = in.readLong();
+                var references = new HashSet<String>();
+                var referenceCount = IdentifierIndex.readVarInt(in);
+                for (var j = 0; j < referenceCount; j++) {
+                    references.add(words[IdentifierIndex.readVarInt(in)]);
+                }
+                var dependencies = new HashMap<Path, Long>();
+                var dependencyCount = IdentifierIndex.readVarInt(in);
+                for (var j = 0; j < dependencyCount; j++) {
+                    dependencies.put(Paths.get(words[IdentifierIndex.readVarInt(in)]), in.readLong());
+                }
+                loaded.put(path, new Entry(modified, references, dependencies));
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            LOG.warning(String.format("Ignoring reference index %s: %s", file, e.getMessage()));
+            return;
+        }
+        // Entries recorded since the server started are newer than the saved ones
+        for (var e : loaded.entrySet()) {
+            entries.putIfAbsent(e.getKey(), e.getValue());
+        }
+    }
+
+    private static void save(Path workspaceRoot) {
+        loadSavedRoots();
+        var file = file(workspaceRoot);
+        var local = new HashMap<String, Integer>();
+        var words = new ArrayList<String>();
+        var files = new ArrayList<Path>();
+        for (var e : entries.entrySet()) {
+            if (!e.getKey().startsWith(workspaceRoot) || !FileStore.contains(e.getKey())) continue;
+            files.add(e.getKey());
+            for (var r : e.getValue().references) {
+                if (local.putIfAbsent(r, words.size()) == null) words.add(r);
+            }
+            for (var d : e.getValue().dependencies.keySet()) {
+                var name = d.toString();
+                if (local.putIfAbsent(name, words.size()) == null) words.add(name);
+            }
+        }
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(workspaceRoot.toString());
+                out.writeInt(words.size());
+                for (var w : words) {
+                    out.writeUTF(w);
+                }
+                out.writeInt(files.size());
+                for (var f : files) {
+                    var entry = entries.get(f);
+                    out.writeUTF(workspaceRoot.relativize(f).toString());
+                    out.writeLong(entry.modified);
+                    IdentifierIndex.writeVarInt(out, entry.references.size());
+                    for (var r : entry.references) {
+                        IdentifierIndex.writeVarInt(out, local.get(r));
+                    }
+                    IdentifierIndex.writeVarInt(out, entry.dependencies.size());
+                    for (var d : entry.dependencies.entrySet()) {
+                        IdentifierIndex.writeVarInt(out, local.get(d.getKey().toString()));
+                        out.writeLong(d.getValue());
+                    }
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save reference index %s: %s", file, e.getMessage()));
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -30,6 +30,9 @@ import com.sun.source.util.JavacTask;
 import com.sun.source.util.TaskEvent;
 import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.api.*;
+import com.sun.tools.javac.code.ClassFinder;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symtab;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.comp.Annotate;
 import com.sun.tools.javac.comp.Check;
@@ -44,7 +47,9 @@ import com.sun.tools.javac.util.DefinedBy;
 import com.sun.tools.javac.util.DefinedBy.Api;
 import com.sun.tools.javac.util.Log;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -53,6 +58,7 @@ import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import org.javacs.lsp.CancelToken;
 
 /**
  * A pool of reusable JavacTasks. When a task is no valid anymore, it is returned to the pool, and its Context may be
@@ -65,7 +71,8 @@ import javax.tools.JavaFileObject;
  * <p>When the compilation redefines sensitive classes (e.g. classes in the the java.* packages), the task/context is
  * not reused.
  *
- * <p>When the task is reused, then packages that were already listed won't be listed again.
+ * <p>When the task is reused, then packages that were already listed won't be listed again, except packages that had
+ * classes from workspace sources. Those classes are forgotten, so the next task reads their current version.
  *
  * <p>Care must be taken to only return tasks that won't be used by the original caller.
  *
@@ -81,13 +88,14 @@ class ReusableCompiler {
     private static final JavacTool systemProvider = JavacTool.create();
 
     private List<String> currentOptions = new ArrayList<>();
-    private ReusableContext currentContext;
-    private boolean checkedOut;
+    /** Contexts that aren't checked out; each CompileBatch that is kept alive holds one */
+    private final Deque<ReusableContext> idle = new ArrayDeque<>();
+    private int checkedOut;
 
     /**
      * Creates a new task as if by {@link javax.tools.JavaCompiler#getTask} and runs the provided worker with it. The
      * task is only valid while the worker is running. The internal structures may be reused from some previous
-     * compilation.
+     * compilation. If another task is still checked out, the new task gets a context of its own.
      *
      * @param fileManager a file manager; if {@code null} use the compiler's standard filemanager
      * @param diagnosticListener a diagnostic listener; if {@code null} use the compiler's default method for reporting
@@ -107,33 +115,62 @@ class ReusableCompiler {
             Iterable<String> options,
             Iterable<String> classes,
             Iterable<? extends JavaFileObject> compilationUnits) {
-        if (checkedOut) {
-            throw new RuntimeException("Compiler is already in-use!");
-        }
-        checkedOut = true;
         List<String> opts =
                 StreamSupport.stream(options.spliterator(), false).collect(Collectors.toCollection(ArrayList::new));
-        if (!opts.equals(currentOptions)) {
-            LOG.warning(String.format("Options changed from %s to %s, creating new compiler", options, opts));
-            currentOptions = opts;
-            currentContext = new ReusableContext(opts);
-        }
+        var context = checkOut(opts);
         JavacTaskImpl task =
                 (JavacTaskImpl)
                         systemProvider.getTask(
-                                null, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
+                                null, fileManager, diagnosticListener, opts, classes, compilationUnits, context);
+
+        task.addTaskListener(context);
+
+        return new Borrow(task, context);
+    }
 
-        task.addTaskListener(currentContext);
+    private synchronized ReusableContext checkOut(List<String> opts) {
+        if (!opts.equals(currentOptions)) {
+            LOG.warning(String.format("Options changed from %s to %s, creating new compiler", currentOptions, opts));
+            currentOptions = opts;
+            idle.clear();
+        }
+        checkedOut++;
+        var context = idle.pollLast();
+        if (context == null) {
+            LOG.info(String.format("...creating javac context, %d in use", checkedOut));
+            context = new ReusableContext(opts);
+        }
+        return context;
+    }
 
-        return new Borrow(task, currentContext);
+    private synchronized void checkIn(ReusableContext context) {
+        checkedOut--;
+        // Contexts created with old options can't be reused
+        if (context.arguments.equals(currentOptions)) {
+            idle.addLast(context);
+        }
+    }
+
+    /** Forget a context that won't be returned */
+    private synchronized void discard(ReusableContext context) {
+        checkedOut--;
+    }
+
+    /** The number of contexts that have been created and not thrown away */
+    synchronized int contexts() {
+        return checkedOut + idle.size();
     }
 
     class Borrow implements AutoCloseable {
         final JavacTask task;
+        final ReusableContext context;
         boolean closed;
+        /** Set when the task was interrupted by an exception that may have left the context half-updated */
+        boolean broken;
 
         Borrow(JavacTask task, ReusableContext ctx) {
             this.task = task;
+            this.context = ctx;
         }
 
         @Override
@@ -141,7 +178,12 @@ class ReusableCompiler {
             if (closed) return;
             // not returning the context to the pool if task crashes with an exception
             // the task/context may be in a broken state
-            currentContext.clear();
+            if (broken) {
+                discard(context);
+                closed = true;
+                return;
+            }
+            context.clear();
             try {
                 var method = JavacTaskImpl.class.getDeclaredMethod("cleanup");
                 method.setAccessible(true);
@@ -149,7 +191,7 @@ class ReusableCompiler {
             } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
                 throw new RuntimeException(e);
             }
-            checkedOut = false;
+            checkIn(context);
             closed = true;
         }
     }
@@ -186,9 +228,38 @@ class ReusableCompiler {
                 Annotate.instance(this).newRound();
                 CompileStates.instance(this).clear();
                 MultiTaskListener.instance(this).clear();
+                forgetWorkspaceClasses();
             }
         }
 
+        /**
+         * Remove the classes that were read from workspace sources, or from their cached class files, from the symbol
+         * table. Those files may have changed by the time this context is reused, and javac never reads a class again
+         * once it has a symbol for it. Roots are entered again anyway, but the classes they depend on would be stale.
+         */
+        private void forgetWorkspaceClasses() {
+            var syms = Symtab.instance(this);
+            var forget = new ArrayList<ClassSymbol>();
+            for (var c : syms.getAllClasses()) {
+                if (isFromWorkspace(c.classfile)) forget.add(c);
+            }
+            var completer = ClassFinder.instance(this).getCompleter();
+            for (var c : forget) {
+                var p = c.packge();
+                syms.removeClass(p.modle, c.flatname);
+                // List the package again, so it gets new symbols for its classes
+                p.members_field = null;
+                p.completer = completer;
+            }
+        }
+
+        private static boolean isFromWorkspace(JavaFileObject file) {
+            if (file == null) return false;
+            var scheme = file.toUri().getScheme();
+            if (scheme.equals("memory")) return true; // ClassFileCache
+            return scheme.equals("file") && file.getKind() == JavaFileObject.Kind.SOURCE;
+        }
+
         @Override
         @DefinedBy(Api.COMPILER_TREE)
         public void finished(TaskEvent e) {
@@ -198,7 +269,8 @@ class ReusableCompiler {
         @Override
         @DefinedBy(Api.COMPILER_TREE)
         public void started(TaskEvent e) {
-            // do nothing
+            // Each phase of each file is a convenient place to give up on a cancelled request
+            CancelToken.current().checkCancelled();
         }
 
         <T> void drop(Key<T> k) {
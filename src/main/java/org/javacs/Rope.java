@@ -0,0 +1,221 @@
+package org.javacs;
+
+/**
+ * Rope is an immutable text buffer, stored as a balanced tree of short strings. Replacing a range of a rope shares
+ * all the untouched leaves with the original, so editing a large document costs O(log n) instead of O(n). Each node
+ * also counts the newlines beneath it, so the start of any line can be found in O(log n).
+ */
+final class Rope implements CharSequence {
+    /** Leaves are never longer than this, so the work done inside a single leaf is bounded */
+    static final int MAX_LEAF = 1024;
+
+    static final Rope EMPTY = new Rope("");
+
+    /** If this is a leaf, its text, otherwise null */
+    private final String leaf;
+
+    private final Rope left, right;
+    private final int length, newlines, depth;
+    /** Cached result of toString() */
+    private volatile String string;
+
+    private Rope(String leaf) {
+        this.leaf = leaf;
+        this.left = null;
+        this.right = null;
+        this.length = leaf.length();
+        this.newlines = countNewlines(leaf);
+        this.depth = 0;
+    }
+
+    private Rope(Rope left, Rope right) {
+        this.leaf = null;
+        this.left = left;
+        this.right = right;
+        this.length = left.length + right.length;
+        this.newlines = left.newlines + right.newlines;
+        this.depth = 1 + Math.max(left.depth, right.depth);
+    }
+
+    static Rope of(CharSequence text) {
+        if (text instanceof Rope) return (Rope) text;
+        if (text.length() == 0) return EMPTY;
+        return build(text.toString(), 0, text.length());
+    }
+
+    /** Build a perfectly balanced tree from text[start, end) */
+    private static Rope build(String text, int start, int end) {
+        if (end - start <= MAX_LEAF) {
+            return new Rope(text.substring(start, end));
+        }
+        var leaves = (end - start + MAX_LEAF - 1) / MAX_LEAF;
+        var mid = start + (leaves / 2) * MAX_LEAF;
+        return new Rope(build(text, start, mid), build(text, mid, end));
+    }
+
+    private static int countNewlines(String text) {
+        var count = 0;
+        for (var i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    /** Replace [start, end) with text */
+    Rope replace(int start, int end, CharSequence text) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) is outside [0, %d)", start, end, length));
+        }
+        var head = split(this, start)[0];
+        var tail = split(this, end)[1];
+        return join(join(head, of(text)), tail);
+    }
+
+    /** Offset of the first character of line, which is 0-based. Lines past the end of the document start at length(). */
+    int lineStart(int line) {
+        if (line <= 0) return 0;
+        if (line > newlines) return length;
+        // Find the line-th newline
+        var node = this;
+        var offset = 0;
+        var remaining = line;
+        while (node.leaf == null) {
+            if (remaining <= node.left.newlines) {
+                node = node.left;
+            } else {
+                remaining -= node.left.newlines;
+                offset += node.left.length;
+                node = node.right;
+            }
+        }
+        for (var i = 0; ; i++) {
+            if (node.leaf.charAt(i) == '\n' && --remaining == 0) {
+                return offset + i + 1;
+            }
+        }
+    }
+
+    /** Number of lines, which is always 1 more than the number of newlines */
+    int lineCount() {
+        return newlines + 1;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(String.format("%d is outside [0, %d)", index, length));
+        }
+        // Once the rope has been flattened, for example by javac, use the flat copy
+        var string = this.string;
+        if (string != null) return string.charAt(index);
+        var node = this;
+        while (node.leaf == null) {
+            if (index < node.left.length) {
+                node = node.left;
+            } else {
+                index -= node.left.length;
+                node = node.right;
+            }
+        }
+        return node.leaf.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) is outside [0, %d)", start, end, length));
+        }
+        var string = this.string;
+        if (string != null) return string.substring(start, end);
+        var builder = new StringBuilder(end - start);
+        append(builder, start, end);
+        return builder.toString();
+    }
+
+    /** Append this[start, end) to builder */
+    private void append(StringBuilder builder, int start, int end) {
+        if (start >= end) return;
+        if (leaf != null) {
+            builder.append(leaf, start, end);
+            return;
+        }
+        var mid = left.length;
+        if (start < mid) left.append(builder, start, Math.min(end, mid));
+        if (end > mid) right.append(builder, Math.max(start, mid) - mid, end - mid);
+    }
+
+    @Override
+    public String toString() {
+        // Ropes are immutable, so the flattened text can be shared by everyone who needs a String
+        var string = this.string;
+        if (string == null) {
+            if (leaf != null) {
+                string = leaf;
+            } else {
+                var builder = new StringBuilder(length);
+                append(builder, 0, length);
+                string = builder.toString();
+            }
+            this.string = string;
+        }
+        return string;
+    }
+
+    /** Split node into [0, offset) and [offset, length) */
+    private static Rope[] split(Rope node, int offset) {
+        if (offset == 0) return new Rope[] {EMPTY, node};
+        if (offset == node.length) return new Rope[] {node, EMPTY};
+        if (node.leaf != null) {
+            return new Rope[] {new Rope(node.leaf.substring(0, offset)), new Rope(node.leaf.substring(offset))};
+        }
+        if (offset <= node.left.length) {
+            var parts = split(node.left, offset);
+            return new Rope[] {parts[0], join(parts[1], node.right)};
+        } else {
+            var parts = split(node.right, offset - node.left.length);
+            return new Rope[] {join(node.left, parts[0]), parts[1]};
+        }
+    }
+
+    /** Concatenate left and right, keeping the tree balanced like an AVL tree */
+    private static Rope join(Rope left, Rope right) {
+        if (left.length == 0) return right;
+        if (right.length == 0) return left;
+        // Merge small leaves, so typing one character at a time doesn't create one leaf per character
+        if (left.length + right.length <= MAX_LEAF && left.depth + right.depth <= 1) {
+            return new Rope(left.toString() + right.toString());
+        }
+        if (left.depth > right.depth + 1) {
+            return balance(left.left, join(left.right, right));
+        }
+        if (right.depth > left.depth + 1) {
+            return balance(join(left, right.left), right.right);
+        }
+        return new Rope(left, right);
+    }
+
+    private static Rope balance(Rope left, Rope right) {
+        if (left.depth > right.depth + 1) {
+            if (left.left.depth >= left.right.depth) {
+                return new Rope(left.left, new Rope(left.right, right));
+            } else {
+                var middle = left.right;
+                return new Rope(new Rope(left.left, middle.left), new Rope(middle.right, right));
+            }
+        }
+        if (right.depth > left.depth + 1) {
+            if (right.right.depth >= right.left.depth) {
+                return new Rope(new Rope(left, right.left), right.right);
+            } else {
+                var middle = right.left;
+                return new Rope(new Rope(left, middle.left), new Rope(middle.right, right.right));
+            }
+        }
+        return new Rope(left, right);
+    }
+}
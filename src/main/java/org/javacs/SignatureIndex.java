@@ -0,0 +1,467 @@
+package org.javacs;
+
+import java.io.*;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+/**
+ * SignatureIndex finds the public and protected members of the JDK and the classpath by their erased types, so a query
+ * like (String, int) -> List finds every method that takes a String and an int and returns a List. It reads class
+ * files with ClassHeader, so classes are never loaded and javac is never involved. The JDK's members are saved in
+ * CacheDirectory.forJdk and each jar's in CacheDirectory.forJar, and reused as long as the JDK is the same and the jar
+ * has the same size and modified time.
+ */
+class SignatureIndex {
+    /** Change this whenever the format changes, so old indexes are ignored */
+    private static final int VERSION = 1;
+
+    static final int FIELD = 0, METHOD = 1, CONSTRUCTOR = 2;
+
+    /** A member of a class, with its types erased and written the way they're written in source, like java.util.List */
+    static class Member {
+        final String className, name;
+        final int kind;
+        final boolean isStatic;
+
+        /** The parameters of a method or constructor, or null for a field */
+        final String[] parameterTypes;
+
+        /** The return type of a method, the class of a constructor, or the type of a field */
+        final String type;
+
+        Member(String className, String name, int kind, boolean isStatic, String[] parameterTypes, String type) {
+            this.className = className;
+            this.name = name;
+            this.kind = kind;
+            this.isStatic = isStatic;
+            this.parameterTypes = parameterTypes;
+            this.type = type;
+        }
+
+        @Override
+        public String toString() {
+            var signature = className + "#" + name;
+            if (parameterTypes != null) signature += "(" + String.join(", ", parameterTypes) + ")";
+            return signature + ": " + type;
+        }
+    }
+
+    /** The members of one jar or of the JDK, sorted by the simple names of their types */
+    private static class Members {
+        final String identity;
+        final Member[] members;
+        final String[] keys;
+
+        Members(String identity, Member[] members) {
+            this.identity = identity;
+            this.members = members;
+            this.keys = new String[members.length];
+            // Many members have the same key, like every () -> void method
+            var shared = new HashMap<String, String>();
+            for (var i = 0; i < members.length; i++) {
+                var key = key(members[i].parameterTypes, members[i].type);
+                keys[i] = shared.computeIfAbsent(key, k -> k);
+            }
+        }
+    }
+
+    /**
+     * Members of the JDK and the jars in classPath that match query, which is either a method signature like `(String,
+     * int) -> List<?>` or a field type like `Map.Entry`. Types can be simple or qualified, and generics are ignored.
+     */
+    static List<Member> search(String query, Collection<Path> classPath, int limit) {
+        var parsed = parseQuery(query);
+        if (parsed == null) {
+            LOG.warning(String.format("Can't understand signature `%s`", query));
+            return List.of();
+        }
+        var parameterTypes = parsed.get(0) == null ? null : parsed.get(0).split(",", -1);
+        if (parameterTypes != null && parameterTypes.length == 1 && parameterTypes[0].isEmpty()) {
+            parameterTypes = new String[0];
+        }
+        var type = parsed.get(1);
+        var key = key(parameterTypes, type);
+        var classPathJars = classPath.stream().filter(Files::isRegularFile).collect(Collectors.toList());
+        // Forget jars that were removed from the class path, so their members don't stay in memory
+        jars.keySet().retainAll(new HashSet<>(classPathJars));
+        var sources = new ArrayList<Members>();
+        sources.add(jdk());
+        sources.addAll(classPathJars.parallelStream().map(SignatureIndex::jar).collect(Collectors.toList()));
+        var found = new ArrayList<Member>();
+        for (var source : sources) {
+            var i = Arrays.binarySearch(source.keys, key);
+            if (i < 0) continue;
+            while (i > 0 && source.keys[i - 1].equals(key)) i--;
+            for (; i < source.keys.length && source.keys[i].equals(key); i++) {
+                var member = source.members[i];
+                if (!matches(member, parameterTypes, type)) continue;
+                if (found.size() >= limit) return found;
+                found.add(member);
+            }
+        }
+        return found;
+    }
+
+    /** Split query into [comma-separated parameter types, or null for a field; type], or null if it's malformed */
+    static List<String> parseQuery(String query) {
+        var normalized = normalizeType(query);
+        if (normalized == null) return null;
+        if (!normalized.startsWith("(")) {
+            if (normalized.isEmpty() || normalized.contains(",") || normalized.contains("->")) return null;
+            return Arrays.asList(null, normalized);
+        }
+        var close = normalized.indexOf(')');
+        if (close == -1 || !normalized.startsWith("->", close + 1)) return null;
+        var parameters = normalized.substring(1, close);
+        var type = normalized.substring(close + 3);
+        if (type.isEmpty() || type.contains("(") || type.contains(")")) return null;
+        for (var p : parameters.split(",", -1)) {
+            if (p.isEmpty() && !parameters.isEmpty()) return null;
+        }
+        return Arrays.asList(parameters, type);
+    }
+
+    /** Remove whitespace and type arguments, and write varargs as arrays, so List<? extends T>... becomes List[] */
+    private static String normalizeType(String type) {
+        var out = new StringBuilder();
+        var depth = 0;
+        for (var i = 0; i < type.length(); i++) {
+            var c = type.charAt(i);
+            if (c == '<') depth++;
+            else if (c == '>' && depth > 0 && (i == 0 || type.charAt(i - 1) != '-')) depth--;
+            else if (depth == 0 && !Character.isWhitespace(c)) out.append(c);
+        }
+        if (depth != 0) return null;
+        return out.toString().replace("...", "[]");
+    }
+
+    /** Does the erased type `memberType`, like java.util.Map.Entry, match `queryType`, like Map.Entry? */
+    private static boolean matchesType(String memberType, String queryType) {
+        return memberType.equals(queryType) || memberType.endsWith("." + queryType);
+    }
+
+    private static boolean matches(Member member, String[] parameterTypes, String type) {
+        if (!matchesType(member.type, type)) return false;
+        if (parameterTypes == null) return member.parameterTypes == null;
+        if (member.parameterTypes == null || member.parameterTypes.length != parameterTypes.length) return false;
+        for (var i = 0; i < parameterTypes.length; i++) {
+            if (!matchesType(member.parameterTypes[i], parameterTypes[i])) return false;
+        }
+        return true;
+    }
+
+    /** The simple names of parameterTypes and type, like (String,int)List, which is what members are sorted by */
+    private static String key(String[] parameterTypes, String type) {
+        if (parameterTypes == null) return simpleName(type);
+        var key = new StringBuilder("(");
+        for (var i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) key.append(',');
+            key.append(simpleName(parameterTypes[i]));
+        }
+        return key.append(')').append(simpleName(type)).toString();
+    }
+
+    private static String simpleName(String type) {
+        return type.substring(type.lastIndexOf('.') + 1);
+    }
+
+    private static Members jdk;
+
+    private static synchronized Members jdk() {
+        if (jdk == null) {
+            var identity = System.getProperty("java.home") + " " + Runtime.version();
+            jdk = open(CacheDirectory.forJdk("signatures"), identity, SignatureIndex::scanJdk);
+        }
+        return jdk;
+    }
+
+    /** The members of each jar on the class path the last time search(_, _, _) was called */
+    private static final Map<Path, Members> jars = new ConcurrentHashMap<>();
+
+    /** The number of jars whose members are in memory */
+    static int jarsInMemory() {
+        return jars.size();
+    }
+
+    private static Members jar(Path jar) {
+        String identity;
+        try {
+            identity = jar + " " + Files.size(jar) + " " + Files.getLastModifiedTime(jar).toMillis();
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't read %s: %s", jar, e.getMessage()));
+            return new Members("", new Member[0]);
+        }
+        var cached = jars.get(jar);
+        if (cached != null && cached.identity.equals(identity)) return cached;
+        var file = CacheDirectory.forJar(jar, "signatures");
+        var members = open(file, identity, (found, strings) -> scanJar(jar, found, strings));
+        jars.put(jar, members);
+        return members;
+    }
+
+    /**
+     * Add members to found. Equal strings are replaced by the first copy in strings, like load(_, _) does with its
+     * string table, so the thousands of members that mention java.lang.String share one copy of it.
+     */
+    private interface Scan {
+        void scan(List<Member> found, Map<String, String> strings) throws IOException;
+    }
+
+    /** Load the members saved in file, or scan them and save them there if it's missing or out of date */
+    private static Members open(Path file, String identity, Scan scan) {
+        var saved = load(file, identity);
+        if (saved != null) return saved;
+        var started = Instant.now();
+        var found = Collections.synchronizedList(new ArrayList<Member>());
+        try {
+            scan.scan(found, new ConcurrentHashMap<>());
+        } catch (IOException | RuntimeException e) {
+            LOG.warning(String.format("Couldn't read members of %s: %s", identity, e.getMessage()));
+            return new Members(identity, new Member[0]);
+        }
+        var members = found.toArray(Member[]::new);
+        Arrays.sort(members, Comparator.comparing(m -> key(m.parameterTypes, m.type)));
+        var scanned = new Members(identity, members);
+        save(file, scanned);
+        LOG.info(
+                String.format(
+                        "Indexed signatures of %d members of %s in %d ms",
+                        members.length, identity, Duration.between(started, Instant.now()).toMillis()));
+        return scanned;
+    }
+
+    private static void scanJdk(List<Member> found, Map<String, String> strings) {
+        ModuleFinder.ofSystem().findAll().parallelStream().forEach(module -> scanModule(module, found, strings));
+    }
+
+    private static void scanModule(ModuleReference module, List<Member> found, Map<String, String> strings) {
+        // Only packages that every module can use
+        var exported = new HashSet<String>();
+        for (var e : module.descriptor().exports()) {
+            if (!e.isQualified()) exported.add(e.source().replace('.', '/'));
+        }
+        try (var reader = module.open();
+                var list = reader.list()) {
+            for (var it = list.iterator(); it.hasNext(); ) {
+                var resource = it.next();
+                var slash = resource.lastIndexOf('/');
+                if (slash == -1 || !exported.contains(resource.substring(0, slash))) continue;
+                if (!isClassFile(resource)) continue;
+                var bytes = reader.read(resource);
+                if (bytes.isEmpty()) continue;
+                try {
+                    var array = new byte[bytes.get().remaining()];
+                    bytes.get().get(array);
+                    addMembers(ClassHeader.of(array), found, strings);
+                } finally {
+                    reader.release(bytes.get());
+                }
+            }
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed indexing module %s: %s", module.descriptor().name(), e.getMessage()));
+        }
+    }
+
+    private static void scanJar(Path jar, List<Member> found, Map<String, String> strings) throws IOException {
+        try (var zip = new ZipFile(jar.toFile())) {
+            for (var entries = zip.entries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                if (entry.getName().startsWith("META-INF/") || !isClassFile(entry.getName())) continue;
+                try (var in = zip.getInputStream(entry)) {
+                    addMembers(ClassHeader.of(in.readAllBytes()), found, strings);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    LOG.warning(String.format("Skipping %s in %s: %s", entry.getName(), jar, e.getMessage()));
+                }
+            }
+        }
+    }
+
+    /** Is resource a class file, other than module-info and package-info? */
+    private static boolean isClassFile(String resource) {
+        return resource.endsWith(".class") && !resource.endsWith("-info.class");
+    }
+
+    private static void addMembers(ClassHeader header, List<Member> found, Map<String, String> strings) {
+        if (!header.isPublic || header.isSynthetic || header.isModule) return;
+        var binaryName = header.className();
+        // Skip anonymous and local classes, whose names are like Outer$1 and Outer$1Local
+        var dollar = binaryName.indexOf('$');
+        while (dollar != -1) {
+            if (dollar + 1 < binaryName.length() && Character.isDigit(binaryName.charAt(dollar + 1))) return;
+            dollar = binaryName.indexOf('$', dollar + 1);
+        }
+        var className = strings.computeIfAbsent(binaryName.replace('$', '.'), s -> s);
+        var simpleName = strings.computeIfAbsent(simpleName(className), s -> s);
+        var members = new ArrayList<Member>();
+        for (var field : header.fields) {
+            var access = header.access(field);
+            if (!isVisible(access)) continue;
+            var type = strings.computeIfAbsent(sourceType(header.descriptor(field), new int[] {0}), s -> s);
+            var name = strings.computeIfAbsent(header.name(field), s -> s);
+            var isStatic = (access & ClassHeader.ACC_STATIC) != 0;
+            members.add(new Member(className, name, FIELD, isStatic, null, type));
+        }
+        for (var method : header.methods) {
+            var access = header.access(method);
+            if (!isVisible(access) || (access & ClassHeader.ACC_BRIDGE) != 0) continue;
+            var name = strings.computeIfAbsent(header.name(method), s -> s);
+            if (name.equals("<clinit>")) continue;
+            var descriptor = header.descriptor(method);
+            var parameterTypes = new ArrayList<String>();
+            var at = new int[] {1};
+            while (descriptor.charAt(at[0]) != ')') {
+                parameterTypes.add(strings.computeIfAbsent(sourceType(descriptor, at), s -> s));
+            }
+            at[0]++;
+            var isStatic = (access & ClassHeader.ACC_STATIC) != 0;
+            var parameters = parameterTypes.toArray(String[]::new);
+            if (name.equals("<init>")) {
+                members.add(new Member(className, simpleName, CONSTRUCTOR, false, parameters, className));
+            } else {
+                var type = strings.computeIfAbsent(sourceType(descriptor, at), s -> s);
+                members.add(new Member(className, name, METHOD, isStatic, parameters, type));
+            }
+        }
+        found.addAll(members);
+    }
+
+    private static boolean isVisible(int access) {
+        if ((access & (ClassHeader.ACC_PUBLIC | ClassHeader.ACC_PROTECTED)) == 0) return false;
+        return (access & ClassHeader.ACC_SYNTHETIC) == 0;
+    }
+
+    /** Read the type in descriptor that starts at at[0], like [Ljava/lang/String; for String[], and advance at[0] */
+    private static String sourceType(String descriptor, int[] at) {
+        var dimensions = 0;
+        while (descriptor.charAt(at[0]) == '[') {
+            dimensions++;
+            at[0]++;
+        }
+        String type;
+        var c = descriptor.charAt(at[0]++);
+        switch (c) {
+            case 'B':
+                type = "byte";
+                break;
+            case 'C':
+                type = "char";
+                break;
+            case 'D':
+                type = "double";
+                break;
+            case 'F':
+                type = "float";
+                break;
+            case 'I':
+                type = "int";
+                break;
+            case 'J':
+                type = "long";
+                break;
+            case 'S':
+                type = "short";
+                break;
+            case 'Z':
+                type = "boolean";
+                break;
+            case 'V':
+                type = "void";
+                break;
+            case 'L':
+                {
+                    var end = descriptor.indexOf(';', at[0]);
+                    type = descriptor.substring(at[0], end).replace('/', '.').replace('$', '.');
+                    at[0] = end + 1;
+                    break;
+                }
+            default:
+                throw new IllegalArgumentException("Bad descriptor " + descriptor);
+        }
+        return type + "[]".repeat(dimensions);
+    }
+
+    // The saved format is a table of every distinct string, followed by each member as indexes into the table,
+    // all written as variable-length ints.
+
+    private static Members load(Path file, String identity) {
+        if (!Files.exists(file)) return null;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return null;
+            if (!in.readUTF().equals(identity)) return null;
+            var strings = new String[in.readInt()];
+            for (var i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            var members = new Member[in.readInt()];
+            for (var i = 0; i < members.length; i++) {
+                var flags = IdentifierIndex.readVarInt(in);
+                var className = strings[IdentifierIndex.readVarInt(in)];
+                var name = strings[IdentifierIndex.readVarInt(in)];
+                var type = strings[IdentifierIndex.readVarInt(in)];
+                String[] parameterTypes = null;
+                var kind = flags >> 1;
+                if (kind != FIELD) {
+                    parameterTypes = new String[IdentifierIndex.readVarInt(in)];
+                    for (var p = 0; p < parameterTypes.length; p++) {
+                        parameterTypes[p] = strings[IdentifierIndex.readVarInt(in)];
+                    }
+                }
+                members[i] = new Member(className, name, kind, (flags & 1) != 0, parameterTypes, type);
+            }
+            return new Members(identity, members);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            LOG.warning(String.format("Ignoring signature index %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    private static void save(Path file, Members index) {
+        var ids = new HashMap<String, Integer>();
+        var strings = new ArrayList<String>();
+        for (var m : index.members) {
+            for (var s : List.of(m.className, m.name, m.type)) {
+                if (ids.putIfAbsent(s, strings.size()) == null) strings.add(s);
+            }
+            if (m.parameterTypes == null) continue;
+            for (var s : m.parameterTypes) {
+                if (ids.putIfAbsent(s, strings.size()) == null) strings.add(s);
+            }
+        }
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(index.identity);
+                out.writeInt(strings.size());
+                for (var s : strings) {
+                    out.writeUTF(s);
+                }
+                out.writeInt(index.members.length);
+                for (var m : index.members) {
+                    IdentifierIndex.writeVarInt(out, m.kind << 1 | (m.isStatic ? 1 : 0));
+                    IdentifierIndex.writeVarInt(out, ids.get(m.className));
+                    IdentifierIndex.writeVarInt(out, ids.get(m.name));
+                    IdentifierIndex.writeVarInt(out, ids.get(m.type));
+                    if (m.parameterTypes == null) continue;
+                    IdentifierIndex.writeVarInt(out, m.parameterTypes.length);
+                    for (var p : m.parameterTypes) {
+                        IdentifierIndex.writeVarInt(out, ids.get(p));
+                    }
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save signature index %s: %s", file, e.getMessage()));
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -9,6 +9,15 @@ import java.util.logging.Logger;
 import javax.tools.*;
 
 class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    /**
+     * If true, source files that javac loads on its own, rather than the files it was asked to compile, have their
+     * method bodies erased. javac still enters and attributes them, but there's much less to attribute.
+     */
+    volatile boolean headersOnly = true;
+
+    /** If set, unchanged sources are read from their cached class files instead */
+    ClassFileCache classFiles;
+
     SourceFileManager() {
         super(createDelegateFileManager());
     }
@@ -26,20 +35,43 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     public Iterable<JavaFileObject> list(
             Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
         if (location == StandardLocation.SOURCE_PATH) {
-            var stream = FileStore.list(packageName).stream().map(this::asJavaFileObject);
+            // Sources that have current class files are read from CLASS_PATH instead
+            var stream =
+                    FileStore.list(packageName).stream().filter(f -> !hasClassFiles(f)).map(this::asJavaFileObject);
             return stream::iterator;
+        } else if (location == StandardLocation.CLASS_PATH
+                && classFiles != null
+                && kinds.contains(JavaFileObject.Kind.CLASS)) {
+            // Cached class files come first, so they shadow stale copies of the same classes in the class path
+            var list = new ArrayList<JavaFileObject>();
+            for (var f : FileStore.list(packageName)) {
+                list.addAll(classFiles.classes(f));
+            }
+            for (var f : super.list(location, packageName, kinds, recurse)) {
+                list.add(f);
+            }
+            return list;
         } else {
             return super.list(location, packageName, kinds, recurse);
         }
     }
 
+    private boolean hasClassFiles(Path file) {
+        return classFiles != null && classFiles.has(file);
+    }
+
     private JavaFileObject asJavaFileObject(Path file) {
-        // TODO erase method bodies of files that are not open
+        if (headersOnly) {
+            return SourceFileObject.headersOnly(file);
+        }
         return new SourceFileObject(file);
     }
 
     @Override
     public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof ClassFileCache.ClassFileObject) {
+            return ((ClassFileCache.ClassFileObject) file).binaryName;
+        }
         if (location == StandardLocation.SOURCE_PATH) {
             var source = (SourceFileObject) file;
             var packageName = FileStore.packageName(source.path);
@@ -68,10 +100,9 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
         if (location == StandardLocation.SOURCE_PATH) {
             var packageName = StringSearch.mostName(className);
             var simpleClassName = StringSearch.lastName(className);
-            for (var f : FileStore.list(packageName)) {
-                if (f.getFileName().toString().equals(simpleClassName + kind.extension)) {
-                    return new SourceFileObject(f);
-                }
+            var file = FileStore.file(packageName, simpleClassName);
+            if (kind == JavaFileObject.Kind.SOURCE && file.isPresent()) {
+                return asJavaFileObject(file.get());
             }
             // Fall through to disk in case we have .jar or .zip files on the source path
         }
@@ -86,8 +117,20 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
         return super.getFileForInput(location, packageName, relativeName);
     }
 
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+            Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        if (location == StandardLocation.CLASS_OUTPUT && classFiles != null && sibling instanceof SourceFileObject) {
+            return classFiles.output(className, ((SourceFileObject) sibling).path);
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
     @Override
     public boolean contains(Location location, FileObject file) throws IOException {
+        if (file instanceof ClassFileCache.ClassFileObject) {
+            return location == StandardLocation.CLASS_PATH;
+        }
         if (location == StandardLocation.SOURCE_PATH) {
             var source = (SourceFileObject) file;
             return FileStore.contains(source.path);
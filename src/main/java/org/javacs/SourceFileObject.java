@@ -15,16 +15,33 @@ public class SourceFileObject implements JavaFileObject {
     final String contents;
     /** if contents is set, the modified time of contents */
     final Instant modified;
+    /** if true, javac sees the text in FileStore with method bodies erased */
+    final boolean headersOnly;
 
     public SourceFileObject(Path path) {
-        this(path, null, Instant.EPOCH);
+        this(path, null, Instant.EPOCH, false);
     }
 
     public SourceFileObject(Path path, String contents, Instant modified) {
+        this(path, contents, modified, false);
+    }
+
+    private SourceFileObject(Path path, String contents, Instant modified, boolean headersOnly) {
         if (!FileStore.isJavaFile(path)) throw new RuntimeException(path + " is not a java source");
         this.path = path;
         this.contents = contents;
         this.modified = modified;
+        this.headersOnly = headersOnly;
+    }
+
+    /** A view of path with method bodies erased, for files that javac only needs the signatures of */
+    static SourceFileObject headersOnly(Path path) {
+        return new SourceFileObject(path, null, Instant.EPOCH, true);
+    }
+
+    /** Does javac see the current text of path in FileStore, rather than text we were given, or erased headers? */
+    boolean readsFileStore() {
+        return contents == null && !headersOnly;
     }
 
     @Override
@@ -85,6 +102,9 @@ public class SourceFileObject implements JavaFileObject {
             var bytes = contents.getBytes();
             return new ByteArrayInputStream(bytes);
         }
+        if (headersOnly) {
+            return new ByteArrayInputStream(Parser.headers(path).getBytes());
+        }
         return FileStore.inputStream(path);
     }
 
@@ -98,6 +118,9 @@ public class SourceFileObject implements JavaFileObject {
         if (contents != null) {
             return new StringReader(contents);
         }
+        if (headersOnly) {
+            return new StringReader(Parser.headers(path));
+        }
         return FileStore.bufferedReader(path);
     }
 
@@ -106,7 +129,10 @@ public class SourceFileObject implements JavaFileObject {
         if (contents != null) {
             return contents;
         }
-        return FileStore.contents(path);
+        if (headersOnly) {
+            return Parser.headers(path);
+        }
+        return FileStore.charContent(path);
     }
 
     @Override
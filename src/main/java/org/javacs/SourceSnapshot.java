@@ -0,0 +1,85 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * SourceSnapshot remembers the (modified, size, package) of every .java file in a workspace root between launches. On a
+ * warm start, FileStore only has to re-read the package declaration of files whose metadata has changed.
+ */
+class SourceSnapshot {
+    /** Change this whenever the format changes, so old snapshots are ignored */
+    private static final int VERSION = 1;
+
+    static class Entry {
+        final Instant modified;
+        final long size;
+        final String packageName;
+
+        Entry(Instant modified, long size, String packageName) {
+            this.modified = modified;
+            this.size = size;
+            this.packageName = packageName;
+        }
+
+        boolean matches(Instant modified, long size) {
+            return this.modified.equals(modified) && this.size == size;
+        }
+    }
+
+    private static Path file(Path workspaceRoot) {
+        return CacheDirectory.forWorkspace(workspaceRoot, "sources");
+    }
+
+    /** Load the snapshot of workspaceRoot, or an empty map if there isn't one */
+    static Map<Path, Entry> load(Path workspaceRoot) {
+        var file = file(workspaceRoot);
+        if (!Files.exists(file)) return Map.of();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return Map.of();
+            if (!in.readUTF().equals(workspaceRoot.toString())) return Map.of();
+            var count = in.readInt();
+            var entries = new HashMap<Path, Entry>(count * 2);
+            for (var i = 0; i < count; i++) {
+                var path = workspaceRoot.resolve(in.readUTF());
+                var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                var size = in.readLong();
+                var packageName = in.readUTF();
+                entries.put(path, new Entry(modified, size, packageName));
+            }
+            return entries;
+        } catch (IOException e) {
+            LOG.warning(String.format("Ignoring snapshot %s: %s", file, e.getMessage()));
+            return Map.of();
+        }
+    }
+
+    static void save(Path workspaceRoot, Map<Path, Entry> entries) {
+        var file = file(workspaceRoot);
+        try {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(workspaceRoot.toString());
+                out.writeInt(entries.size());
+                for (var e : entries.entrySet()) {
+                    var entry = e.getValue();
+                    out.writeUTF(workspaceRoot.relativize(e.getKey()).toString());
+                    out.writeLong(entry.modified.getEpochSecond());
+                    out.writeInt(entry.modified.getNano());
+                    out.writeLong(entry.size);
+                    out.writeUTF(entry.packageName);
+                }
+            }
+            CacheDirectory.writeAtomically(file, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warning(String.format("Couldn't save snapshot %s: %s", file, e.getMessage()));
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
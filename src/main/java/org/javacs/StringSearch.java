@@ -7,8 +7,10 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import javax.lang.model.element.TypeElement;
 
 // Translated from https://golang.org/src/strings/search.go
@@ -196,7 +198,26 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    // One buffer per thread, because searches run concurrently on worker threads
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
+
+    /**
+     * Read file into this thread's search buffer, or memory-map it if it doesn't fit. The result is only valid until the
+     * next call to read(_) on the same thread.
+     */
+    private static ByteBuffer read(FileChannel channel) throws IOException {
+        var size = channel.size();
+        var buffer = SEARCH_BUFFER.get();
+        if (size > buffer.capacity()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        }
+        buffer.clear();
+        buffer.limit((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+        buffer.flip();
+        return buffer;
+    }
 
     // TODO cache the progress made by searching shorter queries
     static boolean containsWordMatching(Path java, String query) {
@@ -205,13 +226,7 @@ public class StringSearch {
             return matchesTitleCase(text, query);
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = StandardCharsets.UTF_8.decode(SEARCH_BUFFER);
+            var chars = StandardCharsets.UTF_8.decode(read(channel));
             return matchesTitleCase(chars, query);
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
@@ -222,19 +237,16 @@ public class StringSearch {
     }
 
     static boolean containsWord(Path java, String query) {
-        var search = new StringSearch(query);
+        return new StringSearch(query).containsWord(java);
+    }
+
+    private boolean containsWord(Path java) {
         if (FileStore.activeDocuments().contains(java)) {
             var text = FileStore.contents(java).getBytes();
-            return search.nextWord(text) != -1;
+            return nextWord(text) != -1;
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
+            return nextWord(read(channel)) != -1;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -250,13 +262,7 @@ public class StringSearch {
             return search.next(text) != -1;
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
+            return search.next(read(channel)) != -1;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -265,6 +271,24 @@ public class StringSearch {
         }
     }
 
+    /** Files are tested in parallel in blocks of this size, and the search stops after the block that reaches limit */
+    private static final int FILES_PER_BLOCK = 256;
+
+    /**
+     * The first limit files that pass test, in the order of files. Files are tested in parallel, so test must be
+     * thread-safe. Blocks of files are tested one after another, so a search with a small limit stops early.
+     */
+    static List<Path> searchFiles(List<Path> files, Predicate<Path> test, int limit) {
+        var found = new ArrayList<Path>();
+        for (var from = 0; from < files.size() && found.size() < limit; from += FILES_PER_BLOCK) {
+            var block = files.subList(from, Math.min(files.size(), from + FILES_PER_BLOCK));
+            // Parallel streams keep the order of the list, even though elements are tested out of order
+            var passed = block.parallelStream().filter(test).collect(Collectors.toList());
+            found.addAll(passed.subList(0, Math.min(passed.size(), limit - found.size())));
+        }
+        return found;
+    }
+
     /**
      * Check if `candidate` contains all the characters of `find`, in-order, case-insensitive. Matches can be
      * discontinuous if the letters of `find` match the first letters of words in `candidate` For example, fb matches
@@ -315,7 +339,7 @@ public class StringSearch {
         return offset;
     }
 
-    private static boolean isWordChar(char c) {
+    static boolean isWordChar(char c) {
         return Character.isAlphabetic(c) || Character.isDigit(c) || c == '_' || c == '$';
     }
 
@@ -330,24 +354,20 @@ public class StringSearch {
         }
     }
 
-    private static Cache<String, Boolean> cacheContainsClass = new Cache<>();
+    private static final Cache<String, Boolean> cacheContainsClass = new Cache<>("containsClass", 10_000);
 
     private static boolean containsClass(Path file, String simpleName) {
-        if (cacheContainsClass.needs(file, simpleName)) {
-            cacheContainsClass.load(file, simpleName, containsString(file, "class " + simpleName));
-            // TODO verify this by actually parsing the file
-        }
-        return cacheContainsClass.get(file, simpleName);
+        // TODO verify this by actually parsing the file
+        var query = "class " + simpleName;
+        return cacheContainsClass.computeIfAbsent(file, simpleName, () -> containsString(file, query));
     }
 
-    private static Cache<String, Boolean> cacheContainsInterface = new Cache<>();
+    private static final Cache<String, Boolean> cacheContainsInterface = new Cache<>("containsInterface", 10_000);
 
     private static boolean containsInterface(Path file, String simpleName) {
-        if (cacheContainsInterface.needs(file, simpleName)) {
-            cacheContainsInterface.load(file, simpleName, containsString(file, "interface " + simpleName));
-            // TODO verify this by actually parsing the file
-        }
-        return cacheContainsInterface.get(file, simpleName);
+        // TODO verify this by actually parsing the file
+        var query = "interface " + simpleName;
+        return cacheContainsInterface.computeIfAbsent(file, simpleName, () -> containsString(file, query));
     }
 
     // TODO this doesn't work for inner classes, eliminate
@@ -369,13 +389,14 @@ public class StringSearch {
         return parts[parts.length - 1];
     }
 
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^package +(.*);");
+    private static final Pattern START_OF_CLASS = Pattern.compile("^[\\w ]*class +\\w+");
+
     static String packageName(Path file) {
-        var packagePattern = Pattern.compile("^package +(.*);");
-        var startOfClass = Pattern.compile("^[\\w ]*class +\\w+");
         try (var lines = FileStore.lines(file)) {
             for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                if (startOfClass.matcher(line).find()) return "";
-                var matchPackage = packagePattern.matcher(line);
+                if (START_OF_CLASS.matcher(line).find()) return "";
+                var matchPackage = PACKAGE_PATTERN.matcher(line);
                 if (matchPackage.matches()) {
                     var id = matchPackage.group(1);
                     return id;
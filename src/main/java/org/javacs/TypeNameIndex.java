@@ -0,0 +1,303 @@
+package org.javacs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * TypeNameIndex holds a large, fixed set of qualified type names, like every class in the JDK and the classpath, in a
+ * few packed arrays, and answers the queries completion and quick fixes need in O(log n) plus the size of the result:
+ * simple names that start with a prefix, simple names that match a query by camel humps (HSM for HashSetMultimap), and
+ * qualified names that start with a prefix.
+ *
+ * <p>Types are numbered in order of (package, simple name), so each package is a contiguous range. Simple names are
+ * stored as UTF-8 in one byte array, and two permutations sort them by simple name and by their initials.
+ */
+class TypeNameIndex {
+    /** Every package, sorted */
+    private final String[] packages;
+
+    /** Types packageStart[p] until packageStart[p + 1] belong to packages[p] */
+    private final int[] packageStart;
+
+    /** The simple name of type i is names[nameStart[i]] until names[nameStart[i + 1]] */
+    private final byte[] names;
+
+    private final int[] nameStart;
+
+    /** Type ids, sorted by simple name */
+    private final int[] bySimpleName;
+
+    /** Type ids, sorted by the initials of their simple name, like HSM for HashSetMultimap */
+    private final int[] byInitials;
+
+    TypeNameIndex(Collection<String> qualifiedNames) {
+        // While building, each simple name is represented by its UTF-8 bytes as a Latin-1 string,
+        // so String order is the same as the unsigned byte order that queries use.
+        var byPackage = new HashMap<String, List<String>>();
+        for (var name : qualifiedNames) {
+            byPackage.computeIfAbsent(packageName(name), __ -> new ArrayList<>()).add(latin1(simpleName(name)));
+        }
+        this.packages = byPackage.keySet().toArray(String[]::new);
+        Arrays.sort(packages);
+        // Sort by package, then simple name
+        var keys = new ArrayList<String>();
+        this.packageStart = new int[packages.length + 1];
+        for (var p = 0; p < packages.length; p++) {
+            packageStart[p] = keys.size();
+            var simples = byPackage.get(packages[p]);
+            simples.sort(null);
+            for (var simple : simples) {
+                if (keys.size() == packageStart[p] || !keys.get(keys.size() - 1).equals(simple)) keys.add(simple);
+            }
+        }
+        var count = keys.size();
+        packageStart[packages.length] = count;
+        var bytes = 0;
+        for (var key : keys) {
+            bytes += key.length();
+        }
+        this.names = new byte[bytes];
+        this.nameStart = new int[count + 1];
+        var at = 0;
+        for (var id = 0; id < count; id++) {
+            var utf8 = keys.get(id).getBytes(StandardCharsets.ISO_8859_1);
+            nameStart[id] = at;
+            System.arraycopy(utf8, 0, names, at, utf8.length);
+            at += utf8.length;
+        }
+        nameStart[count] = at;
+        // Sort the distinct simple names, then sort ids by the rank of their simple name
+        var all = keys.toArray(String[]::new);
+        Arrays.sort(all);
+        var distinctCount = 0;
+        for (var key : all) {
+            if (distinctCount == 0 || !all[distinctCount - 1].equals(key)) all[distinctCount++] = key;
+        }
+        var distinct = Arrays.copyOf(all, distinctCount);
+        this.bySimpleName = sortByRank(keys, distinct);
+        // Sort the distinct simple names by initials, then name, using "initials \0 name" as the key
+        var byInitials = new String[distinct.length];
+        for (var i = 0; i < distinct.length; i++) {
+            var utf8 = distinct[i].getBytes(StandardCharsets.ISO_8859_1);
+            byInitials[i] = new String(initials(utf8, 0, utf8.length), StandardCharsets.ISO_8859_1) + "\0" + distinct[i];
+        }
+        Arrays.sort(byInitials);
+        for (var i = 0; i < byInitials.length; i++) {
+            byInitials[i] = byInitials[i].substring(byInitials[i].indexOf('\0') + 1);
+        }
+        this.byInitials = sortByRank(keys, byInitials);
+    }
+
+    private static String latin1(String name) {
+        return new String(name.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    /** Type ids, sorted by the position of their simple name in order */
+    private static int[] sortByRank(List<String> keys, String[] order) {
+        var rank = new HashMap<String, Integer>();
+        for (var i = 0; i < order.length; i++) {
+            rank.put(order[i], i);
+        }
+        var sorted = new long[keys.size()];
+        for (var id = 0; id < sorted.length; id++) {
+            sorted[id] = (long) rank.get(keys.get(id)) << 32 | id;
+        }
+        Arrays.sort(sorted);
+        var ids = new int[sorted.length];
+        for (var i = 0; i < ids.length; i++) {
+            ids[i] = (int) sorted[i];
+        }
+        return ids;
+    }
+
+    int size() {
+        return nameStart.length - 1;
+    }
+
+    /**
+     * Qualified names of types whose simple name starts with partialName, followed by types that match partialName by
+     * camel humps, stopping after limit names
+     */
+    List<String> matching(String partialName, int limit) {
+        var found = new ArrayList<String>();
+        var query = partialName.getBytes(StandardCharsets.UTF_8);
+        var seen = new HashSet<Integer>();
+        for (var i = lowerBound(bySimpleName, query, false); i < bySimpleName.length; i++) {
+            var id = bySimpleName[i];
+            if (!nameStartsWith(id, query)) break;
+            if (found.size() >= limit) return found;
+            found.add(qualifiedName(id));
+            seen.add(id);
+        }
+        var initials = initials(query, 0, query.length);
+        if (initials.length < 2) return found;
+        for (var i = lowerBound(byInitials, initials, true); i < byInitials.length; i++) {
+            var id = byInitials[i];
+            if (!initialsStartWith(id, initials)) break;
+            if (seen.contains(id) || !matchesCamelHumps(names, nameStart[id], nameStart[id + 1], query)) continue;
+            if (found.size() >= limit) return found;
+            found.add(qualifiedName(id));
+        }
+        return found;
+    }
+
+    /** Qualified names of types whose simple name is simpleName */
+    List<String> named(String simpleName) {
+        var found = new ArrayList<String>();
+        var query = simpleName.getBytes(StandardCharsets.UTF_8);
+        for (var i = lowerBound(bySimpleName, query, false); i < bySimpleName.length; i++) {
+            var id = bySimpleName[i];
+            if (compareName(id, query) != 0) break;
+            found.add(qualifiedName(id));
+        }
+        return found;
+    }
+
+    /** Qualified names of types that start with prefix, grouped by package, computed as they're iterated */
+    Iterable<String> startingWith(String prefix) {
+        var ranges = new ArrayList<int[]>();
+        // Packages that start with prefix, like java.util and java.util.concurrent for java.u
+        var p = Arrays.binarySearch(packages, prefix);
+        if (p < 0) p = -p - 1;
+        for (; p < packages.length && packages[p].startsWith(prefix); p++) {
+            if (!packages[p].isEmpty()) ranges.add(new int[] {packageStart[p], packageStart[p + 1]});
+        }
+        // Types in the package named by prefix, like java.util.List for java.util.L
+        var dot = prefix.lastIndexOf('.');
+        var inPackage = Arrays.binarySearch(packages, dot == -1 ? "" : prefix.substring(0, dot));
+        if (inPackage >= 0) {
+            var partial = prefix.substring(dot + 1).getBytes(StandardCharsets.UTF_8);
+            // Within a package, types are sorted by simple name
+            int start = packageStart[inPackage], end = packageStart[inPackage + 1];
+            while (start < end) {
+                var mid = (start + end) >>> 1;
+                if (compareName(mid, partial) < 0) start = mid + 1;
+                else end = mid;
+            }
+            var stop = start;
+            while (stop < packageStart[inPackage + 1] && nameStartsWith(stop, partial)) stop++;
+            ranges.add(new int[] {start, stop});
+        }
+        return () ->
+                new Iterator<String>() {
+                    int range = 0, next = ranges.isEmpty() ? 0 : ranges.get(0)[0];
+
+                    @Override
+                    public boolean hasNext() {
+                        while (range < ranges.size() && next >= ranges.get(range)[1]) {
+                            range++;
+                            if (range < ranges.size()) next = ranges.get(range)[0];
+                        }
+                        return range < ranges.size();
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return qualifiedName(next++);
+                    }
+                };
+    }
+
+    private String qualifiedName(int id) {
+        // Every package has at least one type, so packageStart is strictly increasing
+        var p = Arrays.binarySearch(packageStart, id);
+        if (p < 0) p = -p - 2;
+        var simple = new String(names, nameStart[id], nameStart[id + 1] - nameStart[id], StandardCharsets.UTF_8);
+        if (packages[p].isEmpty()) return simple;
+        return packages[p] + "." + simple;
+    }
+
+    /** The first position in ids whose name (or initials) is >= query */
+    private int lowerBound(int[] ids, byte[] query, boolean initials) {
+        int low = 0, high = ids.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            var compare = initials ? compareInitials(ids[mid], query) : compareName(ids[mid], query);
+            if (compare < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private int compareName(int id, byte[] query) {
+        return Arrays.compareUnsigned(names, nameStart[id], nameStart[id + 1], query, 0, query.length);
+    }
+
+    private boolean nameStartsWith(int id, byte[] query) {
+        var start = nameStart[id];
+        if (nameStart[id + 1] - start < query.length) return false;
+        return Arrays.equals(names, start, start + query.length, query, 0, query.length);
+    }
+
+    private int compareInitials(int id, byte[] query) {
+        var initials = initials(names, nameStart[id], nameStart[id + 1]);
+        return Arrays.compareUnsigned(initials, query);
+    }
+
+    private boolean initialsStartWith(int id, byte[] query) {
+        var initials = initials(names, nameStart[id], nameStart[id + 1]);
+        return initials.length >= query.length && Arrays.equals(initials, 0, query.length, query, 0, query.length);
+    }
+
+    /** The first character of name, and every upper-case ASCII letter after it */
+    private static byte[] initials(byte[] name, int start, int end) {
+        if (start == end) return new byte[0];
+        var count = 1;
+        for (var i = start + 1; i < end; i++) {
+            if (isUpperCase(name[i])) count++;
+        }
+        var initials = new byte[count];
+        initials[0] = name[start];
+        var n = 1;
+        for (var i = start + 1; i < end; i++) {
+            if (isUpperCase(name[i])) initials[n++] = name[i];
+        }
+        return initials;
+    }
+
+    /** Does simpleName start with partialName, or match it by camel humps? Used for names that aren't in an index. */
+    static boolean matches(String simpleName, String partialName) {
+        if (simpleName.startsWith(partialName)) return true;
+        var name = simpleName.getBytes(StandardCharsets.UTF_8);
+        return matchesCamelHumps(name, 0, name.length, partialName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Does name[start, end) match query by camel humps? Each part of query that starts with an upper-case letter must
+     * be a prefix of the corresponding hump of the name, so HSM, HaSM and HSetMu all match HashSetMultimap.
+     */
+    private static boolean matchesCamelHumps(byte[] name, int start, int end, byte[] query) {
+        if (query.length == 0 || !isUpperCase(query[0])) return false;
+        var i = start;
+        var q = 0;
+        while (q < query.length) {
+            // Match the hump of query that starts at q against the hump of name that starts at i
+            if (i >= end || name[i] != query[q]) return false;
+            i++;
+            q++;
+            while (q < query.length && !isUpperCase(query[q])) {
+                if (i >= end || name[i] != query[q]) return false;
+                i++;
+                q++;
+            }
+            // Skip the rest of this hump in name
+            while (i < end && !isUpperCase(name[i])) i++;
+        }
+        return true;
+    }
+
+    private static boolean isUpperCase(byte b) {
+        return b >= 'A' && b <= 'Z';
+    }
+
+    private static String packageName(String qualifiedName) {
+        var dot = qualifiedName.lastIndexOf('.');
+        if (dot == -1) return "";
+        return qualifiedName.substring(0, dot);
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,89 @@
+package org.javacs;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * WorkspaceTypeIndex answers the same queries as TypeNameIndex for the classes declared in the workspace, which change
+ * as files are created and deleted, so it's kept in two sorted sets instead of packed arrays. FileStore adds and
+ * removes a class whenever the file named after it is added or removed.
+ *
+ * <p>Each entry is a key that sorts the way a query needs, then the qualified name, separated by \0. By simple name,
+ * java.util.List is "List\0java.util.List"; by initials, com.example.HashSetMultimap is
+ * "HSM\0HashSetMultimap\0com.example.HashSetMultimap".
+ */
+class WorkspaceTypeIndex {
+    private final ConcurrentSkipListSet<String> bySimpleName = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<String> byInitials = new ConcurrentSkipListSet<>();
+
+    void add(String qualifiedName) {
+        var simpleName = simpleName(qualifiedName);
+        bySimpleName.add(simpleName + "\0" + qualifiedName);
+        byInitials.add(initials(simpleName) + "\0" + simpleName + "\0" + qualifiedName);
+    }
+
+    void remove(String qualifiedName) {
+        var simpleName = simpleName(qualifiedName);
+        bySimpleName.remove(simpleName + "\0" + qualifiedName);
+        byInitials.remove(initials(simpleName) + "\0" + simpleName + "\0" + qualifiedName);
+    }
+
+    int size() {
+        return bySimpleName.size();
+    }
+
+    /**
+     * Qualified names of types whose simple name starts with partialName, followed by types that match partialName by
+     * camel humps, stopping after limit names
+     */
+    List<String> matching(String partialName, int limit) {
+        var found = new ArrayList<String>();
+        for (var key : bySimpleName.tailSet(partialName)) {
+            if (!key.startsWith(partialName)) break;
+            if (found.size() >= limit) return found;
+            found.add(qualifiedName(key));
+        }
+        var initials = initials(partialName);
+        if (initials.length() < 2) return found;
+        for (var key : byInitials.tailSet(initials)) {
+            if (!key.startsWith(initials)) break;
+            var simpleName = key.substring(key.indexOf('\0') + 1, key.lastIndexOf('\0'));
+            // Names that start with partialName were found above
+            if (simpleName.startsWith(partialName) || !TypeNameIndex.matches(simpleName, partialName)) continue;
+            if (found.size() >= limit) return found;
+            found.add(qualifiedName(key));
+        }
+        return found;
+    }
+
+    /** Qualified names of types whose simple name is simpleName */
+    List<String> named(String simpleName) {
+        var found = new ArrayList<String>();
+        var prefix = simpleName + "\0";
+        for (var key : bySimpleName.tailSet(prefix)) {
+            if (!key.startsWith(prefix)) break;
+            found.add(qualifiedName(key));
+        }
+        return found;
+    }
+
+    private static String qualifiedName(String key) {
+        return key.substring(key.lastIndexOf('\0') + 1);
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    /** The first character of name, and every upper-case ASCII letter after it, like TypeNameIndex */
+    private static String initials(String name) {
+        if (name.isEmpty()) return "";
+        var initials = new StringBuilder();
+        initials.append(name.charAt(0));
+        for (var i = 1; i < name.length(); i++) {
+            var c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') initials.append(c);
+        }
+        return initials.toString();
+    }
+}
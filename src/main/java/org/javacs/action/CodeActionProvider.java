@@ -13,6 +13,7 @@ import java.util.regex.Pattern;
 import javax.lang.model.element.*;
 import org.javacs.*;
 import org.javacs.FindTypeDeclarationAt;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.*;
 import org.javacs.rewrite.*;
 
@@ -37,8 +38,8 @@ public class CodeActionProvider {
         try (var task = compiler.compile(file)) {
             var elapsed = Duration.between(started, Instant.now()).toMillis();
             LOG.info(String.format("...compiled in %d ms", elapsed));
-            var lines = task.root().getLineMap();
-            var cursor = lines.getPosition(params.range.start.line + 1, params.range.start.character + 1);
+            var start = params.range.start;
+            var cursor = PositionHelper.offset(task.root(), start.line + 1, start.character + 1);
             rewrites.putAll(overrideInheritedMethods(task, file, cursor));
         }
         var actions = new ArrayList<CodeAction>();
@@ -167,12 +168,11 @@ public class CodeActionProvider {
             case "compiler.err.cant.resolve.location":
                 var simpleName = extractRange(task, d.range);
                 var allImports = new ArrayList<CodeAction>();
-                for (var qualifiedName : compiler.publicTopLevelTypes()) {
-                    if (qualifiedName.endsWith("." + simpleName)) {
-                        var title = "Import '" + qualifiedName + "'";
-                        var addImport = new AddImport(file, qualifiedName);
-                        allImports.addAll(createQuickFix(title, addImport));
-                    }
+                for (var qualifiedName : compiler.findTypesNamed(simpleName.toString())) {
+                    if (!qualifiedName.contains(".")) continue;
+                    var title = "Import '" + qualifiedName + "'";
+                    var addImport = new AddImport(file, qualifiedName);
+                    allImports.addAll(createQuickFix(title, addImport));
                 }
                 return allImports;
             case "compiler.err.var.not.initialized.in.default.constructor":
@@ -193,8 +193,7 @@ public class CodeActionProvider {
     }
 
     private int findPosition(CompileTask task, Position position) {
-        var lines = task.root().getLineMap();
-        return (int) lines.getPosition(position.line + 1, position.character + 1);
+        return (int) PositionHelper.offset(task.root(), position.line + 1, position.character + 1);
     }
 
     private String findClassNeedingConstructor(CompileTask task, Range range) {
@@ -210,7 +209,7 @@ public class CodeActionProvider {
     }
 
     private ClassTree findClassTree(CompileTask task, Range range) {
-        var position = task.root().getLineMap().getPosition(range.start.line + 1, range.start.character + 1);
+        var position = PositionHelper.offset(task.root(), range.start.line + 1, range.start.character + 1);
         return new FindTypeDeclarationAt(task.task).scan(task.root(), position);
     }
 
@@ -243,7 +242,7 @@ public class CodeActionProvider {
 
     private MethodPtr findMethod(CompileTask task, Range range) {
         var trees = Trees.instance(task.task);
-        var position = task.root().getLineMap().getPosition(range.start.line + 1, range.start.character + 1);
+        var position = PositionHelper.offset(task.root(), range.start.line + 1, range.start.character + 1);
         var tree = new FindMethodDeclarationAt(task.task).scan(task.root(), position);
         var path = trees.getPath(task.root(), tree);
         var method = (ExecutableElement) trees.getElement(path);
@@ -298,8 +297,8 @@ public class CodeActionProvider {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        var start = (int) task.root().getLineMap().getPosition(range.start.line + 1, range.start.character + 1);
-        var end = (int) task.root().getLineMap().getPosition(range.end.line + 1, range.end.character + 1);
+        var start = (int) PositionHelper.offset(task.root(), range.start.line + 1, range.start.character + 1);
+        var end = (int) PositionHelper.offset(task.root(), range.end.line + 1, range.end.character + 1);
         return contents.subSequence(start, end);
     }
 
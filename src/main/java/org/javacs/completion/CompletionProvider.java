@@ -32,12 +32,14 @@ import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeVariable;
+import org.javacs.AnalysisDepth;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.CompletionData;
 import org.javacs.FileStore;
 import org.javacs.JsonHelper;
 import org.javacs.ParseTask;
+import org.javacs.PositionHelper;
 import org.javacs.SourceFileObject;
 import org.javacs.StringSearch;
 import org.javacs.lsp.Command;
@@ -124,9 +126,9 @@ public class CompletionProvider {
         LOG.info("Complete at " + file.getFileName() + "(" + line + "," + column + ")...");
         var started = Instant.now();
         var task = compiler.parse(file);
-        var cursor = task.root.getLineMap().getPosition(line, column);
+        var cursor = PositionHelper.offset(task.root, line, column);
         var contents = new PruneMethodBodies(task.task).scan(task.root, cursor);
-        var endOfLine = endOfLine(contents, (int) cursor);
+        var endOfLine = endOfLine(task.root, contents, cursor);
         contents.insert(endOfLine, ';');
         var list = compileAndComplete(file, contents.toString(), cursor);
         addTopLevelSnippets(task, list);
@@ -134,13 +136,18 @@ public class CompletionProvider {
         return list;
     }
 
-    private int endOfLine(CharSequence contents, int cursor) {
-        while (cursor < contents.length()) {
-            var c = contents.charAt(cursor);
-            if (c == '\r' || c == '\n') break;
-            cursor++;
+    /** Find the end of the line containing cursor using the line map, which pruning doesn't change */
+    private int endOfLine(CompilationUnitTree root, CharSequence contents, long cursor) {
+        var lines = root.getLineMap();
+        var line = lines.getLineNumber(cursor);
+        if (line == lines.getLineNumber(contents.length())) {
+            return contents.length();
         }
-        return cursor;
+        var end = (int) lines.getStartPosition(line + 1) - 1;
+        if (end > 0 && contents.charAt(end) == '\n' && contents.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
     }
 
     private CompletionList compileAndComplete(Path file, String contents, long cursor) {
@@ -148,7 +155,7 @@ public class CompletionProvider {
         var source = new SourceFileObject(file, contents, Instant.now());
         var partial = partialIdentifier(contents, (int) cursor);
         var endsWithParen = endsWithParen(contents, (int) cursor);
-        try (var task = compiler.compile(List.of(source))) {
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, List.of(source))) {
             LOG.info("...compiled in " + Duration.between(started, Instant.now()).toMillis() + "ms");
             var path = new FindCompletionsAt(task.task).scan(task.root(), cursor);
             switch (path.getLeaf().getKind()) {
@@ -341,8 +348,7 @@ public class CompletionProvider {
             list.items.add(classItem(className));
             uniques.add(className);
         }
-        for (var className : compiler.publicTopLevelTypes()) {
-            if (!StringSearch.matchesPartialName(simpleName(className), partial)) continue;
+        for (var className : compiler.findTypesMatching(partial, MAX_COMPLETION_ITEMS + 1)) {
             if (uniques.contains(className)) continue;
             if (list.items.size() > MAX_COMPLETION_ITEMS) {
                 list.isIncomplete = true;
@@ -549,24 +555,22 @@ public class CompletionProvider {
         LOG.info("...complete import");
         var names = new HashSet<String>();
         var list = new CompletionList();
-        for (var className : compiler.publicTopLevelTypes()) {
-            if (className.startsWith(path)) {
-                var start = path.lastIndexOf('.');
-                var end = className.indexOf('.', path.length());
-                if (end == -1) end = className.length();
-                var segment = className.substring(start + 1, end);
-                if (names.contains(segment)) continue;
-                names.add(segment);
-                var isClass = end == path.length();
-                if (isClass) {
-                    list.items.add(classItem(className));
-                } else {
-                    list.items.add(packageItem(segment));
-                }
-                if (list.items.size() > MAX_COMPLETION_ITEMS) {
-                    list.isIncomplete = true;
-                    return list;
-                }
+        for (var className : compiler.findTypesStartingWith(path)) {
+            var start = path.lastIndexOf('.');
+            var end = className.indexOf('.', path.length());
+            if (end == -1) end = className.length();
+            var segment = className.substring(start + 1, end);
+            if (names.contains(segment)) continue;
+            names.add(segment);
+            var isClass = end == path.length();
+            if (isClass) {
+                list.items.add(classItem(className));
+            } else {
+                list.items.add(packageItem(segment));
+            }
+            if (list.items.size() > MAX_COMPLETION_ITEMS) {
+                list.isIncomplete = true;
+                return list;
             }
         }
         return list;
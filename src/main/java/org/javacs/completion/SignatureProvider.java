@@ -20,10 +20,12 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.*;
+import org.javacs.AnalysisDepth;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
 import org.javacs.MarkdownHelper;
+import org.javacs.PositionHelper;
 import org.javacs.hover.ShortTypePrinter;
 import org.javacs.lsp.ParameterInformation;
 import org.javacs.lsp.SignatureHelp;
@@ -41,8 +43,8 @@ public class SignatureProvider {
 
     public SignatureHelp signatureHelp(Path file, int line, int column) {
         // TODO prune
-        try (var task = compiler.compile(file)) {
-            var cursor = task.root().getLineMap().getPosition(line, column);
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, file)) {
+            var cursor = PositionHelper.offset(task.root(), line, column);
             var path = new FindInvocationAt(task.task).scan(task.root(), cursor);
             if (path == null) return NOT_SUPPORTED;
             if (path.getLeaf() instanceof MethodInvocationTree) {
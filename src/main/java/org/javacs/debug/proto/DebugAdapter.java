@@ -10,79 +10,13 @@ import java.util.concurrent.*;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.javacs.lsp.BaseProtocolReader;
 
 public class DebugAdapter {
     private static final Gson gson = new Gson();
 
-    private static String readHeader(InputStream client) {
-        var line = new StringBuilder();
-        for (var next = read(client); true; next = read(client)) {
-            if (next == '\r') {
-                var last = read(client);
-                assert last == '\n';
-                break;
-            }
-            line.append(next);
-        }
-        return line.toString();
-    }
-
-    private static int parseHeader(String header) {
-        var contentLength = "Content-Length: ";
-        if (header.startsWith(contentLength)) {
-            var tail = header.substring(contentLength.length());
-            var length = Integer.parseInt(tail);
-            return length;
-        }
-        return -1;
-    }
-
-    private static char read(InputStream client) {
-        try {
-            var c = client.read();
-            if (c == -1) {
-                LOG.warning("Stream from client has been closed, throwing kill exception...");
-                throw new EndOfStream(); // TODO this is showing an error?
-            }
-            return (char) c;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static String readLength(InputStream client, int byteLength) {
-        // Eat whitespace
-        // Have observed problems with extra \r\n sequences from VSCode
-        var next = read(client);
-        while (Character.isWhitespace(next)) {
-            next = read(client);
-        }
-        // Append next
-        var result = new StringBuilder();
-        var i = 0;
-        while (true) {
-            result.append(next);
-            i++;
-            if (i == byteLength) break;
-            next = read(client);
-        }
-        return result.toString();
-    }
-
-    static String nextToken(InputStream client) {
-        var contentLength = -1;
-        while (true) {
-            var line = readHeader(client);
-            // If header is empty, next line is the start of the message
-            if (line.isEmpty()) return readLength(client, contentLength);
-            // If header contains length, save it
-            var maybeLength = parseHeader(line);
-            if (maybeLength != -1) contentLength = maybeLength;
-        }
-    }
-
-    static JsonObject parseMessage(String token) {
-        return gson.fromJson(token, JsonObject.class);
+    static JsonObject parseMessage(Reader body) {
+        return gson.fromJson(body, JsonObject.class);
     }
 
     static String toJson(Object message) {
@@ -110,7 +44,7 @@ public class DebugAdapter {
     private static final JsonObject END_OF_STREAM = new JsonObject();
 
     private final OutputStream send;
-    private final InputStream receive;
+    private final BaseProtocolReader framing;
     private final DebugClient client;
     private final DebugServer server;
     private ArrayBlockingQueue<JsonObject> pending = new ArrayBlockingQueue<>(10);
@@ -199,8 +133,7 @@ public class DebugAdapter {
 
             while (true) {
                 try {
-                    var token = nextToken(receive);
-                    var json = parseMessage(token);
+                    var json = parseMessage(framing.nextReader());
                     var msg = gson.fromJson(json, ProtocolMessage.class);
                     switch (msg.type) {
                         case "request":
@@ -216,7 +149,7 @@ public class DebugAdapter {
                         default:
                             throw new RuntimeException("Unknown message type " + msg.type);
                     }
-                } catch (EndOfStream __) {
+                } catch (BaseProtocolReader.EndOfStream __) {
                     if (kill()) return;
                 } catch (Exception e) {
                     LOG.log(Level.SEVERE, e.getMessage(), e);
@@ -252,7 +185,7 @@ public class DebugAdapter {
     }
 
     public DebugAdapter(Function<DebugClient, DebugServer> serverFactory, InputStream receive, OutputStream send) {
-        this.receive = receive;
+        this.framing = new BaseProtocolReader(receive);
         this.send = send;
         this.client = new RealClient();
         this.server = serverFactory.apply(client);
@@ -503,7 +436,5 @@ public class DebugAdapter {
         }
     }
 
-    private static class EndOfStream extends RuntimeException {}
-
     private static final Logger LOG = Logger.getLogger("debug");
 }
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 import org.javacs.CompilerProvider;
 import org.javacs.ParseTask;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.*;
 
 public class FoldProvider {
@@ -82,7 +83,6 @@ public class FoldProvider {
     private FoldingRange asFoldingRange(ParseTask task, TreePath t, String kind) {
         var trees = Trees.instance(task.task);
         var pos = trees.getSourcePositions();
-        var lines = t.getCompilationUnit().getLineMap();
         var start = (int) pos.getStartPosition(t.getCompilationUnit(), t.getLeaf());
         var end = (int) pos.getEndPosition(t.getCompilationUnit(), t.getLeaf());
 
@@ -103,10 +103,12 @@ public class FoldProvider {
         }
 
         // Convert offset to 0-based line and character
-        var startLine = (int) lines.getLineNumber(start) - 1;
-        var startChar = (int) lines.getColumnNumber(start) - 1;
-        var endLine = (int) lines.getLineNumber(end) - 1;
-        var endChar = (int) lines.getColumnNumber(end) - 1;
+        var startPosition = PositionHelper.position(t.getCompilationUnit(), start);
+        var endPosition = PositionHelper.position(t.getCompilationUnit(), end);
+        var startLine = startPosition.line;
+        var startChar = startPosition.character;
+        var endLine = endPosition.line;
+        var endChar = endPosition.character;
 
         // If this is a block, move end position back one line so we don't fold the '}'
         if (t.getLeaf() instanceof ClassTree || t.getLeaf() instanceof BlockTree) {
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.StringJoiner;
 import java.util.logging.Logger;
 import javax.lang.model.element.*;
+import org.javacs.AnalysisDepth;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.CompletionData;
@@ -16,6 +17,7 @@ import org.javacs.FindHelper;
 import org.javacs.JsonHelper;
 import org.javacs.MarkdownHelper;
 import org.javacs.ParseTask;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.CompletionItem;
 import org.javacs.lsp.MarkedString;
 
@@ -29,8 +31,8 @@ public class HoverProvider {
     }
 
     public List<MarkedString> hover(Path file, int line, int column) {
-        try (var task = compiler.compile(file)) {
-            var position = task.root().getLineMap().getPosition(line, column);
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, file)) {
+            var position = PositionHelper.offset(task.root(), line, column);
             var element = new FindHoverElement(task.task).scan(task.root(), position);
             if (element == null) return NOT_SUPPORTED;
             var list = new ArrayList<MarkedString>();
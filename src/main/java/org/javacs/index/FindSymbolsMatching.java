@@ -5,10 +5,9 @@ import com.sun.source.util.*;
 import java.util.List;
 import java.util.Objects;
 import org.javacs.ParseTask;
+import org.javacs.PositionHelper;
 import org.javacs.StringSearch;
 import org.javacs.lsp.Location;
-import org.javacs.lsp.Position;
-import org.javacs.lsp.Range;
 import org.javacs.lsp.SymbolInformation;
 import org.javacs.lsp.SymbolKind;
 
@@ -108,14 +107,9 @@ class FindSymbolsMatching extends TreePathScanner<Void, List<SymbolInformation>>
     private Location location(Tree t) {
         var trees = Trees.instance(task.task);
         var pos = trees.getSourcePositions();
-        var lines = task.root.getLineMap();
         var start = pos.getStartPosition(root, t);
         var end = pos.getEndPosition(root, t);
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var range = new Range(new Position(startLine - 1, startColumn - 1), new Position(endLine - 1, endColumn - 1));
+        var range = PositionHelper.range(root, start, end);
         return new Location(root.getSourceFile().toUri(), range);
     }
 }
@@ -0,0 +1,125 @@
+package org.javacs.lsp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BaseProtocolReader splits a stream into `Content-Length: ...\r\n\r\n{...}` messages. It reads the stream in bulk
+ * into a single growable buffer, and hands out slices of that buffer, so message bodies are never copied byte-by-byte.
+ * The same framing is used by the language server protocol and the debug adapter protocol.
+ */
+public class BaseProtocolReader {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final InputStream in;
+    /** buffer[position, limit) holds bytes that have been read from `in` but not yet consumed */
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY).limit(0);
+
+    public BaseProtocolReader(InputStream in) {
+        this.in = in;
+    }
+
+    public static class EndOfStream extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Read the next message body. The returned buffer is a read-only view of the internal buffer, which is only valid
+     * until the next call to nextMessage().
+     */
+    public ByteBuffer nextMessage() {
+        var contentLength = -1;
+        while (true) {
+            var line = readHeader();
+            if (line.isEmpty()) {
+                // Have observed problems with extra \r\n sequences from VSCode
+                if (contentLength == -1) continue;
+                break;
+            }
+            var maybeLength = parseHeader(line);
+            if (maybeLength != -1) contentLength = maybeLength;
+        }
+        skipWhitespace();
+        fill(contentLength);
+        var start = buffer.position();
+        var body = buffer.slice().limit(contentLength).asReadOnlyBuffer();
+        buffer.position(start + contentLength);
+        return body;
+    }
+
+    /** Read the next message body and decode it as UTF-8. */
+    public Reader nextReader() {
+        var chars = StandardCharsets.UTF_8.decode(nextMessage());
+        return new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+    }
+
+    private String readHeader() {
+        var start = buffer.position();
+        var i = start;
+        while (true) {
+            if (i + 1 >= buffer.limit()) {
+                // fill(_) may move the unconsumed bytes to the front of the buffer
+                var scanned = i - start;
+                fill(scanned + 2);
+                start = buffer.position();
+                i = start + scanned;
+                continue;
+            }
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') break;
+            i++;
+        }
+        var line = new String(buffer.array(), buffer.arrayOffset() + start, i - start, StandardCharsets.US_ASCII);
+        buffer.position(i + 2);
+        return line;
+    }
+
+    private static int parseHeader(String header) {
+        var contentLength = "Content-Length: ";
+        if (header.startsWith(contentLength)) {
+            var tail = header.substring(contentLength.length());
+            return Integer.parseInt(tail.trim());
+        }
+        return -1;
+    }
+
+    private void skipWhitespace() {
+        while (true) {
+            if (!buffer.hasRemaining()) fill(1);
+            var next = buffer.get(buffer.position());
+            if (next != '\r' && next != '\n' && next != ' ' && next != '\t') return;
+            buffer.position(buffer.position() + 1);
+        }
+    }
+
+    /** Make sure at least `length` unconsumed bytes are in the buffer, reading from `in` as much as is available. */
+    private void fill(int length) {
+        if (buffer.remaining() >= length) return;
+        if (buffer.capacity() < length) {
+            var bigger = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            bigger.put(buffer);
+            buffer = bigger.flip();
+        } else if (buffer.capacity() - buffer.position() < length) {
+            buffer.compact().flip();
+        }
+        var array = buffer.array();
+        while (buffer.remaining() < length) {
+            int read;
+            try {
+                read = in.read(array, buffer.limit(), buffer.capacity() - buffer.limit());
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, e.getMessage(), e);
+                throw new EndOfStream();
+            }
+            if (read == -1) {
+                LOG.warning("Stream from client has been closed, throwing kill exception...");
+                throw new EndOfStream();
+            }
+            buffer.limit(buffer.limit() + read);
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,39 @@
+package org.javacs.lsp;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * CancelToken is set when the client sends $/cancelRequest for a request that has already started. Long-running work,
+ * like compiling, checks the token of the current thread at convenient boundaries and gives up by throwing
+ * CancellationException, which LSP reports to the client as RequestCancelled.
+ */
+public class CancelToken {
+    /** A token that is never cancelled, used when there is no request in progress */
+    public static final CancelToken NONE = new CancelToken();
+
+    private static final ThreadLocal<CancelToken> current = ThreadLocal.withInitial(() -> NONE);
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        if (this == NONE) return;
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void checkCancelled() {
+        if (cancelled) throw new CancellationException();
+    }
+
+    /** The token of the request that is being processed by this thread */
+    public static CancelToken current() {
+        return current.get();
+    }
+
+    static void setCurrent(CancelToken token) {
+        current.set(token);
+    }
+}
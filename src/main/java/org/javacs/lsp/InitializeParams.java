@@ -1,6 +1,7 @@
 package org.javacs.lsp;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import java.net.URI;
 import java.util.List;
 
@@ -9,6 +10,7 @@ public class InitializeParams {
     public String rootPath;
     public URI rootUri;
     public JsonElement initializationOptions;
+    public JsonObject capabilities;
     public String trace;
     public List<WorkspaceFolder> workspaceFolders;
 }
@@ -0,0 +1,13 @@
+package org.javacs.lsp;
+
+import java.util.List;
+
+public class JavaMemberSignature {
+    public String className, name;
+    public int kind;
+    public boolean isStatic;
+    /** Erased parameter types of a method or constructor, or null for a field */
+    public List<String> parameterTypes;
+    /** Erased return type of a method, the class of a constructor, or the type of a field */
+    public String type;
+}
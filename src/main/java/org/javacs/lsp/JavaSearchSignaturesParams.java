@@ -0,0 +1,12 @@
+package org.javacs.lsp;
+
+public class JavaSearchSignaturesParams {
+    /** A method signature like `(String, int) -> List<?>`, or a field type like `Map.Entry` */
+    public String query;
+
+    public JavaSearchSignaturesParams() {}
+
+    public JavaSearchSignaturesParams(String query) {
+        this.query = query;
+    }
+}
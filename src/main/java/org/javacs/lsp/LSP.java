@@ -2,13 +2,23 @@ package org.javacs.lsp;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -16,79 +26,116 @@ import java.util.logging.Logger;
 public class LSP {
     private static final Gson gson = new Gson();
 
-    private static String readHeader(InputStream client) {
-        var line = new StringBuilder();
-        for (var next = read(client); true; next = read(client)) {
-            if (next == '\r') {
-                var last = read(client);
-                assert last == '\n';
-                break;
+    /** The type of `params` for each method that the server handles */
+    private static final Map<String, Class<?>> PARAMS_TYPES =
+            Map.ofEntries(
+                    Map.entry("initialize", InitializeParams.class),
+                    Map.entry("workspace/didChangeWorkspaceFolders", DidChangeWorkspaceFoldersParams.class),
+                    Map.entry("workspace/didChangeConfiguration", DidChangeConfigurationParams.class),
+                    Map.entry("workspace/didChangeWatchedFiles", DidChangeWatchedFilesParams.class),
+                    Map.entry("workspace/symbol", WorkspaceSymbolParams.class),
+                    Map.entry("textDocument/documentLink", DocumentLinkParams.class),
+                    Map.entry("textDocument/didOpen", DidOpenTextDocumentParams.class),
+                    Map.entry("textDocument/didChange", DidChangeTextDocumentParams.class),
+                    Map.entry("textDocument/willSave", WillSaveTextDocumentParams.class),
+                    Map.entry("textDocument/willSaveWaitUntil", WillSaveTextDocumentParams.class),
+                    Map.entry("textDocument/didSave", DidSaveTextDocumentParams.class),
+                    Map.entry("textDocument/didClose", DidCloseTextDocumentParams.class),
+                    Map.entry("textDocument/completion", TextDocumentPositionParams.class),
+                    Map.entry("completionItem/resolve", CompletionItem.class),
+                    Map.entry("textDocument/hover", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/signatureHelp", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/definition", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/references", ReferenceParams.class),
+                    Map.entry("textDocument/documentSymbol", DocumentSymbolParams.class),
+                    Map.entry("textDocument/codeAction", CodeActionParams.class),
+                    Map.entry("textDocument/codeLens", CodeLensParams.class),
+                    Map.entry("codeLens/resolve", CodeLens.class),
+                    Map.entry("textDocument/prepareRename", TextDocumentPositionParams.class),
+                    Map.entry("textDocument/rename", RenameParams.class),
+                    Map.entry("textDocument/formatting", DocumentFormattingParams.class),
+                    Map.entry("textDocument/foldingRange", FoldingRangeParams.class),
+                    Map.entry("java/searchSignatures", JavaSearchSignaturesParams.class),
+                    Map.entry("$/cancelRequest", CancelParams.class));
+
+    /**
+     * Parse a message in a single pass. If `method` appears before `params`, which is what every client we know of
+     * does, `params` is deserialized straight into its Java type without building an intermediate JSON tree.
+     */
+    static Message parseMessage(Reader body) {
+        try (var in = new JsonReader(body)) {
+            var message = new Message();
+            JsonElement early = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "jsonrpc":
+                        message.jsonrpc = in.nextString();
+                        break;
+                    case "id":
+                        if (in.peek() == JsonToken.NULL) in.nextNull();
+                        else message.id = Integer.parseInt(in.nextString());
+                        break;
+                    case "method":
+                        message.method = in.nextString();
+                        break;
+                    case "params":
+                        if (message.method != null) message.params = readParams(message.method, in);
+                        else early = gson.fromJson(in, JsonElement.class);
+                        break;
+                    default:
+                        in.skipValue();
+                }
             }
-            line.append(next);
+            in.endObject();
+            if (early != null) {
+                message.params = decodeParams(message.method, early);
+            }
+            return message;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return line.toString();
     }
 
-    private static int parseHeader(String header) {
-        var contentLength = "Content-Length: ";
-        if (header.startsWith(contentLength)) {
-            var tail = header.substring(contentLength.length());
-            var length = Integer.parseInt(tail);
-            return length;
-        }
-        return -1;
+    static Message parseMessage(String token) {
+        return parseMessage(new StringReader(token));
     }
 
-    static class EndOfStream extends RuntimeException {}
-
-    // TODO this seems like it's probably really inefficient. Read in bulk?
-    private static char read(InputStream client) {
-        try {
-            var c = client.read();
-            if (c == -1) {
-                LOG.warning("Stream from client has been closed, throwing kill exception...");
-                throw new EndOfStream();
-            }
-            return (char) c;
-        } catch (IOException e) {
-            LOG.log(Level.SEVERE, e.getMessage(), e);
-            throw new EndOfStream();
-        }
+    private static Object readParams(String method, JsonReader in) {
+        var type = PARAMS_TYPES.get(method);
+        if (type == null) return gson.fromJson(in, JsonElement.class);
+        return gson.fromJson(in, type);
     }
 
-    private static String readLength(InputStream client, int byteLength) {
-        // Eat whitespace
-        // Have observed problems with extra \r\n sequences from VSCode
-        var next = read(client);
-        while (Character.isWhitespace(next)) {
-            next = read(client);
-        }
-        // Append next
-        var result = new StringBuilder();
-        var i = 0;
-        while (true) {
-            result.append(next);
-            i++;
-            if (i == byteLength) break;
-            next = read(client);
-        }
-        return result.toString();
+    private static Object decodeParams(String method, JsonElement params) {
+        var type = PARAMS_TYPES.get(method);
+        if (type == null) return params;
+        return gson.fromJson(params, type);
     }
 
-    static String nextToken(InputStream client) {
-        var contentLength = -1;
-        while (true) {
-            var line = readHeader(client);
-            // If header is empty, next line is the start of the message
-            if (line.isEmpty()) return readLength(client, contentLength);
-            // If header contains length, save it
-            var maybeLength = parseHeader(line);
-            if (maybeLength != -1) contentLength = maybeLength;
-        }
-    }
+    /**
+     * Methods that only read parse trees or indexes. These are answered on a pool of worker threads, so a slow
+     * workspace/symbol doesn't hold up didChange, hover and completion. Everything else, including every document
+     * mutation, is processed in order on the main thread.
+     */
+    private static final Set<String> CONCURRENT_METHODS =
+            Set.of(
+                    "workspace/symbol",
+                    "textDocument/documentSymbol",
+                    "textDocument/foldingRange",
+                    "textDocument/codeLens",
+                    "java/searchSignatures");
 
-    static Message parseMessage(String token) {
-        return gson.fromJson(token, Message.class);
+    private static ExecutorService createWorkers() {
+        var nThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        var counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                nThreads,
+                task -> {
+                    var thread = new Thread(task, "worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     private static final Charset UTF_8 = StandardCharsets.UTF_8;
@@ -97,11 +144,14 @@ public class LSP {
         var messageBytes = messageText.getBytes(UTF_8);
         var headerText = String.format("Content-Length: %d\r\n\r\n", messageBytes.length);
         var headerBytes = headerText.getBytes(UTF_8);
-        try {
-            client.write(headerBytes);
-            client.write(messageBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        // Responses can come from worker threads, so don't let messages interleave
+        synchronized (client) {
+            try {
+                client.write(headerBytes);
+                client.write(messageBytes);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -176,17 +226,39 @@ public class LSP {
     public static void connect(
             Function<LanguageClient, LanguageServer> serverFactory, InputStream receive, OutputStream send) {
         var server = serverFactory.apply(new RealClient(send));
+        var framing = new BaseProtocolReader(receive);
         var pending = new ArrayBlockingQueue<Message>(10);
+        var workers = createWorkers();
+        // Cancel tokens of requests that have been received but not yet answered
+        var running = new ConcurrentHashMap<Integer, CancelToken>();
+        // Cancel token of server.doAsyncWork(), which gives way to new messages
+        var asyncWork = new AtomicReference<CancelToken>(CancelToken.NONE);
         var endOfStream = new Message();
 
         // Read messages and process cancellations on a separate thread
         class MessageReader implements Runnable {
             void peek(Message message) {
                 if (message.method.equals("$/cancelRequest")) {
-                    var params = gson.fromJson(message.params, CancelParams.class);
+                    var params = (CancelParams) message.params;
                     var removed = pending.removeIf(r -> r.id != null && r.id.equals(params.id));
-                    if (removed) LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
-                    else LOG.info(String.format("Cannot cancel request %d because it has already started", params.id));
+                    var token = removed ? running.remove(params.id) : running.get(params.id);
+                    if (removed) {
+                        LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
+                        cancelled(send, params.id);
+                    } else if (token != null) {
+                        LOG.info(String.format("Cancelling request %d, which has already started", params.id));
+                        token.cancel();
+                    } else {
+                        LOG.info(String.format("Cannot cancel request %d because it has already finished", params.id));
+                    }
+                    return;
+                }
+                if (message.id != null) {
+                    running.put(message.id, new CancelToken());
+                }
+                // Linting is pre-empted by anything that has to wait for the main thread
+                if (!CONCURRENT_METHODS.contains(message.method)) {
+                    asyncWork.get().cancel();
                 }
             }
 
@@ -207,11 +279,10 @@ public class LSP {
 
                 while (true) {
                     try {
-                        var token = nextToken(receive);
-                        var message = parseMessage(token);
+                        var message = parseMessage(framing.nextReader());
                         peek(message);
                         pending.put(message);
-                    } catch (EndOfStream __) {
+                    } catch (BaseProtocolReader.EndOfStream __) {
                         if (kill()) return;
                     } catch (Exception e) {
                         LOG.log(Level.SEVERE, e.getMessage(), e);
@@ -244,218 +315,268 @@ public class LSP {
             // If poll(_) failed, loop again
             if (r == null) {
                 if (hasAsyncWork) {
-                    server.doAsyncWork();
-                    hasAsyncWork = false;
+                    var token = new CancelToken();
+                    asyncWork.set(token);
+                    CancelToken.setCurrent(token);
+                    try {
+                        server.doAsyncWork();
+                        hasAsyncWork = false;
+                    } catch (CancellationException e) {
+                        LOG.info("...async work was interrupted by a new message, will try again later");
+                    } finally {
+                        asyncWork.set(CancelToken.NONE);
+                        CancelToken.setCurrent(CancelToken.NONE);
+                    }
                 }
                 continue;
             }
+            var token = r.id == null ? CancelToken.NONE : running.getOrDefault(r.id, CancelToken.NONE);
+            // Requests that only read parse trees and indexes can run concurrently with the main loop
+            if (CONCURRENT_METHODS.contains(r.method)) {
+                var request = r;
+                workers.execute(
+                        () -> {
+                            dispatch(server, send, request, token);
+                            running.remove(request.id);
+                        });
+                continue;
+            }
             // Otherwise, process the new message
             hasAsyncWork = true;
-            try {
-                switch (r.method) {
-                    case "initialize":
-                        {
-                            var params = gson.fromJson(r.params, InitializeParams.class);
-                            var response = server.initialize(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "initialized":
-                        {
-                            server.initialized();
-                            break;
-                        }
-                    case "shutdown":
-                        {
-                            LOG.warning("Got shutdown message");
-                            respond(send, r.id, null);
-                            break;
-                        }
-                    case "exit":
-                        {
-                            LOG.warning("Got exit message, exiting...");
-                            break processMessages;
-                        }
-                    case "workspace/didChangeWorkspaceFolders":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeWorkspaceFoldersParams.class);
-                            server.didChangeWorkspaceFolders(params);
-                            break;
-                        }
-                    case "workspace/didChangeConfiguration":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeConfigurationParams.class);
-                            server.didChangeConfiguration(params);
-                            break;
-                        }
-                    case "workspace/didChangeWatchedFiles":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeWatchedFilesParams.class);
-                            server.didChangeWatchedFiles(params);
-                            break;
-                        }
-                    case "workspace/symbol":
-                        {
-                            var params = gson.fromJson(r.params, WorkspaceSymbolParams.class);
-                            var response = server.workspaceSymbols(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/documentLink":
-                        {
-                            var params = gson.fromJson(r.params, DocumentLinkParams.class);
-                            var response = server.documentLink(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/didOpen":
-                        {
-                            var params = gson.fromJson(r.params, DidOpenTextDocumentParams.class);
-                            server.didOpenTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/didChange":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeTextDocumentParams.class);
-                            server.didChangeTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/willSave":
-                        {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
-                            server.willSaveTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/willSaveWaitUntil":
-                        {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
-                            var response = server.willSaveWaitUntilTextDocument(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/didSave":
-                        {
-                            var params = gson.fromJson(r.params, DidSaveTextDocumentParams.class);
-                            server.didSaveTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/didClose":
-                        {
-                            var params = gson.fromJson(r.params, DidCloseTextDocumentParams.class);
-                            server.didCloseTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/completion":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.completion(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "completionItem/resolve":
-                        {
-                            var params = gson.fromJson(r.params, CompletionItem.class);
-                            var response = server.resolveCompletionItem(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/hover":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.hover(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/signatureHelp":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.signatureHelp(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/definition":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.gotoDefinition(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/references":
-                        {
-                            var params = gson.fromJson(r.params, ReferenceParams.class);
-                            var response = server.findReferences(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/documentSymbol":
-                        {
-                            var params = gson.fromJson(r.params, DocumentSymbolParams.class);
-                            var response = server.documentSymbol(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/codeAction":
-                        {
-                            var params = gson.fromJson(r.params, CodeActionParams.class);
-                            var response = server.codeAction(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/codeLens":
-                        {
-                            var params = gson.fromJson(r.params, CodeLensParams.class);
-                            var response = server.codeLens(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "codeLens/resolve":
-                        {
-                            var params = gson.fromJson(r.params, CodeLens.class);
-                            var response = server.resolveCodeLens(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/prepareRename":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.prepareRename(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/rename":
-                        {
-                            var params = gson.fromJson(r.params, RenameParams.class);
-                            var response = server.rename(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/formatting":
-                        {
-                            var params = gson.fromJson(r.params, DocumentFormattingParams.class);
-                            var response = server.formatting(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/foldingRange":
-                        {
-                            var params = gson.fromJson(r.params, FoldingRangeParams.class);
-                            var response = server.foldingRange(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "$/cancelRequest":
-                        // Already handled in peek(message)
+            var keepGoing = dispatch(server, send, r, token);
+            if (r.id != null) running.remove(r.id);
+            if (!keepGoing) break processMessages;
+        }
+        workers.shutdownNow();
+    }
+
+    /** Handle a single message. Returns false if the server should exit. */
+    private static boolean dispatch(LanguageServer server, OutputStream send, Message r, CancelToken token) {
+        CancelToken.setCurrent(token);
+        try {
+            token.checkCancelled();
+            switch (r.method) {
+                case "initialize":
+                    {
+                        var params = (InitializeParams) r.params;
+                        var response = server.initialize(params);
+                        respond(send, r.id, response);
                         break;
-                    default:
-                        LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
-                }
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, e.getMessage(), e);
-                if (r.id != null) {
-                    error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
-                }
+                    }
+                case "initialized":
+                    {
+                        server.initialized();
+                        break;
+                    }
+                case "shutdown":
+                    {
+                        LOG.warning("Got shutdown message");
+                        respond(send, r.id, null);
+                        break;
+                    }
+                case "exit":
+                    {
+                        LOG.warning("Got exit message, exiting...");
+                        return false;
+                    }
+                case "workspace/didChangeWorkspaceFolders":
+                    {
+                        var params = (DidChangeWorkspaceFoldersParams) r.params;
+                        server.didChangeWorkspaceFolders(params);
+                        break;
+                    }
+                case "workspace/didChangeConfiguration":
+                    {
+                        var params = (DidChangeConfigurationParams) r.params;
+                        server.didChangeConfiguration(params);
+                        break;
+                    }
+                case "workspace/didChangeWatchedFiles":
+                    {
+                        var params = (DidChangeWatchedFilesParams) r.params;
+                        server.didChangeWatchedFiles(params);
+                        break;
+                    }
+                case "workspace/symbol":
+                    {
+                        var params = (WorkspaceSymbolParams) r.params;
+                        var response = server.workspaceSymbols(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/documentLink":
+                    {
+                        var params = (DocumentLinkParams) r.params;
+                        var response = server.documentLink(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/didOpen":
+                    {
+                        var params = (DidOpenTextDocumentParams) r.params;
+                        server.didOpenTextDocument(params);
+                        break;
+                    }
+                case "textDocument/didChange":
+                    {
+                        var params = (DidChangeTextDocumentParams) r.params;
+                        server.didChangeTextDocument(params);
+                        break;
+                    }
+                case "textDocument/willSave":
+                    {
+                        var params = (WillSaveTextDocumentParams) r.params;
+                        server.willSaveTextDocument(params);
+                        break;
+                    }
+                case "textDocument/willSaveWaitUntil":
+                    {
+                        var params = (WillSaveTextDocumentParams) r.params;
+                        var response = server.willSaveWaitUntilTextDocument(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/didSave":
+                    {
+                        var params = (DidSaveTextDocumentParams) r.params;
+                        server.didSaveTextDocument(params);
+                        break;
+                    }
+                case "textDocument/didClose":
+                    {
+                        var params = (DidCloseTextDocumentParams) r.params;
+                        server.didCloseTextDocument(params);
+                        break;
+                    }
+                case "textDocument/completion":
+                    {
+                        var params = (TextDocumentPositionParams) r.params;
+                        var response = server.completion(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "completionItem/resolve":
+                    {
+                        var params = (CompletionItem) r.params;
+                        var response = server.resolveCompletionItem(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/hover":
+                    {
+                        var params = (TextDocumentPositionParams) r.params;
+                        var response = server.hover(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/signatureHelp":
+                    {
+                        var params = (TextDocumentPositionParams) r.params;
+                        var response = server.signatureHelp(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/definition":
+                    {
+                        var params = (TextDocumentPositionParams) r.params;
+                        var response = server.gotoDefinition(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/references":
+                    {
+                        var params = (ReferenceParams) r.params;
+                        var response = server.findReferences(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/documentSymbol":
+                    {
+                        var params = (DocumentSymbolParams) r.params;
+                        var response = server.documentSymbol(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/codeAction":
+                    {
+                        var params = (CodeActionParams) r.params;
+                        var response = server.codeAction(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/codeLens":
+                    {
+                        var params = (CodeLensParams) r.params;
+                        var response = server.codeLens(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "codeLens/resolve":
+                    {
+                        var params = (CodeLens) r.params;
+                        var response = server.resolveCodeLens(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/prepareRename":
+                    {
+                        var params = (TextDocumentPositionParams) r.params;
+                        var response = server.prepareRename(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/rename":
+                    {
+                        var params = (RenameParams) r.params;
+                        var response = server.rename(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/formatting":
+                    {
+                        var params = (DocumentFormattingParams) r.params;
+                        var response = server.formatting(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/foldingRange":
+                    {
+                        var params = (FoldingRangeParams) r.params;
+                        var response = server.foldingRange(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "java/searchSignatures":
+                    {
+                        var params = (JavaSearchSignaturesParams) r.params;
+                        var response = server.searchSignatures(params);
+                        respond(send, r.id, response);
+                        break;
+                    }
+                case "$/cancelRequest":
+                    // Already handled in peek(message)
+                    break;
+                default:
+                    LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
+            }
+        } catch (CancellationException e) {
+            LOG.info(String.format("...request %d was cancelled", r.id));
+            if (r.id != null) {
+                cancelled(send, r.id);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            if (r.id != null) {
+                error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
             }
+        } finally {
+            CancelToken.setCurrent(CancelToken.NONE);
         }
+        return true;
+    }
+
+    private static void cancelled(OutputStream send, int requestId) {
+        error(send, requestId, new ResponseError(ErrorCodes.RequestCancelled, "Request was cancelled", null));
     }
 
     private static final Logger LOG = Logger.getLogger("main");
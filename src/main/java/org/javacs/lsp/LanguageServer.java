@@ -116,5 +116,9 @@ public class LanguageServer {
         throw new RuntimeException("Unimplemented");
     }
 
+    public List<JavaMemberSignature> searchSignatures(JavaSearchSignaturesParams params) {
+        throw new RuntimeException("Unimplemented");
+    }
+
     public void doAsyncWork() {}
 }
@@ -0,0 +1,27 @@
+package org.javacs.lsp;
+
+import java.util.List;
+
+/** How Position.character counts the characters of a line, negotiated with the client in initialize */
+public enum PositionEncoding {
+    UTF_16("utf-16"),
+    UTF_8("utf-8");
+
+    /** The name of this encoding in the protocol */
+    public final String label;
+
+    PositionEncoding(String label) {
+        this.label = label;
+    }
+
+    /** Pick the first encoding the client offers that we support. UTF-16 is the default, and all clients support it. */
+    public static PositionEncoding negotiate(List<String> offered) {
+        if (offered == null) return UTF_16;
+        for (var label : offered) {
+            for (var encoding : values()) {
+                if (encoding.label.equals(label)) return encoding;
+            }
+        }
+        return UTF_16;
+    }
+}
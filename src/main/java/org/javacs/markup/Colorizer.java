@@ -5,6 +5,7 @@ import com.sun.source.util.*;
 import java.nio.file.Paths;
 import javax.lang.model.element.*;
 import org.javacs.FileStore;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.Range;
 
 class Colorizer extends TreePathScanner<Void, SemanticColors> {
@@ -61,7 +62,7 @@ class Colorizer extends TreePathScanner<Void, SemanticColors> {
         var region = contents.substring(start, end);
         start += region.indexOf(name.toString());
         end = start + name.length();
-        return RangeHelper.range(root, start, end);
+        return PositionHelper.range(root, start, end);
     }
 
     @Override
@@ -11,6 +11,7 @@ import javax.lang.model.element.Element;
 import javax.tools.JavaFileObject;
 import org.javacs.CompileTask;
 import org.javacs.FileStore;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.*;
 
 public class ErrorProvider {
@@ -27,6 +28,11 @@ public class ErrorProvider {
             result[i] = new PublishDiagnosticsParams();
             result[i].uri = root.getSourceFile().toUri();
             result[i].diagnostics.addAll(compilerErrors(root));
+            // If javac gave up on this file, parts of it aren't attributed, so usages may be missing
+            if (task.partial.contains(root.getSourceFile().toUri())) {
+                result[i].diagnostics.add(tooManyErrors(root));
+                continue;
+            }
             result[i].diagnostics.addAll(unusedWarnings(root));
             result[i].diagnostics.addAll(notThrownWarnings(root));
         }
@@ -40,11 +46,20 @@ public class ErrorProvider {
         for (var d : task.diagnostics) {
             if (d.getSource() == null || !d.getSource().toUri().equals(root.getSourceFile().toUri())) continue;
             if (d.getStartPosition() == -1 || d.getEndPosition() == -1) continue;
-            result.add(lspDiagnostic(d, root.getLineMap()));
+            result.add(lspDiagnostic(d, root));
         }
         return result;
     }
 
+    private org.javacs.lsp.Diagnostic tooManyErrors(CompilationUnitTree root) {
+        var d = new org.javacs.lsp.Diagnostic();
+        d.message = "Too many errors; only the first ones are shown, and the rest of the file wasn't checked";
+        d.range = PositionHelper.range(root, 0, 0);
+        d.code = "too_many_errors";
+        d.severity = DiagnosticSeverity.Information;
+        return d;
+    }
+
     private List<org.javacs.lsp.Diagnostic> unusedWarnings(CompilationUnitTree root) {
         var result = new ArrayList<org.javacs.lsp.Diagnostic>();
         var warnUnused = new WarnUnused(task.task);
@@ -66,16 +81,13 @@ public class ErrorProvider {
     }
 
     /**
-     * lspDiagnostic(d, lines) converts d to LSP format, with its position shifted appropriately for the latest version
+     * lspDiagnostic(d, root) converts d to LSP format, with its position shifted appropriately for the latest version
      * of the file.
      */
-    private org.javacs.lsp.Diagnostic lspDiagnostic(javax.tools.Diagnostic<? extends JavaFileObject> d, LineMap lines) {
+    private org.javacs.lsp.Diagnostic lspDiagnostic(
+            javax.tools.Diagnostic<? extends JavaFileObject> d, CompilationUnitTree root) {
         var start = d.getStartPosition();
         var end = d.getEndPosition();
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
         var severity = severity(d.getKind());
         var code = d.getCode();
         var message = d.getMessage(null);
@@ -83,8 +95,7 @@ public class ErrorProvider {
         result.severity = severity;
         result.code = code;
         result.message = message;
-        result.range =
-                new Range(new Position(startLine - 1, startColumn - 1), new Position(endLine - 1, endColumn - 1));
+        result.range = PositionHelper.range(root, start, end);
         return result;
     }
 
@@ -111,7 +122,7 @@ public class ErrorProvider {
         var end = pos.getEndPosition(root, path.getLeaf());
         var d = new org.javacs.lsp.Diagnostic();
         d.message = String.format("'%s' is not thrown in the body of the method", name);
-        d.range = RangeHelper.range(root, start, end);
+        d.range = PositionHelper.range(root, start, end);
         d.code = "unused_throws";
         d.severity = DiagnosticSeverity.Information;
         d.tags = List.of(DiagnosticTag.Unnecessary);
@@ -186,7 +197,7 @@ public class ErrorProvider {
         result.code = code;
         result.message = message;
         result.tags = List.of(DiagnosticTag.Unnecessary);
-        result.range = RangeHelper.range(root, start, end);
+        result.range = PositionHelper.range(root, start, end);
         return result;
     }
 }
@@ -8,6 +8,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeKind;
 import javax.tools.JavaFileObject;
+import org.javacs.AnalysisDepth;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
@@ -29,7 +30,7 @@ public class DefinitionProvider {
     }
 
     public List<Location> find() {
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, file)) {
             var element = NavigationHelper.findElement(task, file, line, column);
             if (element == null) return NOT_SUPPORTED;
             if (element.asType().getKind() == TypeKind.ERROR) {
@@ -72,7 +73,7 @@ public class DefinitionProvider {
             sources = List.of(fileAsSource);
         }
         var locations = new ArrayList<Location>();
-        try (var task = compiler.compile(sources)) {
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, sources)) {
             var trees = Trees.instance(task.task);
             var elements = task.task.getElements();
             var parentClass = elements.getTypeElement(className);
@@ -99,7 +100,7 @@ public class DefinitionProvider {
     }
 
     private List<Location> findRemoteDefinitions(JavaFileObject otherFile) {
-        try (var task = compiler.compile(List.of(new SourceFileObject(file), otherFile))) {
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, List.of(new SourceFileObject(file), otherFile))) {
             var element = NavigationHelper.findElement(task, file, line, column);
             return findDefinitions(task, element);
         }
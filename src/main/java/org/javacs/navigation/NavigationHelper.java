@@ -6,6 +6,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
 import org.javacs.CompileTask;
 import org.javacs.FindNameAt;
+import org.javacs.PositionHelper;
 
 class NavigationHelper {
 
@@ -13,7 +14,7 @@ class NavigationHelper {
         for (var root : task.roots) {
             if (root.getSourceFile().toUri().equals(file.toUri())) {
                 var trees = Trees.instance(task.task);
-                var cursor = root.getLineMap().getPosition(line, column);
+                var cursor = PositionHelper.offset(root, line, column);
                 var path = new FindNameAt(task).scan(root, cursor);
                 if (path == null) return null;
                 return trees.getElement(path);
@@ -3,8 +3,11 @@ package org.javacs.navigation;
 import com.sun.source.util.TreePath;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import org.javacs.AnalysisDepth;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
@@ -25,7 +28,10 @@ public class ReferenceProvider {
     }
 
     public List<Location> find() {
-        try (var task = compiler.compile(file)) {
+        // The search compiles other files, so it runs after this file's task has been closed
+        String className, memberName = null;
+        String[] erasedParameterTypes = null;
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, file)) {
             var element = NavigationHelper.findElement(task, file, line, column);
             if (element == null) return NOT_SUPPORTED;
             if (NavigationHelper.isLocal(element)) {
@@ -33,36 +39,42 @@ public class ReferenceProvider {
             }
             if (NavigationHelper.isType(element)) {
                 var type = (TypeElement) element;
-                var className = type.getQualifiedName().toString();
-                task.close();
-                return findTypeReferences(className);
-            }
-            if (NavigationHelper.isMember(element)) {
+                className = type.getQualifiedName().toString();
+            } else if (NavigationHelper.isMember(element)) {
                 var parentClass = (TypeElement) element.getEnclosingElement();
-                var className = parentClass.getQualifiedName().toString();
-                var memberName = element.getSimpleName().toString();
+                className = parentClass.getQualifiedName().toString();
+                memberName = element.getSimpleName().toString();
                 if (memberName.equals("<init>")) {
                     memberName = parentClass.getSimpleName().toString();
                 }
-                task.close();
-                return findMemberReferences(className, memberName);
+                if (element instanceof ExecutableElement) {
+                    erasedParameterTypes = FindHelper.erasedParameterTypes(task, (ExecutableElement) element);
+                }
+            } else {
+                return NOT_SUPPORTED;
             }
-            return NOT_SUPPORTED;
         }
+        if (memberName == null) {
+            return findTypeReferences(className);
+        }
+        if (erasedParameterTypes != null) {
+            return findReferences(compiler.findMethodReferences(className, memberName, erasedParameterTypes));
+        }
+        return findReferences(compiler.findMemberReferences(className, memberName));
     }
 
     private List<Location> findTypeReferences(String className) {
-        var files = compiler.findTypeReferences(className);
-        if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
-            return findReferences(task);
-        }
+        return findReferences(compiler.findTypeReferences(className));
     }
 
-    private List<Location> findMemberReferences(String className, String memberName) {
-        var files = compiler.findMemberReferences(className, memberName);
+    private List<Location> findReferences(Path[] files) {
         if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
+        // The index may rule out the file the search started from, but findReferences(_) needs it to find the element
+        if (!Arrays.asList(files).contains(file)) {
+            files = Arrays.copyOf(files, files.length + 1);
+            files[files.length - 1] = file;
+        }
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, files)) {
             return findReferences(task);
         }
     }
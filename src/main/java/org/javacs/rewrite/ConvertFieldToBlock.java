@@ -5,7 +5,7 @@ import java.nio.file.Path;
 import java.util.Map;
 import javax.lang.model.element.Modifier;
 import org.javacs.CompilerProvider;
-import org.javacs.lsp.Position;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
 
@@ -23,7 +23,6 @@ public class ConvertFieldToBlock implements Rewrite {
         var task = compiler.parse(file);
         var trees = Trees.instance(task.task);
         var pos = trees.getSourcePositions();
-        var lines = task.root.getLineMap();
         var variable = ConvertVariableToStatement.findVariable(task, position);
         if (variable == null) {
             return CANCELLED;
@@ -34,21 +33,15 @@ public class ConvertFieldToBlock implements Rewrite {
         }
         var start = pos.getStartPosition(task.root, variable);
         var end = pos.getStartPosition(task.root, expression);
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var startPos = new Position(startLine - 1, startColumn - 1);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var endPos = new Position(endLine - 1, endColumn - 1);
+        var startPos = PositionHelper.position(task.root, start);
+        var endPos = PositionHelper.position(task.root, end);
         var deleteLhs = new Range(startPos, endPos);
         var fixLhs = new TextEdit(deleteLhs, "{ ");
         if (variable.getModifiers().getFlags().contains(Modifier.STATIC)) {
             fixLhs.newText = "static { ";
         }
         var right = pos.getEndPosition(task.root, variable);
-        var rightLine = (int) lines.getLineNumber(right);
-        var rightColumn = (int) lines.getColumnNumber(right);
-        var rightPos = new Position(rightLine - 1, rightColumn - 1);
+        var rightPos = PositionHelper.position(task.root, right);
         var insertRight = new Range(rightPos, rightPos);
         var fixRhs = new TextEdit(insertRight, " }");
         TextEdit[] edits = {fixLhs, fixRhs};
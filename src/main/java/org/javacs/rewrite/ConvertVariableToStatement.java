@@ -7,7 +7,7 @@ import java.nio.file.Path;
 import java.util.Map;
 import org.javacs.CompilerProvider;
 import org.javacs.ParseTask;
-import org.javacs.lsp.Position;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
 
@@ -25,7 +25,6 @@ public class ConvertVariableToStatement implements Rewrite {
         var task = compiler.parse(file);
         var trees = Trees.instance(task.task);
         var pos = trees.getSourcePositions();
-        var lines = task.root.getLineMap();
         var variable = findVariable(task, position);
         if (variable == null) {
             return CANCELLED;
@@ -39,12 +38,8 @@ public class ConvertVariableToStatement implements Rewrite {
         }
         var start = pos.getStartPosition(task.root, variable);
         var end = pos.getStartPosition(task.root, expression);
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var startPos = new Position(startLine - 1, startColumn - 1);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var endPos = new Position(endLine - 1, endColumn - 1);
+        var startPos = PositionHelper.position(task.root, start);
+        var endPos = PositionHelper.position(task.root, end);
         var delete = new Range(startPos, endPos);
         var edit = new TextEdit(delete, "");
         TextEdit[] edits = {edit};
@@ -15,6 +15,7 @@ import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.ExecutableType;
 import javax.lang.model.type.TypeMirror;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.Position;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
@@ -28,15 +29,10 @@ class EditHelper {
 
     TextEdit removeTree(CompilationUnitTree root, Tree remove) {
         var pos = Trees.instance(task).getSourcePositions();
-        var lines = root.getLineMap();
         var start = pos.getStartPosition(root, remove);
         var end = pos.getEndPosition(root, remove);
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var startPos = new Position(startLine - 1, startColumn - 1);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var endPos = new Position(endLine - 1, endColumn - 1);
+        var startPos = PositionHelper.position(root, start);
+        var endPos = PositionHelper.position(root, end);
         var range = new Range(startPos, endPos);
         return new TextEdit(range, "");
     }
@@ -11,7 +11,7 @@ import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
-import org.javacs.lsp.Position;
+import org.javacs.PositionHelper;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
 
@@ -60,16 +60,11 @@ public class RemoveException implements Rewrite {
         if (!matcher.find(startMethod)) {
             return TextEdit.NONE;
         }
-        var lines = root.getLineMap();
         var start = matcher.start();
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var startPos = new Position(startLine - 1, startColumn - 1);
+        var startPos = PositionHelper.position(root, start);
         var lastException = method.getThrows().get(method.getThrows().size() - 1);
         var end = (int) pos.getEndPosition(root, lastException);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var endPos = new Position(endLine - 1, endColumn - 1);
+        var endPos = PositionHelper.position(root, end);
         return new TextEdit(new Range(startPos, endPos), "");
     }
 
@@ -86,13 +81,8 @@ public class RemoveException implements Rewrite {
         } else {
             start = removeLeadingComma(root, start);
         }
-        var lines = root.getLineMap();
-        var startLine = (int) lines.getLineNumber(start);
-        var startColumn = (int) lines.getColumnNumber(start);
-        var startPos = new Position(startLine - 1, startColumn - 1);
-        var endLine = (int) lines.getLineNumber(end);
-        var endColumn = (int) lines.getColumnNumber(end);
-        var endPos = new Position(endLine - 1, endColumn - 1);
+        var startPos = PositionHelper.position(root, start);
+        var endPos = PositionHelper.position(root, end);
         return new TextEdit(new Range(startPos, endPos), "");
     }
 
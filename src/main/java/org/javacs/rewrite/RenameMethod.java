@@ -21,7 +21,7 @@ public class RenameMethod implements Rewrite {
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
         LOG.info("Rewrite " + className + "#" + methodName + " to " + newName + "...");
-        var paths = compiler.findMemberReferences(className, methodName);
+        var paths = compiler.findMethodReferences(className, methodName, erasedParameterTypes);
         if (paths.length == 0) {
             LOG.warning("...no references to " + className + "#" + methodName);
             return Map.of();
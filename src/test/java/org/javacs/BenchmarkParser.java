@@ -1,14 +1,22 @@
 package org.javacs;
 
+import com.sun.source.util.JavacTask;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
 import org.openjdk.jmh.annotations.*;
 
 @Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
 @Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
 @Fork(1)
 public class BenchmarkParser {
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+    private static final SourceFileManager FILE_MANAGER = new SourceFileManager();
 
     @State(Scope.Benchmark)
     public static class CompilerState {
@@ -20,6 +28,105 @@ public class BenchmarkParser {
         Parser.parseFile(state.file);
     }
 
+    /** How Parser used to parse: a new JavacTask, with a new javac context, for every file */
+    @Benchmark
+    public void parseInNewContext(CompilerState state) throws IOException {
+        var file = new SourceFileObject(state.file);
+        var task = (JavacTask) COMPILER.getTask(null, FILE_MANAGER, __ -> {}, List.of(), List.of(), List.of(file));
+        task.parse();
+    }
+
+    /** Parse in one of the long-lived contexts of ParserPool */
+    @Benchmark
+    public void parseInPooledContext(CompilerState state) {
+        Parser.parseUncached(new SourceFileObject(state.file));
+    }
+
+    /**
+     * After each keystroke in the edited file, the editor asks for code lenses, document symbols and folding ranges,
+     * then hover and completion look up docs in a couple of other files. A capacity of 1 is how Parser used to cache.
+     */
+    @State(Scope.Benchmark)
+    public static class RequestMix {
+        @Param({"1", "100"})
+        public int capacity;
+
+        public Path edited = Paths.get("src/main/java/org/javacs/JavaLanguageServer.java").normalize();
+        public Path[] others = {
+            Paths.get("src/main/java/org/javacs/CompileBatch.java").normalize(),
+            Paths.get("src/main/java/org/javacs/FileStore.java").normalize(),
+        };
+        public String contents;
+        public long version;
+        public ParseCache cache;
+
+        @Setup
+        public void setup() {
+            contents = FileStore.contents(edited);
+            cache = new ParseCache(capacity, 64 * 1024 * 1024);
+        }
+
+        @TearDown
+        public void printHitRate() {
+            System.out.println();
+            System.out.println(cache);
+        }
+    }
+
+    @Benchmark
+    public void requestMix(RequestMix state) {
+        var modified = Instant.ofEpochMilli(++state.version);
+        var edited = new SourceFileObject(state.edited, state.contents, modified);
+        // Code lenses, document symbols, folding ranges
+        for (var i = 0; i < 3; i++) {
+            state.cache.get(edited);
+        }
+        // Hover and completion docs
+        for (var other : state.others) {
+            state.cache.get(new SourceFileObject(other));
+        }
+        // Completion parses the edited file again before pruning it
+        state.cache.get(edited);
+    }
+
+    /** Typing inside one method of a large file, which IncrementalParse handles without parsing the whole file */
+    @State(Scope.Benchmark)
+    public static class Typing {
+        @Param({"false", "true"})
+        public boolean incremental;
+
+        public Path file = Paths.get("src/main/java/org/javacs/JavaLanguageServer.java").normalize();
+        public String contents;
+        public int offset;
+        public long version;
+        public ParseCache cache = new ParseCache(100, 64 * 1024 * 1024);
+
+        @Setup
+        public void setup() {
+            contents = FileStore.contents(file);
+            offset = contents.indexOf("LOG.info(\"Lint ");
+        }
+
+        @TearDown
+        public void printReparses() {
+            System.out.println();
+            System.out.println(cache);
+        }
+    }
+
+    @Benchmark
+    public void typing(Typing state) {
+        var version = ++state.version;
+        var typed = "x".repeat((int) (version % 10));
+        var contents = state.contents.substring(0, state.offset) + typed + state.contents.substring(state.offset);
+        var file = new SourceFileObject(state.file, contents, Instant.ofEpochMilli(version));
+        if (state.incremental) {
+            state.cache.get(file);
+        } else {
+            Parser.parseUncached(file);
+        }
+    }
+
     public static void main(String[] args) {
         var state = new CompilerState();
         while (true) {
@@ -17,9 +17,10 @@ public class BenchmarkPruner {
 
     @State(Scope.Benchmark)
     public static class CompilerState {
+        // compiler has to be created first, because file(true) uses it
+        public JavaCompilerService compiler = createCompiler();
         public SourceFileObject file = file(false);
         public SourceFileObject pruned = file(true);
-        public JavaCompilerService compiler = createCompiler();
 
         private SourceFileObject file(boolean prune) {
             var file = Paths.get("src/main/java/org/javacs/InferConfig.java").normalize();
@@ -57,5 +58,25 @@ public class BenchmarkPruner {
         state.compiler.compile(List.of(state.file)).close();
     }
 
+    // InferConfig refers to many other files in this project, which javac loads from the source path.
+    // A new SourceFileObject each time keeps CompileBatchPool from returning the last compile.
+
+    @Benchmark
+    public void compileWithHeadersOnly(CompilerState state) {
+        state.compiler.fileManager.headersOnly = true;
+        compileFresh(state);
+    }
+
+    @Benchmark
+    public void compileWithFullSources(CompilerState state) {
+        state.compiler.fileManager.headersOnly = false;
+        compileFresh(state);
+    }
+
+    private void compileFresh(CompilerState state) {
+        var file = new SourceFileObject(state.file.path, FileStore.contents(state.file.path), Instant.now());
+        state.compiler.compile(List.of(file)).close();
+    }
+
     private static final Logger LOG = Logger.getLogger("main");
 }
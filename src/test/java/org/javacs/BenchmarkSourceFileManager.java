@@ -0,0 +1,74 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkSourceFileManager {
+    private static final int PACKAGES = 500, FILES_PER_PACKAGE = 100;
+
+    /** A synthetic workspace of PACKAGES * FILES_PER_PACKAGE source files */
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        public Path workspaceRoot;
+        public SourceFileManager fileManager = new SourceFileManager();
+        public String[] classNames = new String[PACKAGES * FILES_PER_PACKAGE];
+        public int next;
+
+        @Setup
+        public void createWorkspace() throws IOException {
+            workspaceRoot = Files.createTempDirectory("benchmark-workspace");
+            LOG.info(String.format("Create %d files in %s...", classNames.length, workspaceRoot));
+            for (var p = 0; p < PACKAGES; p++) {
+                var packageName = "org.example.p" + p;
+                var dir = workspaceRoot.resolve(packageName.replace('.', '/'));
+                Files.createDirectories(dir);
+                for (var f = 0; f < FILES_PER_PACKAGE; f++) {
+                    var className = "Class" + f;
+                    var contents = String.format("package %s;\n\npublic class %s {}\n", packageName, className);
+                    Files.writeString(dir.resolve(className + ".java"), contents);
+                    classNames[p * FILES_PER_PACKAGE + f] = packageName + "." + className;
+                }
+            }
+            FileStore.setWorkspaceRoots(Set.of(workspaceRoot));
+        }
+
+        @TearDown
+        public void deleteWorkspace() throws IOException {
+            FileStore.setWorkspaceRoots(Set.of());
+            try (var walk = Files.walk(workspaceRoot)) {
+                for (var f : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(f);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public JavaFileObject getJavaFileForInput(WorkspaceState state) throws IOException {
+        // Walk through the classes with a stride, so consecutive lookups are in different packages
+        state.next = (state.next + 7919) % state.classNames.length;
+        var className = state.classNames[state.next];
+        return state.fileManager.getJavaFileForInput(
+                StandardLocation.SOURCE_PATH, className, JavaFileObject.Kind.SOURCE);
+    }
+
+    @Benchmark
+    public JavaFileObject getMissingJavaFileForInput(WorkspaceState state) throws IOException {
+        // javac asks for many classes that aren't in the workspace
+        return state.fileManager.getJavaFileForInput(
+                StandardLocation.SOURCE_PATH, "org.example.p0.Missing", JavaFileObject.Kind.SOURCE);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
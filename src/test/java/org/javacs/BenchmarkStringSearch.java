@@ -0,0 +1,94 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkStringSearch {
+    private static final int FILES = 5_000, METHODS_PER_FILE = 50;
+
+    /** A synthetic workspace of FILES source files, where only the last file mentions `needle` */
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        public Path workspaceRoot;
+        public List<Path> files = new ArrayList<>();
+
+        @Setup
+        public void createWorkspace() throws IOException {
+            workspaceRoot = Files.createTempDirectory("benchmark-search");
+            LOG.info(String.format("Create %d files in %s...", FILES, workspaceRoot));
+            var dir = workspaceRoot.resolve("org/example");
+            Files.createDirectories(dir);
+            for (var f = 0; f < FILES; f++) {
+                var contents = new StringBuilder();
+                contents.append("package org.example;\n\npublic class Class").append(f).append(" {\n");
+                for (var m = 0; m < METHODS_PER_FILE; m++) {
+                    contents.append("    void method").append(m).append("() { haystack(").append(m).append("); }\n");
+                }
+                if (f == FILES - 1) contents.append("    void needle() {}\n");
+                contents.append("}\n");
+                var file = dir.resolve("Class" + f + ".java");
+                Files.writeString(file, contents);
+                files.add(file);
+            }
+            FileStore.setWorkspaceRoots(Set.of(workspaceRoot));
+        }
+
+        @TearDown
+        public void deleteWorkspace() throws IOException {
+            FileStore.setWorkspaceRoots(Set.of());
+            try (var walk = Files.walk(workspaceRoot)) {
+                for (var f : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(f);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Path> containsWordOneAtATime(WorkspaceState state) {
+        var found = new ArrayList<Path>();
+        for (var f : state.files) {
+            if (StringSearch.containsWord(f, "needle")) found.add(f);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<Path> containsWordParallel(WorkspaceState state) {
+        return StringSearch.searchFiles(state.files, f -> StringSearch.containsWord(f, "needle"), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Path> containsWordMatchingOneAtATime(WorkspaceState state) {
+        var found = new ArrayList<Path>();
+        for (var f : state.files) {
+            if (StringSearch.containsWordMatching(f, "needle")) found.add(f);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<Path> containsWordMatchingParallel(WorkspaceState state) {
+        return StringSearch.searchFiles(
+                state.files, f -> StringSearch.containsWordMatching(f, "needle"), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Path> containsWordParallelFirst10(WorkspaceState state) {
+        // `haystack` is in every file, so the search stops as soon as 10 files are found
+        return StringSearch.searchFiles(state.files, f -> StringSearch.containsWord(f, "haystack"), 10);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,68 @@
+package org.javacs;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.javacs.lsp.*;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkTyping {
+
+    /** An open document with `lines` lines, which is edited one keystroke at a time */
+    @State(Scope.Thread)
+    public static class DocumentState {
+        @Param({"2000", "20000"})
+        public int lines;
+
+        public URI uri = Paths.get("/workspace/src/org/example/Large.java").toUri();
+        public int version, line, character;
+
+        @Setup
+        public void openDocument() {
+            var text = new StringBuilder("package org.example;\n\nclass Large {\n");
+            for (var i = 0; i < lines; i++) {
+                text.append("    int field").append(i).append(" = ").append(i).append(";\n");
+            }
+            text.append("}\n");
+            var document = new TextDocumentItem();
+            document.uri = uri;
+            document.text = text.toString();
+            document.version = version = 1;
+            FileStore.open(new DidOpenTextDocumentParams(document));
+            line = lines / 2;
+        }
+
+        @TearDown
+        public void closeDocument() {
+            var params = new DidCloseTextDocumentParams();
+            params.textDocument.uri = uri;
+            FileStore.close(params);
+        }
+    }
+
+    /** Type `foo();` and a newline in the middle of the file, then keep going on the next line */
+    private static final String TYPING = "foo();\n";
+
+    @Benchmark
+    public void typeOneCharacter(DocumentState state) {
+        var next = TYPING.charAt(state.character);
+        var params = new DidChangeTextDocumentParams();
+        params.textDocument.uri = state.uri;
+        params.textDocument.version = ++state.version;
+        var change = new TextDocumentContentChangeEvent();
+        var position = new Position(state.line, state.character);
+        change.range = new Range(position, position);
+        change.text = String.valueOf(next);
+        params.contentChanges.add(change);
+        FileStore.change(params);
+        if (next == '\n') {
+            state.line++;
+            state.character = 0;
+        } else {
+            state.character++;
+        }
+    }
+}
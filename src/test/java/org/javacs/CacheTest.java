@@ -0,0 +1,127 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheTest {
+    Path dir, a, b, c;
+
+    @Before
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("cache-test");
+        a = createFile("A");
+        b = createFile("B");
+        c = createFile("C");
+    }
+
+    @After
+    public void deleteFiles() throws IOException {
+        for (var f : new Path[] {a, b, c, dir}) {
+            Files.delete(f);
+        }
+    }
+
+    private Path createFile(String name) throws IOException {
+        var file = dir.resolve(name + ".java");
+        Files.writeString(file, "class " + name + " {}");
+        // Pretend the file was written a while ago, so entries loaded now are fresh
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(60)));
+        return file;
+    }
+
+    @Test
+    public void countHitsAndMisses() {
+        var cache = new Cache<String, Boolean>("test", 10);
+        assertTrue(cache.needs(a, "x"));
+        cache.load(a, "x", true);
+        assertFalse(cache.needs(a, "x"));
+        assertThat(cache.get(a, "x"), equalTo(true));
+        assertThat(cache.hits(), equalTo(1L));
+        assertThat(cache.misses(), equalTo(1L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedFile() {
+        var cache = new Cache<String, Boolean>("test", 2);
+        cache.load(a, "x", true);
+        cache.load(b, "x", true);
+        // Touch a, so b is the least recently used
+        cache.needs(a, "x");
+        cache.load(c, "x", true);
+        assertFalse(cache.needs(a, "x"));
+        assertTrue(cache.needs(b, "x"));
+        assertFalse(cache.needs(c, "x"));
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.evictions(), equalTo(1L));
+    }
+
+    @Test
+    public void modifyingFileEvictsAllItsEntries() throws IOException {
+        var cache = new Cache<String, Boolean>("test", 10);
+        cache.load(a, "x", true);
+        cache.load(a, "y", false);
+        cache.load(b, "x", true);
+        Files.setLastModifiedTime(a, FileTime.from(Instant.now().plusSeconds(60)));
+        FileStore.externalChange(a);
+        assertTrue(cache.needs(a, "x"));
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.evictions(), equalTo(2L));
+        assertFalse(cache.needs(b, "x"));
+    }
+
+    @Test
+    public void computeIfAbsentLoadsOnce() {
+        var cache = new Cache<String, Boolean>("test", 10);
+        var loads = new int[1];
+        for (var i = 0; i < 3; i++) {
+            var value =
+                    cache.computeIfAbsent(
+                            a,
+                            "x",
+                            () -> {
+                                loads[0]++;
+                                return true;
+                            });
+            assertThat(value, equalTo(true));
+        }
+        assertThat(loads[0], equalTo(1));
+        assertThat(cache.hits(), equalTo(2L));
+        assertThat(cache.misses(), equalTo(1L));
+    }
+
+    @Test
+    public void computeIfAbsentWhileOtherThreadsEvict() throws InterruptedException {
+        var cache = new Cache<String, Boolean>("test", 1);
+        var files = List.of(a, b, c);
+        var failures = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (var t = 0; t < 4; t++) {
+            var thread =
+                    new Thread(
+                            () -> {
+                                for (var i = 0; i < 10_000; i++) {
+                                    var file = files.get(i % files.size());
+                                    if (!cache.computeIfAbsent(file, "x", () -> true)) failures.incrementAndGet();
+                                }
+                            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertThat(failures.get(), equalTo(0));
+    }
+}
@@ -1,8 +1,13 @@
 package org.javacs;
 
-import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,4 +24,49 @@ public class FileStoreTest {
         var file = FindResource.path("/org/javacs/example/Goto.java");
         assertThat(FileStore.suggestedPackageName(file), equalTo("org.javacs.example"));
     }
+
+    @Test
+    public void listPackage() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        assertThat(FileStore.list("org.javacs.example"), hasItem(file));
+        assertThat(FileStore.file("org.javacs.example", "Goto"), equalTo(Optional.of(file)));
+        assertThat(FileStore.file("org.javacs.example", "NoSuchClass"), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void createAndDeleteUpdatesPackageIndex() throws IOException {
+        var dir = FindResource.path("/org/javacs/example/Goto.java").getParent();
+        var file = dir.resolve("CreatedByFileStoreTest.java");
+        Files.writeString(file, "package org.javacs.example;\n\nclass CreatedByFileStoreTest {}\n");
+        try {
+            FileStore.externalCreate(file);
+            assertThat(FileStore.list("org.javacs.example"), hasItem(file));
+            assertThat(FileStore.file("org.javacs.example", "CreatedByFileStoreTest"), equalTo(Optional.of(file)));
+            // Moving the class to another package moves it in the index
+            Files.writeString(file, "package org.javacs.other;\n\nclass CreatedByFileStoreTest {}\n");
+            FileStore.externalChange(file);
+            assertThat(FileStore.list("org.javacs.example"), not(hasItem(file)));
+            assertThat(FileStore.list("org.javacs.other"), hasItem(file));
+            assertThat(FileStore.file("org.javacs.other", "CreatedByFileStoreTest"), equalTo(Optional.of(file)));
+        } finally {
+            Files.delete(file);
+        }
+        FileStore.externalDelete(file);
+        assertThat(FileStore.list("org.javacs.other"), not(hasItem(file)));
+        assertThat(FileStore.file("org.javacs.other", "CreatedByFileStoreTest"), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        var root = Files.createTempDirectory("snapshot-test");
+        var file = root.resolve("org/example/Foo.java");
+        var modified = Instant.ofEpochSecond(1234, 5678);
+        SourceSnapshot.save(root, Map.of(file, new SourceSnapshot.Entry(modified, 42, "org.example")));
+        var loaded = SourceSnapshot.load(root);
+        assertThat(loaded.keySet(), contains(file));
+        assertThat(loaded.get(file).matches(modified, 42), equalTo(true));
+        assertThat(loaded.get(file).packageName, equalTo("org.example"));
+        Files.delete(CacheDirectory.forWorkspace(root, "sources"));
+        Files.delete(root);
+    }
 }
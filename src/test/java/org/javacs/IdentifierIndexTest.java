@@ -0,0 +1,88 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdentifierIndexTest {
+
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
+    @Test
+    public void identifiers() {
+        var found = IdentifierIndex.identifiers("int x1 = 0x1F + foo_bar.$baz; // é");
+        assertThat(found, containsInAnyOrder("int", "x1", "foo_bar", "$baz", "é"));
+    }
+
+    @Test
+    public void containing() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        assertThat(IdentifierIndex.containing("Goto"), hasItem(file));
+        assertThat(IdentifierIndex.containing("org.javacs.example"), hasItem(file));
+        assertThat(IdentifierIndex.containing("NoSuchIdentifierAnywhere"), empty());
+        assertThat(IdentifierIndex.contains(file, "Goto"), equalTo(true));
+    }
+
+    @Test
+    public void matching() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        assertThat(IdentifierIndex.matching("goto"), hasItem(file));
+    }
+
+    @Test
+    public void changesAreReindexed() throws IOException {
+        var dir = FindResource.path("/org/javacs/example/Goto.java").getParent();
+        var file = dir.resolve("CreatedByIdentifierIndexTest.java");
+        Files.writeString(file, "package org.javacs.example;\n\nclass CreatedByIdentifierIndexTest { int before; }\n");
+        try {
+            FileStore.externalCreate(file);
+            assertThat(IdentifierIndex.containing("before"), hasItem(file));
+            Files.writeString(file, "package org.javacs.example;\n\nclass CreatedByIdentifierIndexTest { int after; }\n");
+            // Make sure the modified time changes, even if the file system only has coarse timestamps
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(1)));
+            FileStore.externalChange(file);
+            assertThat(IdentifierIndex.containing("before"), not(hasItem(file)));
+            assertThat(IdentifierIndex.containing("after"), hasItem(file));
+        } finally {
+            Files.delete(file);
+        }
+        FileStore.externalDelete(file);
+        assertThat(IdentifierIndex.containing("after"), not(hasItem(file)));
+    }
+
+    @Test
+    public void forgetIdentifiersThatDisappear() throws IOException {
+        var dir = FindResource.path("/org/javacs/example/Goto.java").getParent();
+        var file = dir.resolve("TypedByIdentifierIndexTest.java");
+        Files.writeString(file, "package org.javacs.example;\n\nclass TypedByIdentifierIndexTest { int x; }\n");
+        try {
+            FileStore.externalCreate(file);
+            var before = IdentifierIndex.vocabularySize();
+            // Simulate typing a long identifier one character at a time
+            var word = "partiallyTypedIdentifier";
+            for (var i = 1; i <= word.length(); i++) {
+                var field = word.substring(0, i);
+                var contents = "package org.javacs.example;\n\nclass TypedByIdentifierIndexTest { int %s; }\n";
+                Files.writeString(file, String.format(contents, field));
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(i)));
+                FileStore.externalChange(file);
+                assertThat(IdentifierIndex.containing(field), hasItem(file));
+            }
+            assertThat(IdentifierIndex.vocabularySize(), lessThanOrEqualTo(before + 1));
+        } finally {
+            Files.delete(file);
+        }
+        FileStore.externalDelete(file);
+        assertThat(IdentifierIndex.containing("partiallyTypedIdentifier"), not(hasItem(file)));
+    }
+}
@@ -0,0 +1,148 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import com.sun.source.tree.*;
+import com.sun.source.util.TreeScanner;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import org.junit.Test;
+
+public class IncrementalParseTest {
+    static final String BEFORE =
+            "package example;\n"
+                    + "\n"
+                    + "/** A class */\n"
+                    + "class Example {\n"
+                    + "    int field = 1;\n"
+                    + "\n"
+                    + "    { field = 2; }\n"
+                    + "\n"
+                    + "    void first() {\n"
+                    + "        var x = 1;\n"
+                    + "    }\n"
+                    + "\n"
+                    + "    /** The second method */\n"
+                    + "    String second(int y) {\n"
+                    + "        return \"y = \" + y;\n"
+                    + "    }\n"
+                    + "\n"
+                    + "    static { System.out.println(\"static\"); }\n"
+                    + "\n"
+                    + "    @Deprecated\n"
+                    + "    <T extends Comparable<T>> List<T> generic(T[] array, int... rest) throws Exception {\n"
+                    + "        var list = new ArrayList<T>();\n"
+                    + "        list.forEach(t -> System.out.println(t));\n"
+                    + "        list.sort(Comparable::compareTo);\n"
+                    + "        try (var in = new java.io.StringReader(\"\")) { in.read(); }\n"
+                    + "        switch (rest.length) { case 0: break; default: return null; }\n"
+                    + "        new Runnable() { public void run() { int[][] a = new int[1][]; } }.run();\n"
+                    + "        return rest.length > 0 ? list : List.of();\n"
+                    + "    }\n"
+                    + "\n"
+                    + "    enum Color { RED, GREEN(1); Color() {} Color(int i) {} }\n"
+                    + "}\n";
+
+    private static SourceFileObject file(String contents) {
+        return new SourceFileObject(Paths.get("/example/Example.java"), contents, Instant.now());
+    }
+
+    private static Parser edit(String find, String replace) {
+        var previous = Parser.parseUncached(file(BEFORE));
+        var after = BEFORE.replace(find, replace);
+        assertThat(after, not(equalTo(BEFORE)));
+        return IncrementalParse.reparse(previous, file(after));
+    }
+
+    /** Every node in parse, with its range, line and doc comment */
+    private static List<String> describe(Parser parse) {
+        var pos = parse.trees.getSourcePositions();
+        var lines = parse.root.getLineMap();
+        var found = new ArrayList<String>();
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void scan(Tree tree, Void __) {
+                if (tree == null) return null;
+                var start = pos.getStartPosition(parse.root, tree);
+                var end = pos.getEndPosition(parse.root, tree);
+                var line = start == -1 ? -1 : lines.getLineNumber(start);
+                var doc = parse.trees.getDocComment(parse.trees.getPath(parse.root, tree));
+                found.add(String.format("%s %d-%d line %d %s", tree.getKind(), start, end, line, doc));
+                return super.scan(tree, null);
+            }
+        }.scan(parse.root, null);
+        return found;
+    }
+
+    private static void assertSameAsFullParse(Parser reparse) {
+        assertThat(reparse, notNullValue());
+        var full = Parser.parseUncached(file(reparse.contents));
+        assertThat(describe(reparse), contains(describe(full).toArray()));
+    }
+
+    @Test
+    public void addStatementToMethod() {
+        assertSameAsFullParse(edit("var x = 1;", "var x = 1;\n        var z = x + 1;"));
+    }
+
+    @Test
+    public void removeStatementFromMethod() {
+        assertSameAsFullParse(edit("        var x = 1;\n", ""));
+    }
+
+    @Test
+    public void editInitializer() {
+        assertSameAsFullParse(edit("field = 2;", "field = 3 * field;"));
+    }
+
+    @Test
+    public void editLastMethod() {
+        assertSameAsFullParse(edit("return \"y = \" + y;", "return String.valueOf(y);"));
+    }
+
+    @Test
+    public void declareSeveralVariables() {
+        assertSameAsFullParse(edit("var x = 1;", "final int x = 1, z = 2, w[] = {x};"));
+    }
+
+    @Test
+    public void incompleteStatement() {
+        assertSameAsFullParse(edit("var x = 1;", "var x = 1;\n        x."));
+    }
+
+    @Test
+    public void editAnonymousClass() {
+        assertSameAsFullParse(edit("int[][] a = new int[1][];", "int[][] a = null;"));
+    }
+
+    @Test
+    public void previousParseIsUnchanged() {
+        var previous = Parser.parseUncached(file(BEFORE));
+        var expected = describe(previous);
+        var reparse = IncrementalParse.reparse(previous, file(BEFORE.replace("var x = 1;", "var x = 100;")));
+        assertThat(reparse, notNullValue());
+        assertThat(describe(previous), contains(expected.toArray()));
+    }
+
+    @Test
+    public void editSignatureIsParsedAgain() {
+        assertThat(edit("int y", "long y"), nullValue());
+    }
+
+    @Test
+    public void editAcrossMethodsIsParsedAgain() {
+        assertThat(edit("1;\n    }\n\n    /**", "1;\n    /**"), nullValue());
+    }
+
+    @Test
+    public void unclosedCommentIsParsedAgain() {
+        assertThat(edit("var x = 1;", "/* var x = 1;"), nullValue());
+    }
+
+    @Test
+    public void extraBraceIsParsedAgain() {
+        assertThat(edit("var x = 1;", "if (true) { var x = 1;"), nullValue());
+    }
+}
@@ -3,8 +3,12 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
 import java.util.Set;
 import org.junit.Test;
 
@@ -94,4 +98,50 @@ public class InferConfigTest {
             assertThat(path, equalTo(Paths.get(expect)));
         }
     }
+
+    @Test
+    public void findModuleTree() throws IOException {
+        var root = Files.createTempDirectory("module-tree");
+        var pom = root.resolve("pom.xml");
+        var child = root.resolve("child").resolve("pom.xml");
+        var grandchild = root.resolve("child").resolve("grandchild.xml");
+        Files.createDirectories(child.getParent());
+        Files.writeString(pom, "<project><modules><module>child</module><module>missing</module></modules></project>");
+        Files.writeString(child, "<project><modules><module> grandchild.xml </module></modules></project>");
+        Files.writeString(grandchild, "<project></project>");
+        try {
+            assertThat(InferConfig.moduleTree(pom), contains(pom, child, grandchild));
+        } finally {
+            for (var f : List.of(grandchild, child, child.getParent(), pom, root)) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    @Test
+    public void reuseSavedDependencies() throws IOException {
+        var dir = Files.createTempDirectory("saved-dependencies");
+        var pom = dir.resolve("pom.xml");
+        var jar = dir.resolve("dependency.jar");
+        var saved = dir.resolve("maven-dependency-list");
+        Files.writeString(pom, "<project></project>");
+        Files.writeString(jar, "jar");
+        try {
+            var key = InferConfig.mvnCacheKey(List.of(pom), "dependency:list");
+            InferConfig.saveMvnDependencies(saved, key, Set.of(jar));
+            assertThat(InferConfig.loadMvnDependencies(saved, key), contains(jar));
+            // Changing a POM changes the key
+            Files.writeString(pom, "<project><dependencies></dependencies></project>");
+            var changed = InferConfig.mvnCacheKey(List.of(pom), "dependency:list");
+            assertThat(changed, not(equalTo(key)));
+            assertThat(InferConfig.loadMvnDependencies(saved, changed), nullValue());
+            // Replacing a jar in the local repository invalidates the saved dependencies
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(0));
+            assertThat(InferConfig.loadMvnDependencies(saved, key), nullValue());
+        } finally {
+            for (var f : List.of(saved, jar, pom, dir)) {
+                Files.deleteIfExists(f);
+            }
+        }
+    }
 }
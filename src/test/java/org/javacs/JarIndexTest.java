@@ -0,0 +1,117 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JarIndexTest {
+    Path dir, main, dependency;
+
+    @Before
+    public void createJars() throws IOException {
+        dir = Files.createTempDirectory("jar-index");
+        main = dir.resolve("main.jar");
+        dependency = dir.resolve("lib").resolve("dependency.jar");
+        Files.createDirectories(dependency.getParent());
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib/dependency.jar");
+        write(
+                main,
+                manifest,
+                "com/example/Main.class",
+                "com/example/Main$Inner.class",
+                "com/example/package-info.class",
+                "module-info.class",
+                "META-INF/versions/9/com/example/Main.class",
+                "com/example/main.properties");
+        write(dependency, null, "com/example/dependency/Dependency.class");
+    }
+
+    private void write(Path jar, Manifest manifest, String... entries) throws IOException {
+        var stream = Files.newOutputStream(jar);
+        try (var out = manifest == null ? new JarOutputStream(stream) : new JarOutputStream(stream, manifest)) {
+            for (var e : entries) {
+                out.putNextEntry(new JarEntry(e));
+                out.write(new byte[] {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe});
+                out.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void deleteJars() throws IOException {
+        for (var f : new Path[] {dependency, dependency.getParent(), main, dir}) {
+            Files.deleteIfExists(f);
+        }
+    }
+
+    @Test
+    public void listTopLevelClasses() {
+        var index = JarIndex.of(main);
+        assertThat(index.classes, contains("com.example.Main"));
+        assertThat(index.classPath, contains(dependency));
+    }
+
+    @Test
+    public void followManifestClassPath() {
+        var classes = ScanClassPath.classPathTopLevelClasses(Set.of(main));
+        assertThat(classes, containsInAnyOrder("com.example.Main", "com.example.dependency.Dependency"));
+    }
+
+    @Test
+    public void storedManifest() throws IOException {
+        var stored = dir.resolve("stored.jar");
+        var manifest = "Manifest-Version: 1.0\nClass-Path: lib/dependency.jar\n".getBytes();
+        try (var out = new JarOutputStream(Files.newOutputStream(stored))) {
+            var entry = new ZipEntry("META-INF/MANIFEST.MF");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(manifest.length);
+            var crc = new CRC32();
+            crc.update(manifest);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(manifest);
+            out.closeEntry();
+        }
+        try {
+            assertThat(JarIndex.of(stored).classPath, contains(dependency));
+        } finally {
+            Files.delete(stored);
+        }
+    }
+
+    @Test
+    public void notAJar() throws IOException {
+        var text = dir.resolve("text.jar");
+        Files.writeString(text, "not a zip file");
+        try {
+            assertThat(JarIndex.of(text).classes, empty());
+        } finally {
+            Files.delete(text);
+        }
+    }
+
+    @Test
+    public void changedJarIsScannedAgain() throws IOException {
+        assertThat(JarIndex.of(dependency).classes, contains("com.example.dependency.Dependency"));
+        write(dependency, null, "com/example/dependency/Changed.class");
+        Files.setLastModifiedTime(dependency, FileTime.from(Instant.now().plusSeconds(1)));
+        assertThat(JarIndex.of(dependency).classes, contains("com.example.dependency.Changed"));
+    }
+}
@@ -3,8 +3,12 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.util.*;
+import javax.lang.model.util.Types;
 import org.junit.*;
 
 public class JavaCompilerServiceTest {
@@ -23,4 +27,184 @@ public class JavaCompilerServiceTest {
     public void setWorkspaceRoot() {
         FileStore.setWorkspaceRoots(Set.of(simpleProjectSrc()));
     }
+
+    @Test
+    public void alternatingFilesReuseCompiles() {
+        var a = simpleProjectSrc().resolve("GotoDefinition.java");
+        var b = simpleProjectSrc().resolve("LocalMethodDoc.java");
+        for (var i = 0; i < 3; i++) {
+            try (var task = compiler.compile(a)) {
+                assertThat(task.root().getSourceFile().getName(), endsWith("GotoDefinition.java"));
+            }
+            try (var task = compiler.compile(b)) {
+                assertThat(task.root().getSourceFile().getName(), endsWith("LocalMethodDoc.java"));
+            }
+        }
+        assertThat(compiler.batches.misses(), equalTo(2L));
+        assertThat(compiler.batches.hits(), equalTo(4L));
+    }
+
+    @Test
+    public void compileWhileAnotherCompileIsOpen() {
+        var a = simpleProjectSrc().resolve("GotoDefinition.java");
+        var b = simpleProjectSrc().resolve("LocalMethodDoc.java");
+        try (var outer = compiler.compile(a)) {
+            try (var inner = compiler.compile(b)) {
+                assertThat(inner.root().getSourceFile().getName(), endsWith("LocalMethodDoc.java"));
+            }
+            assertThat(outer.root().getSourceFile().getName(), endsWith("GotoDefinition.java"));
+        }
+        assertThat(compiler.compiler.contexts(), equalTo(2));
+    }
+
+    @Test
+    public void cachedClassFilesReplaceImplicitSources() throws IOException {
+        var dir = Files.createTempDirectory("class-file-cache-test");
+        var main = dir.resolve("Main.java");
+        var dep = dir.resolve("Dependency.java");
+        Files.writeString(main, "class Main { int test() { return new Dependency().value(); } }");
+        Files.writeString(dep, "class Dependency { int value() { return 1; } }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, empty());
+        }
+        compiler.cacheClassFiles();
+        assertTrue(compiler.fileManager.classFiles.has(dep));
+        // Main still compiles, now that Dependency is read from a class file
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, empty());
+        }
+        // Editing Dependency invalidates its class files
+        Files.writeString(dep, "class Dependency { int value() { return 2; } }");
+        Files.setLastModifiedTime(dep, FileTime.from(Instant.now().plusSeconds(60)));
+        FileStore.externalChange(dep);
+        assertFalse(compiler.fileManager.classFiles.has(dep));
+    }
+
+    @Test
+    public void changingConstantInvalidatesClassFilesThatInlineIt() throws IOException {
+        var dir = Files.createTempDirectory("class-file-cache-test");
+        var main = dir.resolve("Main.java");
+        var a = dir.resolve("InlinesX.java");
+        var b = dir.resolve("InlinesY.java");
+        var c = dir.resolve("DeclaresZ.java");
+        Files.writeString(main, "class Main { int test() { return InlinesX.X; } }");
+        Files.writeString(a, "class InlinesX { static final int X = InlinesY.Y + 1; }");
+        Files.writeString(b, "class InlinesY { static final int Y = DeclaresZ.Z; }");
+        Files.writeString(c, "class DeclaresZ { static final int Z = 1; }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, empty());
+        }
+        compiler.cacheClassFiles();
+        assertTrue(compiler.fileManager.classFiles.has(a));
+        assertTrue(compiler.fileManager.classFiles.has(b));
+        assertTrue(compiler.fileManager.classFiles.has(c));
+        // The declarations of InlinesY don't change, but the value of InlinesY.Y does, and InlinesX.class inlines it
+        Files.writeString(c, "class DeclaresZ { static final int Z = 2; }");
+        Files.setLastModifiedTime(c, FileTime.from(Instant.now().plusSeconds(60)));
+        FileStore.externalChange(c);
+        assertFalse(compiler.fileManager.classFiles.has(a));
+        assertFalse(compiler.fileManager.classFiles.has(b));
+        assertFalse(compiler.fileManager.classFiles.has(c));
+    }
+
+    @Test
+    public void compileWithPackagePrivateClassInAnotherFile() throws IOException {
+        var dir = Files.createTempDirectory("package-private-test");
+        var main = dir.resolve("Main.java");
+        Files.writeString(main, "class Main { int test() { return new Helper().value(); } }");
+        Files.writeString(dir.resolve("Util.java"), "class Util {}\nclass Helper { int value() { return 1; } }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, empty());
+        }
+    }
+
+    @Test
+    public void compileWithPackagePrivateClassInImplicitlyLoadedFile() throws IOException {
+        var dir = Files.createTempDirectory("package-private-test");
+        var main = dir.resolve("Main.java");
+        // Main doesn't mention Wrapped, but Indirect.java, which javac loads on its own, does
+        Files.writeString(main, "class Main { int test() { return new Indirect().wrapped().value(); } }");
+        Files.writeString(
+                dir.resolve("Indirect.java"), "class Indirect { Wrapped wrapped() { return new Wrapped(); } }");
+        Files.writeString(dir.resolve("Wrapper.java"), "class Wrapper {}\nclass Wrapped { int value() { return 1; } }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, empty());
+        }
+    }
+
+    @Test
+    public void editingDependencyRecompiles() throws IOException {
+        var dir = Files.createTempDirectory("compile-batch-pool-test");
+        var main = dir.resolve("UsesGreeting.java");
+        var dependency = dir.resolve("Greeting.java");
+        Files.writeString(main, "class UsesGreeting { String test() { return Greeting.TEXT; } }");
+        Files.writeString(dependency, "class Greeting { static final String TEXT = \"hello\"; }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, empty());
+        }
+        // UsesGreeting.java is unchanged, but the compile of it saw the old Greeting
+        Files.writeString(dependency, "class Greeting { static final int TEXT = 1; }");
+        Files.setLastModifiedTime(dependency, FileTime.from(Instant.now().plusSeconds(60)));
+        FileStore.externalChange(dependency);
+        try (var task = compiler.compile(main)) {
+            assertThat(task.diagnostics, hasItem(hasToString(containsString("incompatible types"))));
+        }
+        assertThat(compiler.batches.misses(), equalTo(2L));
+        assertThat(compiler.batches.hits(), equalTo(0L));
+    }
+
+    @Test
+    public void upgradeCachedCompileToFlowAnalysis() throws IOException {
+        var dir = Files.createTempDirectory("analysis-depth-test");
+        var file = dir.resolve("MissingReturn.java");
+        Files.writeString(file, "class MissingReturn { int test() { } }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        // Missing return statements are found by flow analysis
+        try (var task = compiler.compile(AnalysisDepth.ATTRIBUTE, file)) {
+            assertThat(task.diagnostics, empty());
+        }
+        try (var task = compiler.compile(AnalysisDepth.FULL, file)) {
+            assertThat(task.diagnostics, hasItem(hasToString(containsString("missing return statement"))));
+        }
+        assertThat(compiler.batches.misses(), equalTo(1L));
+        assertThat(compiler.batches.hits(), equalTo(1L));
+    }
+
+    @Test
+    public void stopAttributingFileWithErrorStorm() throws IOException {
+        var dir = Files.createTempDirectory("error-storm-test");
+        var storm = dir.resolve("Storm.java");
+        var text = new StringBuilder("class Storm {\n");
+        for (var i = 0; i < 300; i++) {
+            text.append("    void method").append(i).append("() { missing").append(i).append("(); }\n");
+        }
+        text.append("}\nclass AfterStorm { void test() { alsoMissing(); } }\n");
+        Files.writeString(storm, text.toString());
+        var other = dir.resolve("Other.java");
+        Files.writeString(other, "class Other { void test() { otherMissing(); } }");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        Types stormTypes;
+        try (var task = compiler.compile(storm, other)) {
+            stormTypes = task.task.getTypes();
+            var errors = new ArrayList<String>();
+            for (var d : task.diagnostics) {
+                errors.add(d.getSource().getName() + ": " + d.getMessage(null));
+            }
+            assertThat(errors, hasSize(CompileBatch.MAX_ERRORS_PER_FILE + 1));
+            assertThat(errors, hasItem(containsString("otherMissing")));
+            assertThat(errors, not(hasItem(containsString("alsoMissing"))));
+            assertThat(task.partial, contains(storm.toUri()));
+        }
+        // The storm unwound Attr halfway through a class, so the next compile gets a new javac context
+        Files.writeString(other, "class Other { }");
+        FileStore.externalChange(other);
+        try (var task = compiler.compile(storm, other)) {
+            assertThat(task.task.getTypes(), not(sameInstance(stormTypes)));
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdkIndexTest {
+    Path dir, file;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("jdk-index");
+        file = dir.resolve("classes");
+    }
+
+    @After
+    public void deleteDir() throws IOException {
+        Files.deleteIfExists(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void moduleOfClass() {
+        assertThat(JdkIndex.moduleOf("java.util.List"), equalTo("java.base"));
+        assertThat(JdkIndex.moduleOf("javax.tools.JavaCompiler"), equalTo("java.compiler"));
+        assertThat(JdkIndex.moduleOf("java.sql.Connection"), equalTo("java.sql"));
+    }
+
+    @Test
+    public void notInJdk() {
+        assertThat(JdkIndex.moduleOf("org.javacs.JdkIndex"), nullValue());
+        assertThat(JdkIndex.moduleOf("java.util.Map.Entry"), nullValue());
+        assertThat(JdkIndex.classes(), not(hasItem(endsWith("module-info"))));
+        assertThat(JdkIndex.classes(), not(hasItem(endsWith("package-info"))));
+    }
+
+    @Test
+    public void savedIndexIsReused() throws IOException {
+        var built = JdkIndex.open(file);
+        var modified = Files.getLastModifiedTime(file);
+        var reopened = JdkIndex.open(file);
+        assertThat(Files.getLastModifiedTime(file), equalTo(modified));
+        assertThat(reopened.find("java.util.ArrayList"), equalTo("java.base"));
+        assertThat(built.find("java.util.ArrayList"), equalTo("java.base"));
+    }
+
+    @Test
+    public void corruptIndexIsRebuilt() throws IOException {
+        Files.write(file, new byte[] {0, 0, 0, 1, 0, 5, 'b', 'o', 'g', 'u', 's'});
+        var index = JdkIndex.open(file);
+        assertThat(index.find("java.util.List"), equalTo("java.base"));
+        assertThat(Files.size(file), greaterThan(1000L));
+    }
+}
@@ -0,0 +1,27 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PackagePrivateIndexTest {
+    @Test
+    public void findTopLevelClasses() {
+        var text =
+                "package p;\n"
+                        + "import java.util.List;\n"
+                        + "// class InLineComment\n"
+                        + "/* interface InBlockComment */\n"
+                        + "@SuppressWarnings(\"class InAnnotation\")\n"
+                        + "public class Main {\n"
+                        + "    class Inner {}\n"
+                        + "    String s = \"}\";\n"
+                        + "    char c = '}';\n"
+                        + "}\n"
+                        + "interface Helper {}\n"
+                        + "enum Kind { A, B }\n"
+                        + "@interface Marker {}\n";
+        assertThat(PackagePrivateIndex.topLevelClasses(text), contains("Main", "Helper", "Kind", "Marker"));
+    }
+}
@@ -0,0 +1,111 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParseCacheTest {
+    Path dir, a, b;
+
+    @Before
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("parse-cache-test");
+        a = createFile("A");
+        b = createFile("B");
+    }
+
+    @After
+    public void deleteFiles() throws IOException {
+        for (var f : new Path[] {a, b, dir}) {
+            Files.delete(f);
+        }
+    }
+
+    private Path createFile(String name) throws IOException {
+        var file = dir.resolve(name + ".java");
+        Files.writeString(file, "class " + name + " {}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(60)));
+        FileStore.externalChange(file);
+        return file;
+    }
+
+    @Test
+    public void alternatingFilesAreParsedOnce() {
+        var cache = new ParseCache(10, Long.MAX_VALUE);
+        for (var i = 0; i < 3; i++) {
+            cache.get(new SourceFileObject(a));
+            cache.get(new SourceFileObject(b));
+        }
+        assertThat(cache.misses(), equalTo(2L));
+        assertThat(cache.hits(), equalTo(4L));
+    }
+
+    @Test
+    public void newVersionIsParsedAgain() throws IOException {
+        var cache = new ParseCache(10, Long.MAX_VALUE);
+        var first = cache.get(new SourceFileObject(a));
+        Files.writeString(a, "class A { void test() {} }");
+        Files.setLastModifiedTime(a, FileTime.from(Instant.now()));
+        FileStore.externalChange(a);
+        var second = cache.get(new SourceFileObject(a));
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.contents, containsString("test"));
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    public void editedContentsAreParsedAgain() {
+        var cache = new ParseCache(10, Long.MAX_VALUE);
+        var modified = Instant.now();
+        var first = cache.get(new SourceFileObject(a, "class A {}", modified));
+        var second = cache.get(new SourceFileObject(a, "class A { int x; }", modified));
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    @Test
+    public void editInsideMethodIsReparsedIncrementally() {
+        var cache = new ParseCache(10, Long.MAX_VALUE);
+        var modified = Instant.now();
+        cache.get(new SourceFileObject(a, "class A { void test() { int x; } }", modified));
+        var second = cache.get(new SourceFileObject(a, "class A { void test() { int x, y; } }", modified));
+        assertThat(second.contents, containsString("x, y"));
+        assertThat(cache.reparses(), equalTo(1L));
+        cache.get(new SourceFileObject(a, "class A { void test() { int x, y; } int z; }", modified));
+        assertThat(cache.reparses(), equalTo(1L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedFile() {
+        var cache = new ParseCache(1, Long.MAX_VALUE);
+        cache.get(new SourceFileObject(a));
+        cache.get(new SourceFileObject(b));
+        cache.get(new SourceFileObject(a));
+        assertThat(cache.misses(), equalTo(3L));
+        assertThat(cache.evictions(), equalTo(2L));
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    public void budgetCountsTheSizeOfEachFile() {
+        // "class A {}" is 10 characters, so two small files fit in a few KB
+        var cache = new ParseCache(10, 4 * 1024);
+        cache.get(new SourceFileObject(a));
+        cache.get(new SourceFileObject(b));
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.evictions(), equalTo(0L));
+        // ...but not in 100 bytes
+        var small = new ParseCache(10, 100);
+        small.get(new SourceFileObject(a));
+        small.get(new SourceFileObject(b));
+        assertThat(small.size(), equalTo(1));
+        assertThat(small.evictions(), equalTo(1L));
+    }
+}
@@ -0,0 +1,92 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import com.sun.source.tree.*;
+import com.sun.source.util.DocTrees;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+
+public class ParserPoolTest {
+    private static SourceFileObject file(String name, String contents) {
+        return new SourceFileObject(Paths.get("/example/" + name + ".java"), contents, Instant.now());
+    }
+
+    private static String className(Parser parse) {
+        return ((ClassTree) parse.root.getTypeDecls().get(0)).getSimpleName().toString();
+    }
+
+    @Test
+    public void contextsAreReused() {
+        var pool = new ParserPool(new SourceFileManager(), 2);
+        for (var i = 0; i < 5; i++) {
+            var contents = "class A" + i + " {}";
+            var parse = pool.parse(file("A" + i, contents), contents);
+            assertThat(className(parse), equalTo("A" + i));
+        }
+        assertThat(pool.created(), equalTo(1));
+    }
+
+    @Test
+    public void treeHasPositionsAndSourceFile() {
+        var contents = "package example;\n\nclass Example {\n    int field;\n    void method() { field++; }\n}\n";
+        var parse = new ParserPool(new SourceFileManager(), 1).parse(file("Example", contents), contents);
+        var pos = parse.trees.getSourcePositions();
+        var cls = (ClassTree) parse.root.getTypeDecls().get(0);
+        var method = cls.getMembers().get(1);
+        assertThat(parse.root.getPackageName().toString(), equalTo("example"));
+        assertThat(parse.root.getLineMap().getLineNumber(pos.getStartPosition(parse.root, method)), equalTo(5L));
+        var methodEnd = contents.indexOf("}\n}") + 1;
+        assertThat(pos.getEndPosition(parse.root, method), equalTo((long) methodEnd));
+        assertThat(parse.root.getSourceFile().toUri().getPath(), equalTo("/example/Example.java"));
+    }
+
+    @Test
+    public void docCommentsAreParsedLazily() {
+        var contents = "/** A {@code class} */ class Example {}";
+        var parse = new ParserPool(new SourceFileManager(), 1).parse(file("Example", contents), contents);
+        var cls = parse.root.getTypeDecls().get(0);
+        var path = parse.trees.getPath(parse.root, cls);
+        var doc = DocTrees.instance(parse.task).getDocCommentTree(path);
+        assertThat(doc, hasToString(containsString("{@code class}")));
+    }
+
+    @Test
+    public void parseErrorsAreIgnored() {
+        var contents = "class Broken { void method() { int x = ; } ";
+        var parse = new ParserPool(new SourceFileManager(), 1).parse(file("Broken", contents), contents);
+        assertThat(className(parse), equalTo("Broken"));
+    }
+
+    /** The name and doc comment of the first class in parse */
+    private static String describe(Parser parse) {
+        var path = parse.trees.getPath(parse.root, parse.root.getTypeDecls().get(0));
+        var doc = DocTrees.instance(parse.task).getDocCommentTree(path);
+        return className(parse) + " " + doc;
+    }
+
+    @Test
+    public void concurrentParsesUseDifferentContexts() throws Exception {
+        var pool = new ParserPool(new SourceFileManager(), 4);
+        var threads = Executors.newFixedThreadPool(4);
+        try {
+            var futures = new ArrayList<Future<String>>();
+            for (var i = 0; i < 100; i++) {
+                var name = "A" + i;
+                var contents = "/** Doc " + i + " */ class " + name + " { void method() { int x = " + i + "; } }";
+                futures.add(threads.submit(() -> describe(pool.parse(file(name, contents), contents))));
+            }
+            for (var i = 0; i < 100; i++) {
+                assertThat(futures.get(i).get(), equalTo("A" + i + " Doc " + i));
+            }
+        } finally {
+            threads.shutdown();
+        }
+        assertThat(pool.created(), lessThanOrEqualTo(4));
+        assertThat(pool.idle(), lessThanOrEqualTo(4));
+    }
+}
@@ -0,0 +1,66 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.javacs.lsp.Position;
+import org.javacs.lsp.PositionEncoding;
+import org.junit.After;
+import org.junit.Test;
+
+public class PositionHelperTest {
+
+    @After
+    public void resetEncoding() {
+        PositionHelper.setEncoding(PositionEncoding.UTF_16);
+    }
+
+    @Test
+    public void negotiate() {
+        assertThat(PositionEncoding.negotiate(null), equalTo(PositionEncoding.UTF_16));
+        assertThat(PositionEncoding.negotiate(List.of("utf-32", "utf-8")), equalTo(PositionEncoding.UTF_8));
+        assertThat(PositionEncoding.negotiate(List.of("utf-16", "utf-8")), equalTo(PositionEncoding.UTF_16));
+    }
+
+    @Test
+    public void utf8Length() {
+        // é is 2 bytes, ∀ is 3 bytes, 𝔸 is a surrogate pair of 4 bytes
+        var text = "a é ∀ 𝔸 b";
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertThat(PositionHelper.utf8Length(text, 0, text.length()), equalTo(bytes.length));
+        assertThat(PositionHelper.utf8Length(text, 0, text.indexOf('b')), equalTo(14));
+        assertThat(PositionHelper.utf16Length(text, 0, 14), equalTo(text.indexOf('b')));
+    }
+
+    @Test
+    public void utf16LengthStopsAtEndOfLine() {
+        assertThat(PositionHelper.utf16Length("ab\ncd", 0, 10), equalTo(2));
+    }
+
+    @Test
+    public void ropeOffset() {
+        var text = Rope.of("int x;\nString é = \"∀\";\n");
+        var utf16 = new Position(1, 13);
+        assertThat(PositionHelper.offset(text, utf16), equalTo(20));
+        PositionHelper.setEncoding(PositionEncoding.UTF_8);
+        var utf8 = new Position(1, 16);
+        assertThat(PositionHelper.offset(text, utf8), equalTo(20));
+    }
+
+    @Test
+    public void positionUsesTheTextThatWasParsed() throws IOException {
+        var file = Files.createTempDirectory("position-helper").resolve("Parsed.java");
+        Files.writeString(file, "class Parsed { String é = \"∀\"; }");
+        var root = Parser.parseUncached(new SourceFileObject(file)).root;
+        PositionHelper.setEncoding(PositionEncoding.UTF_8);
+        var offset = 28;
+        assertThat(PositionHelper.position(root, offset).character, equalTo(31));
+        // Once converted, the root's text isn't read again, so an edit on disk doesn't move its positions
+        Files.writeString(file, "class Parsed { String e = \"a\"; }");
+        assertThat(PositionHelper.position(root, offset).character, equalTo(31));
+    }
+}
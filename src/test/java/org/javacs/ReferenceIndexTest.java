@@ -0,0 +1,114 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReferenceIndexTest {
+    private static final CompilerProvider compiler = LanguageServerFixture.getCompilerProvider();
+
+    Path dir, declares, calls, shadows;
+
+    @Before
+    public void createFiles() throws IOException {
+        dir = FindResource.path("/org/javacs/example/Goto.java").getParent();
+        declares =
+                create(
+                        "ReferenceIndexDeclares",
+                        "class ReferenceIndexDeclares { int get() { return 1; } int get(String s) { return 2; } }");
+        calls =
+                create(
+                        "ReferenceIndexCalls",
+                        "class ReferenceIndexCalls { int test() { return new ReferenceIndexDeclares().get(); } }");
+        shadows =
+                create(
+                        "ReferenceIndexShadows",
+                        "class ReferenceIndexShadows { int get() { return 3; } int test() { return get(); } }");
+    }
+
+    private Path create(String name, String body) throws IOException {
+        var file = dir.resolve(name + ".java");
+        Files.writeString(file, "package org.javacs.example;\n\n" + body + "\n");
+        FileStore.externalCreate(file);
+        return file;
+    }
+
+    private void edit(Path file, String body, int secondsLater) throws IOException {
+        Files.writeString(file, "package org.javacs.example;\n\n" + body + "\n");
+        // Make sure the modified time changes, even if the file system only has coarse timestamps
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(secondsLater)));
+        FileStore.externalChange(file);
+    }
+
+    @After
+    public void deleteFiles() throws IOException {
+        for (var f : List.of(declares, calls, shadows)) {
+            Files.delete(f);
+            FileStore.externalDelete(f);
+        }
+    }
+
+    private void compileAll() {
+        compiler.compile(AnalysisDepth.ATTRIBUTE, declares, calls, shadows).close();
+    }
+
+    private static final String CLASS_NAME = "org.javacs.example.ReferenceIndexDeclares";
+
+    @Test
+    public void unindexedFilesMayReferenceAnything() {
+        assertThat(ReferenceIndex.mayReferenceMember(shadows, CLASS_NAME, "get"), equalTo(true));
+        assertThat(List.of(compiler.findMemberReferences(CLASS_NAME, "get")), hasItems(declares, calls, shadows));
+    }
+
+    @Test
+    public void indexedFilesOnlyReferenceWhatTheyResolve() {
+        compileAll();
+        assertThat(ReferenceIndex.mayReferenceMember(calls, CLASS_NAME, "get"), equalTo(true));
+        assertThat(ReferenceIndex.mayReferenceMember(shadows, CLASS_NAME, "get"), equalTo(false));
+        assertThat(ReferenceIndex.mayReferenceType(calls, CLASS_NAME), equalTo(true));
+        assertThat(ReferenceIndex.mayReferenceType(shadows, CLASS_NAME), equalTo(false));
+        var found = List.of(compiler.findMemberReferences(CLASS_NAME, "get"));
+        assertThat(found, hasItems(declares, calls));
+        assertThat(found, not(hasItem(shadows)));
+    }
+
+    @Test
+    public void overloadsAreIndexedSeparately() {
+        compileAll();
+        var noArgs = new String[] {};
+        var string = new String[] {"java.lang.String"};
+        assertThat(ReferenceIndex.mayReferenceMethod(calls, CLASS_NAME, "get", noArgs), equalTo(true));
+        assertThat(ReferenceIndex.mayReferenceMethod(calls, CLASS_NAME, "get", string), equalTo(false));
+        // The declaring file is a candidate even though it never calls get(String)
+        var found = List.of(compiler.findMethodReferences(CLASS_NAME, "get", string));
+        assertThat(found, hasItem(declares));
+        assertThat(found, not(hasItem(calls)));
+    }
+
+    @Test
+    public void changedFilesAreSearchedAgain() throws IOException {
+        compileAll();
+        edit(shadows, "class ReferenceIndexShadows { int test() { return new ReferenceIndexDeclares().get(); } }", 1);
+        assertThat(ReferenceIndex.mayReferenceMember(shadows, CLASS_NAME, "get"), equalTo(true));
+    }
+
+    @Test
+    public void changedDeclarationsAreSearchedAgain() throws IOException {
+        compileAll();
+        var string = new String[] {"java.lang.String"};
+        edit(declares, "class ReferenceIndexDeclares { int get() { return 100; } int get(String s) { return 2; } }", 1);
+        // Only a method body changed, so the other files still resolve the same way
+        assertThat(ReferenceIndex.mayReferenceMethod(calls, CLASS_NAME, "get", string), equalTo(false));
+        edit(declares, "class ReferenceIndexDeclares { int get() { return 100; } int get(Object s) { return 2; } }", 2);
+        assertThat(ReferenceIndex.mayReferenceMethod(calls, CLASS_NAME, "get", string), equalTo(true));
+    }
+}
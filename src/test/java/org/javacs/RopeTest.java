@@ -0,0 +1,72 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class RopeTest {
+
+    @Test
+    public void replaceMatchesStringBuilder() {
+        var random = new Random(1);
+        var expected = new StringBuilder(largeText(100));
+        var rope = Rope.of(expected);
+        for (var i = 0; i < 10_000; i++) {
+            var start = random.nextInt(expected.length() + 1);
+            var end = Math.min(expected.length(), start + random.nextInt(5));
+            var text = random.nextInt(10) == 0 ? "\n" : "x".repeat(random.nextInt(8));
+            expected.replace(start, end, text);
+            rope = rope.replace(start, end, text);
+        }
+        assertThat(rope.length(), equalTo(expected.length()));
+        assertThat(rope.toString(), equalTo(expected.toString()));
+        assertThat(rope.charAt(rope.length() / 2), equalTo(expected.charAt(expected.length() / 2)));
+        assertThat(rope.subSequence(100, 200).toString(), equalTo(expected.substring(100, 200)));
+    }
+
+    @Test
+    public void lineStart() {
+        var text = largeText(5000);
+        var rope = Rope.of(text);
+        var line = 0;
+        for (var i = 0; i < text.length(); i++) {
+            if (i == 0 || text.charAt(i - 1) == '\n') {
+                assertThat(rope.lineStart(line), equalTo(i));
+                line++;
+            }
+        }
+        assertThat(rope.lineCount(), equalTo(line + 1));
+        assertThat(rope.lineStart(line + 10), equalTo(text.length()));
+    }
+
+    @Test
+    public void editsDontChangeOriginal() {
+        var original = Rope.of("hello\nworld\n");
+        var edited = original.replace(6, 11, "there");
+        assertThat(original.toString(), equalTo("hello\nworld\n"));
+        assertThat(edited.toString(), equalTo("hello\nthere\n"));
+    }
+
+    @Test
+    public void typingIntoEmptyDocument() {
+        var rope = Rope.EMPTY;
+        var expected = new StringBuilder();
+        for (var i = 0; i < 5000; i++) {
+            var c = i % 40 == 39 ? "\n" : "a";
+            rope = rope.replace(rope.length(), rope.length(), c);
+            expected.append(c);
+        }
+        assertThat(rope.toString(), equalTo(expected.toString()));
+        assertThat(rope.lineStart(1), equalTo(40));
+    }
+
+    private static String largeText(int lines) {
+        var text = new StringBuilder();
+        for (var i = 0; i < lines; i++) {
+            text.append("    int field").append(i).append(" = ").append(i).append(";\n");
+        }
+        return text.toString();
+    }
+}
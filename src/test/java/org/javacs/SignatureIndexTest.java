@@ -0,0 +1,118 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Test;
+
+public class SignatureIndexTest {
+    public static class Example {
+        public static List<String> example(String text, int count) {
+            return List.of();
+        }
+
+        public int[][] grid;
+
+        private static List<String> hidden(String text, int count) {
+            return List.of();
+        }
+    }
+
+    private static List<String> search(String query, Set<Path> classPath) {
+        var found = new ArrayList<String>();
+        for (var m : SignatureIndex.search(query, classPath, 1000)) {
+            found.add(m.toString());
+        }
+        return found;
+    }
+
+    @Test
+    public void searchJdkMethods() {
+        assertThat(search("(int) -> char", Set.of()), hasItem("java.lang.String#charAt(int): char"));
+    }
+
+    @Test
+    public void ignoreTypeArguments() {
+        var found = search("(Collection<? extends E>) -> List<E>", Set.of());
+        assertThat(found, hasItem("java.util.List#copyOf(java.util.Collection): java.util.List"));
+    }
+
+    @Test
+    public void searchConstructors() {
+        var found = search("(java.util.Collection) -> ArrayList", Set.of());
+        assertThat(found, hasItem("java.util.ArrayList#ArrayList(java.util.Collection): java.util.ArrayList"));
+    }
+
+    @Test
+    public void searchVarargs() {
+        var found = search("(Object...) -> List", Set.of());
+        assertThat(found, hasItem("java.util.List#of(java.lang.Object[]): java.util.List"));
+    }
+
+    @Test
+    public void searchFields() {
+        var found = search("Comparator<String>", Set.of());
+        assertThat(found, hasItem("java.lang.String#CASE_INSENSITIVE_ORDER: java.util.Comparator"));
+    }
+
+    @Test
+    public void qualifiedNamesMustMatch() {
+        assertThat(search("(int) -> java.awt.List", Set.of()), not(hasItem(containsString("String#charAt"))));
+        assertThat(search("(int) -> lang.String", Set.of()), not(hasItem(containsString("java.util.List"))));
+    }
+
+    @Test
+    public void ignoreMalformedQueries() {
+        assertThat(search("(int -> char", Set.of()), empty());
+        assertThat(search("(int) char", Set.of()), empty());
+        assertThat(search("List<String", Set.of()), empty());
+    }
+
+    private static Path exampleJar() throws IOException {
+        var jar = Files.createTempFile("signature-index", ".jar");
+        var resource = "org/javacs/SignatureIndexTest$Example.class";
+        try (var out = new JarOutputStream(Files.newOutputStream(jar));
+                var in = SignatureIndexTest.class.getClassLoader().getResourceAsStream(resource)) {
+            out.putNextEntry(new JarEntry(resource));
+            out.write(in.readAllBytes());
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    @Test
+    public void searchJars() throws IOException {
+        var jar = exampleJar();
+        try {
+            var methods = search("(String, int) -> List<?>", Set.of(jar));
+            assertThat(
+                    methods,
+                    hasItem("org.javacs.SignatureIndexTest.Example#example(java.lang.String, int): java.util.List"));
+            assertThat(methods, not(hasItem(containsString("hidden"))));
+            assertThat(search("int[][]", Set.of(jar)), hasItem("org.javacs.SignatureIndexTest.Example#grid: int[][]"));
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    public void forgetJarsThatLeaveTheClassPath() throws IOException {
+        var jar = exampleJar();
+        try {
+            search("int[][]", Set.of(jar));
+            assertThat(SignatureIndex.jarsInMemory(), equalTo(1));
+            search("int[][]", Set.of());
+            assertThat(SignatureIndex.jarsInMemory(), equalTo(0));
+        } finally {
+            Files.delete(jar);
+        }
+    }
+}
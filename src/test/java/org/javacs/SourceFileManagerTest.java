@@ -71,6 +71,19 @@ public class SourceFileManagerTest {
         assertThat(sourceClassName, equalTo(standardJavaName));
     }
 
+    @Test
+    public void implicitSourcesHaveMethodBodiesErased() throws IOException {
+        var source =
+                sourceFileManager.getJavaFileForInput(
+                        StandardLocation.SOURCE_PATH, "org.javacs.example.Goto", JavaFileObject.Kind.SOURCE);
+        var headers = source.getCharContent(true).toString();
+        var full = FileStore.contents(FindResource.path("/org/javacs/example/Goto.java"));
+        assertThat(headers.length(), equalTo(full.length()));
+        assertThat(headers, containsString("public void test() {"));
+        assertThat(full, containsString("local = new Goto();"));
+        assertThat(headers, not(containsString("local = new Goto();")));
+    }
+
     @Test
     public void javaUtilList() throws IOException {
         var file =
@@ -4,13 +4,21 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Set;
 import org.javacs.lsp.DidChangeTextDocumentParams;
 import org.javacs.lsp.DidCloseTextDocumentParams;
 import org.javacs.lsp.DidOpenTextDocumentParams;
 import org.javacs.lsp.TextDocumentContentChangeEvent;
+import org.junit.Before;
 import org.junit.Test;
 
 public class StringSearchTest {
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
     private void testNext(String pat, String text, int index) {
         var got = new StringSearch(pat).next(text);
         assertThat(got, equalTo(index));
@@ -91,6 +99,19 @@ public class StringSearchTest {
         assertFalse(StringSearch.containsWordMatching(smallFile, "removeMethodBodies"));
     }
 
+    @Test
+    public void searchFilesInParallel() {
+        var goto_ = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
+        var files = new ArrayList<>(FileStore.list("org.javacs.example"));
+        assertThat(files, hasItem(goto_));
+        var found = StringSearch.searchFiles(files, f -> StringSearch.containsWord(f, "nonDefaultConstructor"), 100);
+        assertThat(found, hasItem(goto_));
+        var missing = StringSearch.searchFiles(files, f -> StringSearch.containsWord(f, "removeMethodBodiez"), 100);
+        assertThat(missing, empty());
+        // Every file passes, but the search stops at the limit, and keeps the first files in order
+        assertThat(StringSearch.searchFiles(files, f -> true, 3), equalTo(files.subList(0, 3)));
+    }
+
     @Test
     public void searchOpenFile() {
         // Open file
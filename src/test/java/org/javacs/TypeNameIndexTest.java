@@ -0,0 +1,96 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TypeNameIndexTest {
+    private final TypeNameIndex index =
+            new TypeNameIndex(
+                    List.of(
+                            "com.google.common.collect.HashSetMultimap",
+                            "com.google.common.collect.HashMultimap",
+                            "java.util.HashMap",
+                            "java.util.HashSet",
+                            "java.util.List",
+                            "java.util.concurrent.ConcurrentHashMap",
+                            "java.net.URLConnection",
+                            "DefaultPackage"));
+
+    private static List<String> list(Iterable<String> names) {
+        var list = new ArrayList<String>();
+        names.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    public void prefix() {
+        assertThat(
+                index.matching("Hash", 10),
+                containsInAnyOrder(
+                        "com.google.common.collect.HashSetMultimap",
+                        "com.google.common.collect.HashMultimap",
+                        "java.util.HashMap",
+                        "java.util.HashSet"));
+        assertThat(index.matching("Li", 10), contains("java.util.List"));
+        assertThat(index.matching("hash", 10), empty());
+        assertThat(index.matching("", 100), hasSize(8));
+    }
+
+    @Test
+    public void camelHumps() {
+        assertThat(index.matching("HSM", 10), contains("com.google.common.collect.HashSetMultimap"));
+        assertThat(index.matching("HaSeMu", 10), contains("com.google.common.collect.HashSetMultimap"));
+        assertThat(index.matching("HM", 10), contains("java.util.HashMap", "com.google.common.collect.HashMultimap"));
+        assertThat(index.matching("CHM", 10), contains("java.util.concurrent.ConcurrentHashMap"));
+        assertThat(index.matching("URLC", 10), contains("java.net.URLConnection"));
+        assertThat(index.matching("HSX", 10), empty());
+    }
+
+    @Test
+    public void limit() {
+        assertThat(index.matching("Hash", 2), hasSize(2));
+        assertThat(index.matching("HM", 1), hasSize(1));
+    }
+
+    @Test
+    public void named() {
+        assertThat(index.named("HashMap"), contains("java.util.HashMap"));
+        assertThat(index.named("Hash"), empty());
+        assertThat(index.named("DefaultPackage"), contains("DefaultPackage"));
+    }
+
+    @Test
+    public void startingWith() {
+        assertThat(
+                list(index.startingWith("java.util.")),
+                containsInAnyOrder(
+                        "java.util.HashMap",
+                        "java.util.HashSet",
+                        "java.util.List",
+                        "java.util.concurrent.ConcurrentHashMap"));
+        assertThat(list(index.startingWith("java.util.H")), contains("java.util.HashMap", "java.util.HashSet"));
+        assertThat(list(index.startingWith("java.u")), hasSize(4));
+        assertThat(list(index.startingWith("Def")), contains("DefaultPackage"));
+        assertThat(list(index.startingWith("org.")), empty());
+    }
+
+    @Test
+    public void matchesUnindexedNames() {
+        assertThat(TypeNameIndex.matches("HashSetMultimap", "Hash"), equalTo(true));
+        assertThat(TypeNameIndex.matches("HashSetMultimap", "HSM"), equalTo(true));
+        assertThat(TypeNameIndex.matches("HashSetMultimap", "hsm"), equalTo(false));
+    }
+
+    @Test
+    public void jdk() {
+        var jdk = new TypeNameIndex(JdkIndex.classes());
+        assertThat(jdk.size(), greaterThan(1000));
+        assertThat(jdk.matching("ArrayL", 100), hasItem("java.util.ArrayList"));
+        assertThat(jdk.matching("CHM", 100), hasItem("java.util.concurrent.ConcurrentHashMap"));
+        assertThat(jdk.named("List"), hasItems("java.util.List", "java.awt.List"));
+    }
+}
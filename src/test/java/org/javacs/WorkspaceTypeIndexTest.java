@@ -0,0 +1,51 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WorkspaceTypeIndexTest {
+    private static WorkspaceTypeIndex index(String... qualifiedNames) {
+        var index = new WorkspaceTypeIndex();
+        for (var name : qualifiedNames) {
+            index.add(name);
+        }
+        return index;
+    }
+
+    @Test
+    public void prefix() {
+        var index = index("com.example.HashSetMultimap", "com.example.HashMap", "com.example.List", "DefaultPackage");
+        assertThat(index.matching("Hash", 10), contains("com.example.HashMap", "com.example.HashSetMultimap"));
+        assertThat(index.matching("Li", 10), contains("com.example.List"));
+        assertThat(index.matching("Def", 10), contains("DefaultPackage"));
+        assertThat(index.matching("hash", 10), empty());
+        assertThat(index.matching("Hash", 1), hasSize(1));
+    }
+
+    @Test
+    public void camelHumps() {
+        var index = index("com.example.HashSetMultimap", "com.example.HashMap", "com.example.HashMultimap");
+        assertThat(index.matching("HSM", 10), contains("com.example.HashSetMultimap"));
+        assertThat(index.matching("HaSeMu", 10), contains("com.example.HashSetMultimap"));
+        assertThat(index.matching("HM", 10), contains("com.example.HashMap", "com.example.HashMultimap"));
+        assertThat(index.matching("HSX", 10), empty());
+    }
+
+    @Test
+    public void named() {
+        var index = index("com.example.List", "org.example.List", "com.example.ListIterator");
+        assertThat(index.named("List"), contains("com.example.List", "org.example.List"));
+        assertThat(index.named("Lis"), empty());
+    }
+
+    @Test
+    public void remove() {
+        var index = index("com.example.List", "org.example.List");
+        index.remove("com.example.List");
+        assertThat(index.named("List"), contains("org.example.List"));
+        assertThat(index.matching("L", 10), contains("org.example.List"));
+        assertThat(index.size(), equalTo(1));
+    }
+}
@@ -6,6 +6,8 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -22,6 +24,10 @@ public class LanguageServerTest {
     LanguageServer mockServer;
     Thread main;
     CompletableFuture<Void> receivedInitialize = new CompletableFuture<>();
+    CompletableFuture<Void> receivedHover = new CompletableFuture<>();
+    CompletableFuture<Boolean> documentSymbolSawHover = new CompletableFuture<>();
+    CompletableFuture<Void> startedDefinition = new CompletableFuture<>();
+    CompletableFuture<Boolean> definitionWasCancelled = new CompletableFuture<>();
 
     class TestLanguageServer extends LanguageServer {
         @Override
@@ -29,6 +35,41 @@ public class LanguageServerTest {
             receivedInitialize.complete(null);
             return new InitializeResult();
         }
+
+        @Override
+        public List<SymbolInformation> documentSymbol(DocumentSymbolParams params) {
+            // Block until hover has been processed
+            try {
+                receivedHover.get(10, TimeUnit.SECONDS);
+                documentSymbolSawHover.complete(true);
+            } catch (Exception e) {
+                documentSymbolSawHover.complete(false);
+            }
+            return List.of();
+        }
+
+        @Override
+        public Optional<List<Location>> gotoDefinition(TextDocumentPositionParams params) {
+            // Spin until cancelled, like a long compile would
+            startedDefinition.complete(null);
+            var token = CancelToken.current();
+            var deadline = System.currentTimeMillis() + 10_000;
+            while (System.currentTimeMillis() < deadline) {
+                if (token.isCancelled()) {
+                    definitionWasCancelled.complete(true);
+                    token.checkCancelled();
+                }
+                Thread.onSpinWait();
+            }
+            definitionWasCancelled.complete(false);
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Hover> hover(TextDocumentPositionParams params) {
+            receivedHover.complete(null);
+            return Optional.empty();
+        }
     }
 
     static {
@@ -68,6 +109,13 @@ public class LanguageServerTest {
 
     String initializeMessage = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}";
     String exitMessage = "{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}";
+    String documentSymbolMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"textDocument/documentSymbol\",\"params\":{\"textDocument\":{\"uri\":\"file:///Foo.java\"}}}";
+    String hoverMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"textDocument/hover\",\"params\":{\"textDocument\":{\"uri\":\"file:///Foo.java\"},\"position\":{\"line\":0,\"character\":0}}}";
+    String definitionMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"textDocument/definition\",\"params\":{\"textDocument\":{\"uri\":\"file:///Foo.java\"},\"position\":{\"line\":0,\"character\":0}}}";
+    String cancelDefinitionMessage = "{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":4}}";
 
     @Test
     public void exitMessageKillsServer()
@@ -81,6 +129,31 @@ public class LanguageServerTest {
         assertThat("Main thread has quit", main.isAlive(), equalTo(false));
     }
 
+    @Test
+    public void slowDocumentSymbolDoesntBlockHover()
+            throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        sendToServer(initializeMessage);
+        receivedInitialize.get(10, TimeUnit.SECONDS);
+        // documentSymbol waits for hover, so it only finishes if hover is processed concurrently
+        sendToServer(documentSymbolMessage);
+        sendToServer(hoverMessage);
+        assertThat(documentSymbolSawHover.get(20, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    public void cancelRunningRequest()
+            throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        sendToServer(initializeMessage);
+        receivedInitialize.get(10, TimeUnit.SECONDS);
+        sendToServer(definitionMessage);
+        startedDefinition.get(10, TimeUnit.SECONDS);
+        // Cancelling the definition request frees up the main thread for hover
+        sendToServer(cancelDefinitionMessage);
+        sendToServer(hoverMessage);
+        assertThat(definitionWasCancelled.get(10, TimeUnit.SECONDS), equalTo(true));
+        receivedHover.get(10, TimeUnit.SECONDS);
+    }
+
     @Test
     public void endOfStreamKillsServer()
             throws IOException, InterruptedException, ExecutionException, TimeoutException {
@@ -3,7 +3,7 @@ package org.javacs.lsp;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
-import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
@@ -83,14 +83,51 @@ public class LspTest {
         writer.write(header.getBytes());
         writer.write(message.getBytes());
 
-        var token = LSP.nextToken(buffer);
-        assertThat(token, equalTo(message));
-
-        var parse = LSP.parseMessage(token);
+        var parse = LSP.parseMessage(new BaseProtocolReader(buffer).nextReader());
         assertThat(parse.jsonrpc, equalTo("2.0"));
         assertThat(parse.id, equalTo(1));
         assertThat(parse.method, equalTo("initialize"));
-        assertThat(parse.params, equalTo(new JsonObject()));
+        assertThat(parse.params, instanceOf(InitializeParams.class));
+    }
+
+    @Test
+    public void readMultibyteCharacters() throws IOException {
+        var message =
+                "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\",\"params\":{\"textDocument\":{\"text\":\"🔥é\"}}}";
+        var bytes = message.getBytes(StandardCharsets.UTF_8);
+        var header = String.format("Content-Length: %d\r\n\r\n", bytes.length);
+        writer.write(header.getBytes());
+        writer.write(bytes);
+
+        var parse = LSP.parseMessage(new BaseProtocolReader(buffer).nextReader());
+        var params = (DidOpenTextDocumentParams) parse.params;
+        assertThat(params.textDocument.text, equalTo("🔥é"));
+    }
+
+    @Test
+    public void readParamsBeforeMethod() {
+        var message = "{\"params\":{\"id\":7},\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\"}";
+        var parse = LSP.parseMessage(message);
+        assertThat(parse.params, instanceOf(CancelParams.class));
+        assertThat(((CancelParams) parse.params).id, equalTo(7));
+    }
+
+    @Test
+    public void readConsecutiveLargeMessages() throws IOException {
+        var text = "x".repeat(200 * 1024);
+        var message = "{\"jsonrpc\":\"2.0\",\"method\":\"custom\",\"params\":\"" + text + "\"}";
+        var header = String.format("Content-Length: %d\r\n\r\n", message.getBytes().length);
+        for (var i = 0; i < 3; i++) {
+            writer.write(header.getBytes());
+            writer.write(message.getBytes());
+        }
+
+        var reader = new BaseProtocolReader(buffer);
+        for (var i = 0; i < 3; i++) {
+            var parse = LSP.parseMessage(reader.nextReader());
+            assertThat(parse.method, equalTo("custom"));
+            assertThat(parse.params, equalTo(new JsonPrimitive(text)));
+        }
     }
 
     @Test